@@ -0,0 +1,58 @@
+package com.pdd.db.mongo.bench.bean;
+
+import com.pdd.db.mongo.bean.MongoBean;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * 基准测试订单表（只包含简单类型字段）
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+@Document("bench_order")
+public class BenchOrder extends MongoBean {
+
+    /**
+     * 订单号
+     */
+    private String orderNo;
+
+    /**
+     * 用户名
+     */
+    private String userName;
+
+    /**
+     * 订单金额
+     */
+    private BigDecimal amount;
+
+    /**
+     * 优惠金额
+     */
+    private BigDecimal discount;
+
+    /**
+     * 数量
+     */
+    private Integer quantity;
+
+    /**
+     * 是否已支付
+     */
+    private Boolean paid;
+
+    /**
+     * 支付时间
+     */
+    private Date payTime;
+
+    /**
+     * 订单状态
+     */
+    private BenchOrderStatus status;
+}
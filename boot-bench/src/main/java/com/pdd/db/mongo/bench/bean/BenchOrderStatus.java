@@ -0,0 +1,19 @@
+package com.pdd.db.mongo.bench.bean;
+
+/**
+ * 基准测试订单状态
+ */
+public enum BenchOrderStatus {
+    /**
+     * 待支付
+     */
+    CREATED,
+    /**
+     * 已支付
+     */
+    PAID,
+    /**
+     * 已关闭
+     */
+    CLOSED
+}
@@ -0,0 +1,116 @@
+package com.pdd.db.mongo.holder;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.ServerAddress;
+import com.pdd.db.mongo.CustomMongoConfig;
+import com.pdd.db.mongo.MongoHolderProperties;
+import com.pdd.db.mongo.MongoWorkloadTemplates;
+import com.pdd.db.mongo.bench.bean.BenchOrder;
+import com.pdd.db.mongo.bench.bean.BenchOrderStatus;
+import com.pdd.db.mongo.converter.BigDecimalMode;
+import org.bson.types.ObjectId;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoDbFactory;
+import org.springframework.data.mongodb.core.convert.CustomConversions;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Date;
+
+/**
+ * 基准测试环境
+ * <br>按CustomMongoConfig的方式组装转换器和句柄（包含BigDecimal转换器），不连接数据库
+ * <br>基准测试类与MongoHolder同包，用于调用受保护和包内可见的方法
+ **/
+class BenchSupport implements AutoCloseable {
+
+    /**
+     * mongo客户端（只用于构造句柄，基准测试不发送请求）
+     */
+    private final MongoClient mongoClient;
+
+    /**
+     * spring容器（负责MongoHolder的注入和初始化）
+     */
+    private final AnnotationConfigApplicationContext context;
+
+    /**
+     * mongo转换器
+     */
+    final MappingMongoConverter mongoConverter;
+
+    /**
+     * mongo句柄
+     */
+    final MongoHolder mongoHolder;
+
+    BenchSupport(){
+        this(BigDecimalMode.DOUBLE);
+    }
+
+    /**
+     * @param bigDecimalMode BigDecimal映射方式
+     */
+    BenchSupport(BigDecimalMode bigDecimalMode){
+        MongoHolderProperties mongoHolderProperties=new MongoHolderProperties();
+        mongoHolderProperties.setBigDecimalMode(bigDecimalMode);
+        CustomConversions customConversions=new CustomMongoConfig().customConversions(mongoHolderProperties);
+        MongoMappingContext mappingContext=new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(customConversions.getSimpleTypeHolder());
+        mappingContext.setAutoIndexCreation(false);
+        mappingContext.afterPropertiesSet();
+        mongoConverter=new MappingMongoConverter(NoOpDbRefResolver.INSTANCE,mappingContext);
+        mongoConverter.setCustomConversions(customConversions);
+        mongoConverter.afterPropertiesSet();
+
+        mongoClient=new MongoClient(new ServerAddress("localhost"),MongoClientOptions.builder().serverSelectionTimeout(1).build());
+        MongoTemplate mongoTemplate=new MongoTemplate(new SimpleMongoDbFactory(mongoClient,"bench"),mongoConverter);
+
+        context=new AnnotationConfigApplicationContext();
+        context.getBeanFactory().registerSingleton("mongoTemplate",mongoTemplate);
+        context.getBeanFactory().registerSingleton("mappingMongoConverter",mongoConverter);
+        context.getBeanFactory().registerSingleton("mongoWorkloadTemplates",new MongoWorkloadTemplates(Collections.emptyMap(),Collections.emptyList()));
+        context.getBeanFactory().registerSingleton("customConversions",customConversions);
+        context.getBeanFactory().registerSingleton("mongoHolderProperties",mongoHolderProperties);
+        context.register(MongoHolder.class);
+        context.refresh();
+        mongoHolder=context.getBean(MongoHolder.class);
+    }
+
+    /**
+     * 生成测试订单（所有字段不为空）
+     * @param seq 序号
+     * @return com.pdd.db.mongo.bench.bean.BenchOrder 
+     */
+    static BenchOrder newOrder(int seq){
+        BenchOrder order=new BenchOrder();
+        order.setId(new ObjectId().toHexString());
+        order.setDelFlag(false);
+        order.setCreateUserId("u"+seq%100);
+        order.setCreateUserName("user"+seq%100);
+        order.setCreateDate(20200101+seq%28);
+        order.setUpdateUserId("u"+seq%100);
+        order.setUpdateUserName("user"+seq%100);
+        order.setUpdateDate(20200101+seq%28);
+        order.setOrderNo("NO"+(100000000+seq));
+        order.setUserName("user"+seq%100);
+        order.setAmount(new BigDecimal("1999.99").add(BigDecimal.valueOf(seq%1000)));
+        order.setDiscount(new BigDecimal("12.5"));
+        order.setQuantity(seq%10+1);
+        order.setPaid(seq%2==0);
+        order.setPayTime(new Date(1577808000000L+seq*1000L));
+        order.setStatus(BenchOrderStatus.values()[seq%BenchOrderStatus.values().length]);
+        return order;
+    }
+
+    @Override
+    public void close(){
+        context.close();
+        mongoClient.close();
+    }
+}
@@ -0,0 +1,67 @@
+package com.pdd.db.mongo.holder;
+
+import com.pdd.db.mongo.bench.bean.BenchOrder;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 映射转换器读写的基准测试（实体包含BigDecimal字段，经过自定义转换器）
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConverterBenchmark {
+
+    private BenchSupport support;
+
+    private BenchOrder order;
+
+    private Document document;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        support=new BenchSupport();
+        order=BenchSupport.newOrder(1);
+        document=new Document();
+        support.mongoConverter.write(order,document);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        support.close();
+    }
+
+    /**
+     * 实体写入文档
+     */
+    @Benchmark
+    public Document write(){
+        Document target=new Document();
+        support.mongoConverter.write(order,target);
+        return target;
+    }
+
+    /**
+     * 文档读取为实体
+     */
+    @Benchmark
+    public BenchOrder read(){
+        return support.mongoConverter.read(BenchOrder.class,document);
+    }
+}
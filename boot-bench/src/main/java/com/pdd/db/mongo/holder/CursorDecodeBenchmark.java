@@ -0,0 +1,143 @@
+package com.pdd.db.mongo.holder;
+
+import com.mongodb.MongoClientSettings;
+import com.pdd.db.mongo.bench.bean.BenchOrder;
+import com.pdd.db.mongo.metrics.ScanMetrics;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.RawBsonDocumentCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 游标解码循环的基准测试（内存中的BSON字节代替服务端游标，结果为每条记录的吞吐量）
+ * <br>decodeAndRead对应extCursorQueryExe，prefetchBatches对应extCursorBatchQueryExe，rawAccess对应extRawCursorQueryExe
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@OperationsPerInvocation(CursorDecodeBenchmark.DOCUMENT_COUNT)
+public class CursorDecodeBenchmark {
+
+    /**
+     * 每次调用扫描的记录数
+     */
+    static final int DOCUMENT_COUNT=1000;
+
+    /**
+     * 每批数量
+     */
+    @Param({"100"})
+    private int batchSize;
+
+    private BenchSupport support;
+
+    private List<byte[]> documents;
+
+    private DocumentCodec documentCodec;
+
+    private RawBsonDocumentCodec rawCodec;
+
+    private ExecutorService prefetchPool;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        support=new BenchSupport();
+        documentCodec=new DocumentCodec(MongoClientSettings.getDefaultCodecRegistry());
+        rawCodec=new RawBsonDocumentCodec();
+        prefetchPool=Executors.newSingleThreadExecutor();
+        documents=new ArrayList<>(DOCUMENT_COUNT);
+        for(int i=0;i<DOCUMENT_COUNT;i++){
+            Document document=new Document();
+            support.mongoConverter.write(BenchSupport.newOrder(i),document);
+            RawBsonDocument raw=new RawBsonDocument(document,documentCodec);
+            byte[] bytes=new byte[raw.getByteBuffer().remaining()];
+            raw.getByteBuffer().get(bytes);
+            documents.add(bytes);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        prefetchPool.shutdownNow();
+        support.close();
+    }
+
+    /**
+     * 只解码为Document
+     */
+    @Benchmark
+    public void decodeOnly(Blackhole blackhole){
+        try (InMemoryCursor<Document> cursor = new InMemoryCursor<>(documents,documentCodec)) {
+            while (cursor.hasNext()) {
+                blackhole.consume(cursor.next());
+            }
+        }
+    }
+
+    /**
+     * 解码为Document后转换为实体
+     */
+    @Benchmark
+    public void decodeAndRead(Blackhole blackhole){
+        try (InMemoryCursor<Document> cursor = new InMemoryCursor<>(documents,documentCodec)) {
+            while (cursor.hasNext()) {
+                blackhole.consume(support.mongoConverter.read(BenchOrder.class,cursor.next()));
+            }
+        }
+    }
+
+    /**
+     * 后台线程解码和转换，按批消费
+     */
+    @Benchmark
+    public void prefetchBatches(Blackhole blackhole) throws Exception{
+        InMemoryCursor<Document> cursor=new InMemoryCursor<>(documents,documentCodec);
+        try (CursorPrefetcher<BenchOrder> prefetcher = new CursorPrefetcher<>(cursor,document -> support.mongoConverter.read(BenchOrder.class,document),batchSize,2,new ScanMetrics(false),prefetchPool)) {
+            List<BenchOrder> models;
+            while ((models = prefetcher.next()) != null) {
+                blackhole.consume(models);
+            }
+        }
+    }
+
+    /**
+     * 原始BSON按需读取两个字段
+     */
+    @Benchmark
+    public void rawAccess(Blackhole blackhole){
+        try (InMemoryCursor<RawBsonDocument> cursor = new InMemoryCursor<>(documents,rawCodec)) {
+            while (cursor.hasNext()) {
+                RawBsonDocument document=cursor.next();
+                BsonValue orderNo=document.get("orderNo");
+                BsonValue amount=document.get("amount");
+                blackhole.consume(orderNo);
+                blackhole.consume(amount);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.pdd.db.mongo.holder;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.ServerCursor;
+import com.mongodb.client.MongoCursor;
+import org.bson.BsonBinaryReader;
+import org.bson.codecs.Decoder;
+import org.bson.codecs.DecoderContext;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 内存游标（从内存中的BSON字节解码，代替服务端游标）
+ * <br>与驱动游标一样在next时解码，基准测试结果不包含网络耗时
+ **/
+class InMemoryCursor<D> implements MongoCursor<D> {
+
+    /**
+     * 解码上下文
+     */
+    private static final DecoderContext DECODER_CONTEXT=DecoderContext.builder().build();
+
+    /**
+     * 文档字节
+     */
+    private final List<byte[]> documents;
+
+    /**
+     * 文档解码器
+     */
+    private final Decoder<D> decoder;
+
+    /**
+     * 当前位置
+     */
+    private int position;
+
+    InMemoryCursor(List<byte[]> documents, Decoder<D> decoder){
+        this.documents=documents;
+        this.decoder=decoder;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return position<documents.size();
+    }
+
+    @Override
+    public D next() {
+        if(!this.hasNext()){
+            throw new NoSuchElementException();
+        }
+        try (BsonBinaryReader reader = new BsonBinaryReader(ByteBuffer.wrap(documents.get(position++)))) {
+            return decoder.decode(reader,DECODER_CONTEXT);
+        }
+    }
+
+    @Override
+    public D tryNext() {
+        return this.hasNext()?this.next():null;
+    }
+
+    @Override
+    public void close() {
+        position=documents.size();
+    }
+
+    @Override
+    public ServerCursor getServerCursor() {
+        return null;
+    }
+
+    @Override
+    public ServerAddress getServerAddress() {
+        return null;
+    }
+}
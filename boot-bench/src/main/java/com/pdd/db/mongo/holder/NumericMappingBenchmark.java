@@ -0,0 +1,99 @@
+package com.pdd.db.mongo.holder;
+
+import com.pdd.db.mongo.bench.bean.BenchOrder;
+import com.pdd.db.mongo.converter.BigDecimalMode;
+import com.pdd.db.mongo.converter.DoubleToBigDecimalConverter;
+import com.pdd.db.mongo.converter.FastDoubleToBigDecimalConverter;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BigDecimal映射方式的基准测试（配合-prof gc对比每次操作的内存分配）
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NumericMappingBenchmark {
+
+    /**
+     * BigDecimal映射方式
+     */
+    @Param({"DOUBLE","DOUBLE_FAST","DECIMAL128"})
+    private BigDecimalMode mode;
+
+    private BenchSupport support;
+
+    private BenchOrder order;
+
+    private Document document;
+
+    private double price;
+
+    private final DoubleToBigDecimalConverter stringConverter=new DoubleToBigDecimalConverter();
+
+    @Setup(Level.Trial)
+    public void setup(){
+        support=new BenchSupport(mode);
+        order=BenchSupport.newOrder(1);
+        document=new Document();
+        support.mongoConverter.write(order,document);
+        price=1999.99;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        support.close();
+    }
+
+    /**
+     * 按映射方式读取实体（包含两个BigDecimal字段）
+     */
+    @Benchmark
+    public BenchOrder readEntity(){
+        return support.mongoConverter.read(BenchOrder.class,document);
+    }
+
+    /**
+     * 按映射方式写入实体
+     */
+    @Benchmark
+    public Document writeEntity(){
+        Document target=new Document();
+        support.mongoConverter.write(order,target);
+        return target;
+    }
+
+    /**
+     * 单值转换：经字符串（与映射方式无关）
+     */
+    @Benchmark
+    public BigDecimal doubleViaString(){
+        return stringConverter.convert(price);
+    }
+
+    /**
+     * 单值转换：不生成中间字符串（与映射方式无关）
+     */
+    @Benchmark
+    public BigDecimal doubleFast(){
+        return FastDoubleToBigDecimalConverter.toBigDecimal(price);
+    }
+}
@@ -0,0 +1,81 @@
+package com.pdd.db.mongo.holder;
+
+import com.pdd.db.mongo.bench.bean.BenchOrder;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 生成update的基准测试
+ * <br>对比更新计划（getUpdateFromBean）与转换器全量写入（converterWrite，旧实现的主要开销）
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UpdateFromBeanBenchmark {
+
+    private BenchSupport support;
+
+    private BenchOrder order;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        support=new BenchSupport();
+        order=BenchSupport.newOrder(1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        support.close();
+    }
+
+    /**
+     * 更新指定字段
+     */
+    @Benchmark
+    public Update updateFields() throws Exception{
+        return support.mongoHolder.getUpdateFromBean(order,"userName","amount","quantity","status");
+    }
+
+    /**
+     * 更新所有不为空的字段
+     */
+    @Benchmark
+    public Update updateNonNullFields() throws Exception{
+        return support.mongoHolder.getUpdateFromBean(order);
+    }
+
+    /**
+     * 更新所有字段
+     */
+    @Benchmark
+    public Update updateAllFields(){
+        return support.mongoHolder.getAllUpdateFromBean(order);
+    }
+
+    /**
+     * 转换器全量写入（对照组）
+     */
+    @Benchmark
+    public Document converterWrite(){
+        Document document=new Document();
+        support.mongoConverter.write(order,document);
+        return document;
+    }
+}
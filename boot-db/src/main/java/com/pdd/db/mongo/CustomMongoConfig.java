@@ -1,8 +1,12 @@
 package com.pdd.db.mongo;
 
 import com.mongodb.WriteConcern;
+import com.pdd.db.mongo.converter.BigDecimalMode;
+import com.pdd.db.mongo.converter.BigDecimalToDecimal128Converter;
 import com.pdd.db.mongo.converter.BigDecimalToDoubleConverter;
+import com.pdd.db.mongo.converter.Decimal128ToBigDecimalConverter;
 import com.pdd.db.mongo.converter.DoubleToBigDecimalConverter;
+import com.pdd.db.mongo.converter.FastDoubleToBigDecimalConverter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.convert.converter.Converter;
@@ -21,13 +25,25 @@ public class CustomMongoConfig {
 
     /**
      * 自定义转换器
+     * @param mongoHolderProperties 句柄扩展功能配置（BigDecimal映射方式）
      * @return org.springframework.data.mongodb.core.convert.CustomConversions
      */
     @Bean
-    public CustomConversions customConversions() {
+    public CustomConversions customConversions(MongoHolderProperties mongoHolderProperties) {
         List<Converter<?, ?>> converterList = new ArrayList<>();
-        converterList.add(new BigDecimalToDoubleConverter());
-        converterList.add(new DoubleToBigDecimalConverter());
+        BigDecimalMode bigDecimalMode = mongoHolderProperties.getBigDecimalMode();
+        if (bigDecimalMode == BigDecimalMode.DECIMAL128) {
+            converterList.add(new BigDecimalToDecimal128Converter());
+            converterList.add(new Decimal128ToBigDecimalConverter());
+            //兼容已存储为Double的数据
+            converterList.add(new FastDoubleToBigDecimalConverter());
+        } else if (bigDecimalMode == BigDecimalMode.DOUBLE_FAST) {
+            converterList.add(new BigDecimalToDoubleConverter());
+            converterList.add(new FastDoubleToBigDecimalConverter());
+        } else {
+            converterList.add(new BigDecimalToDoubleConverter());
+            converterList.add(new DoubleToBigDecimalConverter());
+        }
         return new CustomConversions(converterList);
     }
     
@@ -1,7 +1,11 @@
 package com.pdd.db.mongo;
 
 import com.mongodb.*;
+import com.pdd.db.mongo.metrics.MongoPoolMonitor;
+import com.pdd.db.mongo.metrics.MongoPoolMonitors;
+import com.pdd.db.mongo.metrics.MongoPoolSaturationListener;
 import lombok.Setter;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
@@ -9,8 +13,12 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.data.mongodb.MongoDbFactory;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.SimpleMongoDbFactory;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * mongo配置
@@ -46,13 +54,108 @@ public class MongoConfiguration {
     @Autowired
     private MongoOptionProperties mongoOptionProperties;
     
+    /**
+     * 连接池监控
+     * @param saturationListeners 连接池饱和告警
+     * @return com.pdd.db.mongo.metrics.MongoPoolMonitors 
+     */
+    @Bean
+    public MongoPoolMonitors mongoPoolMonitors(ObjectProvider<MongoPoolSaturationListener> saturationListeners){
+        return new MongoPoolMonitors(mongoOptionProperties.getPoolSaturationThreshold(),mongoOptionProperties.getPoolSaturationFastFail(),
+                saturationListeners.orderedStream().collect(Collectors.toList()));
+    }
+
     /**
      * mongo工厂
+     * @param mongoPoolMonitors 连接池监控
      * @return org.springframework.data.mongodb.MongoDbFactory 
      */
     @Bean
-    public MongoDbFactory mongoDbFactory(){
+    public MongoDbFactory mongoDbFactory(MongoPoolMonitors mongoPoolMonitors){
         //==========客户端配置==========
+        MongoClientOptions.Builder builder=this.getMongoClientOptionsBuilder();
+        MongoPoolMonitor mongoPoolMonitor=mongoPoolMonitors.create(MongoPoolMonitors.DEFAULT_CLIENT);
+        builder.addConnectionPoolListener(mongoPoolMonitor).addCommandListener(mongoPoolMonitor);
+        MongoClientOptions mongoClientOptions=builder.build();
+        //创建认证客户端
+        MongoClient mongoClient = new MongoClient(this.getServerAddresses(), this.getMongoCredential(), mongoClientOptions);
+        // 创建MongoDbFactory
+        MongoDbFactory mongoDbFactory = new SimpleMongoDbFactory(mongoClient, database);
+        return mongoDbFactory;
+    }
+
+    /**
+     * 负载句柄（每个负载配置使用独立的客户端和连接池）
+     * @param mappingMongoConverter mongo映射转换器
+     * @param mongoPoolMonitors 连接池监控
+     * @return com.pdd.db.mongo.MongoWorkloadTemplates 
+     */
+    @Bean
+    public MongoWorkloadTemplates mongoWorkloadTemplates(MappingMongoConverter mappingMongoConverter, MongoPoolMonitors mongoPoolMonitors){
+        Map<String, MongoTemplate> templates = new LinkedHashMap<>();
+        List<MongoClient> mongoClients = new ArrayList<>();
+        try {
+            for (Map.Entry<String, MongoOptionProperties.WorkloadProfile> entry : mongoOptionProperties.getProfiles().entrySet()) {
+                MongoOptionProperties.WorkloadProfile profile = entry.getValue();
+                //==========客户端配置（负载参数覆盖默认参数）==========
+                MongoClientOptions.Builder builder = this.getMongoClientOptionsBuilder();
+                if (profile.getMaxConnectionsPerHost() != null) {
+                    builder.connectionsPerHost(profile.getMaxConnectionsPerHost());
+                }
+                if (profile.getMinConnectionsPerHost() != null) {
+                    builder.minConnectionsPerHost(profile.getMinConnectionsPerHost());
+                }
+                if (profile.getMaxWaitTime() != null) {
+                    builder.maxWaitTime(profile.getMaxWaitTime());
+                }
+                if (profile.getConnectTimeout() != null) {
+                    builder.connectTimeout(profile.getConnectTimeout());
+                }
+                if (profile.getSocketTimeout() != null) {
+                    builder.socketTimeout(profile.getSocketTimeout());
+                }
+                if (profile.getServerSelectionTimeout() != null) {
+                    builder.serverSelectionTimeout(profile.getServerSelectionTimeout());
+                }
+                ReadPreference readPreference = null;
+                if (profile.getReadPreference() != null) {
+                    readPreference = ReadPreference.valueOf(profile.getReadPreference());
+                    builder.readPreference(readPreference);
+                }
+                WriteConcern writeConcern = WriteConcern.SAFE;
+                if (profile.getWriteConcern() != null) {
+                    writeConcern = WriteConcern.valueOf(profile.getWriteConcern());
+                    if (writeConcern == null) {
+                        throw new IllegalArgumentException("负载[" + entry.getKey() + "]的写关注配置有误：" + profile.getWriteConcern());
+                    }
+                }
+                builder.writeConcern(writeConcern);
+                MongoPoolMonitor mongoPoolMonitor = mongoPoolMonitors.create(entry.getKey());
+                builder.addConnectionPoolListener(mongoPoolMonitor).addCommandListener(mongoPoolMonitor);
+                MongoClient mongoClient = new MongoClient(this.getServerAddresses(), this.getMongoCredential(), builder.build());
+                mongoClients.add(mongoClient);
+                //==========负载句柄==========
+                MongoTemplate mongoTemplate = new MongoTemplate(new SimpleMongoDbFactory(mongoClient, database), mappingMongoConverter);
+                mongoTemplate.setWriteConcern(writeConcern);
+                if (readPreference != null) {
+                    mongoTemplate.setReadPreference(readPreference);
+                }
+                templates.put(entry.getKey(), mongoTemplate);
+            }
+        } catch (RuntimeException e) {
+            for (MongoClient mongoClient : mongoClients) {
+                mongoClient.close();
+            }
+            throw e;
+        }
+        return new MongoWorkloadTemplates(templates, mongoClients);
+    }
+
+    /**
+     * 获取默认客户端配置
+     * @return com.mongodb.MongoClientOptions.Builder 
+     */
+    private MongoClientOptions.Builder getMongoClientOptionsBuilder(){
         MongoClientOptions.Builder builder=new MongoClientOptions.Builder();
         builder.connectionsPerHost(mongoOptionProperties.getMaxConnectionsPerHost());
         builder.minConnectionsPerHost(mongoOptionProperties.getMinConnectionsPerHost());
@@ -72,9 +175,14 @@ public class MongoConfiguration {
         builder.heartbeatConnectTimeout(mongoOptionProperties.getHeartbeatConnectTimeout());
         builder.heartbeatSocketTimeout(mongoOptionProperties.getHeartbeatSocketTimeout());
         builder.localThreshold(mongoOptionProperties.getLocalThreshold());
-        MongoClientOptions mongoClientOptions=builder.build();
-        
-        //==========地址配置==========
+        return builder;
+    }
+
+    /**
+     * 获取地址配置
+     * @return java.util.List<com.mongodb.ServerAddress> 
+     */
+    private List<ServerAddress> getServerAddresses(){
         List<ServerAddress> serverAddressArrayList = new ArrayList<>();
         for (String address : addresses) {
             String[] hostAndPort = address.split(":");
@@ -83,14 +191,15 @@ public class MongoConfiguration {
             ServerAddress serverAddress = new ServerAddress(host, port);
             serverAddressArrayList.add(serverAddress);
         }
-        
-        //连接认证
-        MongoCredential mongoCredential=MongoCredential.createScramSha1Credential(username, database, password.toCharArray());
-        //创建认证客户端
-        MongoClient mongoClient = new MongoClient(serverAddressArrayList, mongoCredential, mongoClientOptions);
-        // 创建MongoDbFactory
-        MongoDbFactory mongoDbFactory = new SimpleMongoDbFactory(mongoClient, database);
-        return mongoDbFactory;
+        return serverAddressArrayList;
+    }
+
+    /**
+     * 获取连接认证
+     * @return com.mongodb.MongoCredential 
+     */
+    private MongoCredential getMongoCredential(){
+        return MongoCredential.createScramSha1Credential(username, database, password.toCharArray());
     }
     
 }
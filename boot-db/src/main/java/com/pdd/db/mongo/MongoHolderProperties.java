@@ -0,0 +1,226 @@
+package com.pdd.db.mongo;
+
+import com.pdd.db.mongo.converter.BigDecimalMode;
+import com.pdd.db.mongo.holder.CountMode;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * mongo句柄扩展功能配置
+ **/
+@Data
+@Component
+@ConfigurationProperties(prefix = "mongodb.holder")
+public class MongoHolderProperties {
+
+    /**
+     * 并行游标扫描线程数（默认CPU核数）
+     */
+    private Integer parallelScanThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 并行游标扫描分区数（小于等于0时，取线程数的4倍，分区越细负载越均衡）
+     */
+    private Integer parallelScanPartitions = 0;
+
+    /**
+     * 并行游标扫描每个分区的采样数（用于计算分区边界）
+     */
+    private Integer parallelScanSamplesPerPartition = 20;
+
+    /**
+     * 批量游标查询预取缓冲批次数（内存上限约为（缓冲批次数+2）个批次）
+     */
+    private Integer cursorPrefetchChunks = 2;
+
+    /**
+     * 批量游标查询预取线程数上限（同时预取的查询数，超过时由查询线程自己拉取）
+     */
+    private Integer cursorPrefetchThreads = 16;
+
+    /**
+     * 批量写入每批数量
+     */
+    private Integer bulkWriteBatchSize = 1000;
+
+    /**
+     * 是否记录操作指标（耗时分布、记录数、失败数；注册了MongoMetricsRegistry的bean时以bean为准）
+     */
+    private boolean metricsEnabled = false;
+
+    /**
+     * 异步句柄：主键和单条查询线程数
+     */
+    private Integer asyncPointReadThreads = 16;
+
+    /**
+     * 异步句柄：主键和单条查询等待队列长度（队列满时直接拒绝）
+     */
+    private Integer asyncPointReadQueueSize = 1000;
+
+    /**
+     * 异步句柄：多条查询、计数、聚合线程数（同时限制此类操作占用的连接数）
+     */
+    private Integer asyncScanThreads = 4;
+
+    /**
+     * 异步句柄：多条查询、计数、聚合等待队列长度
+     */
+    private Integer asyncScanQueueSize = 100;
+
+    /**
+     * 异步句柄：写入线程数
+     */
+    private Integer asyncWriteThreads = 8;
+
+    /**
+     * 异步句柄：写入等待队列长度
+     */
+    private Integer asyncWriteQueueSize = 1000;
+
+    /**
+     * BigDecimal映射方式（DOUBLE：存储为Double（默认）；DOUBLE_FAST：存储为Double，读取不生成中间字符串；DECIMAL128：存储为Decimal128）
+     */
+    private BigDecimalMode bigDecimalMode = BigDecimalMode.DOUBLE;
+
+    /**
+     * 可恢复扫描：每段记录数（每段使用一个短生命周期游标，段内读取完毕即关闭）
+     */
+    private Integer resumableScanSegmentSize = 10000;
+
+    /**
+     * 可恢复扫描：每处理多少条记录保存一次检查点
+     */
+    private Integer resumableScanCheckpointInterval = 1000;
+
+    /**
+     * 可恢复扫描：检查点集合名（未注册ScanCheckpointStore的bean时使用）
+     */
+    private String scanCheckpointCollection = "t_scan_checkpoint";
+
+    /**
+     * count方法的计数方式（EXACT：精确计数（默认）；ESTIMATED：无条件时估算；CACHED：无条件时估算，有条件时缓存精确计数）
+     */
+    private CountMode countMode = CountMode.EXACT;
+
+    /**
+     * 计数缓存过期时间（毫秒）
+     */
+    private Long countCacheTtlMillis = 1000L;
+
+    /**
+     * 每个集合的计数缓存最大条数
+     */
+    private Integer countCacheMaxSize = 1000;
+
+    /**
+     * 变更跟踪：一个跟踪范围内最多记录快照的实体数
+     */
+    private Integer changeTrackingMaxEntities = 10000;
+
+    /**
+     * 流式批量插入：工作线程数（同时转换和写入的批次数）
+     */
+    private Integer ingestThreads = 4;
+
+    /**
+     * 流式批量插入：预读等待工作线程的批次数
+     */
+    private Integer ingestQueueBatches = 4;
+
+    /**
+     * 流式批量插入：每批条数
+     */
+    private Integer ingestBatchSize = 1000;
+
+    /**
+     * 流式批量插入：每次写入的最大字节数（超过时拆分）
+     */
+    private Long ingestBatchBytes = 8388608L;
+
+    /**
+     * 游标聚合：未指定时是否允许使用磁盘
+     */
+    private boolean aggregateAllowDiskUse = true;
+
+    /**
+     * 主键合并查询：是否开启（开启后并发的findById、extFindById合并为_id $in查询）
+     */
+    private boolean idBatchEnabled = false;
+
+    /**
+     * 主键合并查询：合并窗口（毫秒）
+     */
+    private Long idBatchWindowMillis = 2L;
+
+    /**
+     * 主键合并查询：每次查询最大主键数（同时为extFindByIds的分批大小）
+     */
+    private Integer idBatchMaxSize = 100;
+
+    /**
+     * 主键合并查询：窗口到期的查询线程数
+     */
+    private Integer idBatchThreads = 2;
+
+    /**
+     * 慢查询检测：是否开启（开启后按查询形态累计耗时，慢查询或抽样命中的形态后台执行explain）
+     */
+    private boolean queryProfileEnabled = false;
+
+    /**
+     * 慢查询检测：慢查询阈值（毫秒）
+     */
+    private Long queryProfileSlowMillis = 100L;
+
+    /**
+     * 慢查询检测：非慢查询的抽样比例（0~1，0为只检测慢查询）
+     */
+    private Double queryProfileSampleRate = 0.0;
+
+    /**
+     * 慢查询检测：同一形态explain的最小间隔（毫秒）
+     */
+    private Long queryProfileExplainIntervalMillis = 60000L;
+
+    /**
+     * 慢查询检测：最多记录的形态数
+     */
+    private Integer queryProfileMaxShapes = 1000;
+
+    /**
+     * 慢查询检测：explain的详细程度（queryPlanner不执行查询；executionStats执行查询并返回扫描数）
+     */
+    private String queryProfileExplainVerbosity = "executionStats";
+
+    /**
+     * 软删除清理：是否开启后台清理（清理标注了MongoSoftDelete的实体类中超过保留期的已删除记录）
+     */
+    private boolean softDeletePurgeEnabled = true;
+
+    /**
+     * 软删除清理：运行间隔（毫秒）
+     */
+    private Long softDeletePurgeIntervalMillis = 60000L;
+
+    /**
+     * 软删除清理：每批删除条数
+     */
+    private Integer softDeletePurgeBatchSize = 500;
+
+    /**
+     * 软删除清理：批次间暂停（毫秒）
+     */
+    private Long softDeletePurgePauseMillis = 100L;
+
+    /**
+     * 软删除清理：每次运行每个集合最多删除的批次数
+     */
+    private Integer softDeletePurgeMaxBatches = 20;
+
+    /**
+     * 分区查询：并行查询多个分区的线程数
+     */
+    private Integer partitionQueryThreads = 4;
+}
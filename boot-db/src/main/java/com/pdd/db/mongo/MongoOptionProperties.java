@@ -4,6 +4,9 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * 数据库参数配置
  **/
@@ -29,4 +32,66 @@ public class MongoOptionProperties {
     private Boolean sslEnabled = false;
     private Boolean sslInvalidHostNameAllowed = false;
     private Integer threadsAllowedToBlockForConnectionMultiplier = 5;
+
+    /**
+     * 连接池饱和阈值（阻塞等待连接的线程数达到此值时回调饱和告警，0为不检测）
+     */
+    private Integer poolSaturationThreshold = 0;
+
+    /**
+     * 连接池饱和时是否快速失败（句柄直接抛出MongoWaitQueueFullException，不再进入等待队列）
+     */
+    private Boolean poolSaturationFastFail = false;
+
+    /**
+     * 负载配置（按名称使用独立的客户端和连接池；oltp、analytics、bulk-write由句柄自动选择，未配置时使用默认客户端）
+     */
+    private Map<String, WorkloadProfile> profiles = new LinkedHashMap<>();
+
+    /**
+     * 负载配置（未配置的参数取默认客户端的参数）
+     */
+    @Data
+    public static class WorkloadProfile {
+
+        /**
+         * 每个地址的最大连接数
+         */
+        private Integer maxConnectionsPerHost;
+
+        /**
+         * 每个地址的最小连接数
+         */
+        private Integer minConnectionsPerHost;
+
+        /**
+         * 获取连接的最大等待时间（毫秒）
+         */
+        private Integer maxWaitTime;
+
+        /**
+         * 连接超时时间（毫秒）
+         */
+        private Integer connectTimeout;
+
+        /**
+         * 读写超时时间（毫秒，0为不超时）
+         */
+        private Integer socketTimeout;
+
+        /**
+         * 服务选择超时时间（毫秒）
+         */
+        private Integer serverSelectionTimeout;
+
+        /**
+         * 读偏好（primary、primaryPreferred、secondary、secondaryPreferred、nearest，默认primary）
+         */
+        private String readPreference;
+
+        /**
+         * 写关注（ACKNOWLEDGED、W1、W2、MAJORITY、JOURNALED、UNACKNOWLEDGED，默认SAFE）
+         */
+        private String writeConcern;
+    }
 }
@@ -0,0 +1,63 @@
+package com.pdd.db.mongo;
+
+import com.mongodb.MongoClient;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 负载句柄（按负载配置名称获取独立客户端的mongo句柄）
+ **/
+public class MongoWorkloadTemplates implements DisposableBean {
+
+    /**
+     * 负载配置名称对应的句柄
+     */
+    private final Map<String, MongoTemplate> templates;
+
+    /**
+     * 负载客户端（容器关闭时关闭）
+     */
+    private final List<MongoClient> mongoClients;
+
+    public MongoWorkloadTemplates(Map<String, MongoTemplate> templates, List<MongoClient> mongoClients){
+        this.templates=templates;
+        this.mongoClients=mongoClients;
+    }
+
+    /**
+     * 获取负载句柄
+     * @param profile 负载配置名称
+     * @return org.springframework.data.mongodb.core.MongoTemplate 未配置时返回null
+     */
+    public MongoTemplate getTemplate(String profile){
+        return templates.get(profile);
+    }
+
+    /**
+     * 获取已配置的负载名称
+     * @return java.util.Set<java.lang.String> 
+     */
+    public Set<String> getProfileNames(){
+        return Collections.unmodifiableSet(templates.keySet());
+    }
+
+    /**
+     * 是否未配置任何负载
+     * @return boolean 
+     */
+    public boolean isEmpty(){
+        return templates.isEmpty();
+    }
+
+    @Override
+    public void destroy() {
+        for(MongoClient mongoClient:mongoClients){
+            mongoClient.close();
+        }
+    }
+}
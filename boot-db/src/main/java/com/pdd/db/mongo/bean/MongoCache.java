@@ -0,0 +1,30 @@
+package com.pdd.db.mongo.bean;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * mongo实体主键查询缓存
+ * <br>标注在MongoBean子类上，开启MongoHolder.findById/extFindById的读穿透缓存（按集合缓存）
+ * <br>通过MongoHolder更新、删除数据时自动失效；绕过MongoHolder直接写库的数据在缓存过期前可能读到旧值
+ **/
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface MongoCache {
+
+    /**
+     * 最大缓存条数（超过时淘汰最久未访问的记录）
+     * @return int
+     */
+    int maxSize() default 1000;
+
+    /**
+     * 缓存有效期（秒）
+     * @return long
+     */
+    long ttlSeconds() default 60;
+}
@@ -0,0 +1,47 @@
+package com.pdd.db.mongo.bean;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * mongo实体按时间分区
+ * <br>标注在MongoBean子类上，按分区字段的值写入“集合名_时间后缀”集合（如t_log_202001），首次写入分区时创建indexes中的索引
+ * <br>MongoHolder.find、findOne、count按查询条件中分区字段的范围只查询相关分区，多个分区并行查询后合并排序、跳过和限制
+ * （合并排序不支持排序规则，带collation的排序查询抛出IllegalArgumentException）；
+ * 按主键的查询、更新、删除在所有分区上并行执行，按条件的更新、删除在相关分区上执行
+ * <br>聚合、游标、键集分页、可恢复/增量/并行扫描、流式插入不能按分区路由，对分区实体类抛出IllegalArgumentException；
+ * 分区实体类不支持软删除
+ * <br>过期数据通过MongoHolder.extDropPartitionsBefore删除整个分区集合，代替按范围删除
+ **/
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface MongoPartition {
+
+    /**
+     * 分区字段（实体属性名）
+     * @return java.lang.String
+     */
+    String field() default "createDate";
+
+    /**
+     * 分区时间单位
+     * @return com.pdd.db.mongo.bean.PartitionUnit
+     */
+    PartitionUnit unit() default PartitionUnit.MONTH;
+
+    /**
+     * 分区字段为数字或字符串时的日期格式（字段为日期类型时忽略）
+     * @return java.lang.String
+     */
+    String pattern() default "yyyyMMdd";
+
+    /**
+     * 每个分区的索引（每项为索引键的json，如：{userId:1,createDate:-1}）
+     * @return java.lang.String[]
+     */
+    String[] indexes() default {};
+}
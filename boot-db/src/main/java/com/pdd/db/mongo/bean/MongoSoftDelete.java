@@ -0,0 +1,33 @@
+package com.pdd.db.mongo.bean;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * mongo实体软删除
+ * <br>标注在MongoBean子类上，MongoHolder的查询、计数和游标方法自动追加delFlag=false条件（查询条件中已有delFlag时不追加），
+ * extRemoveById改为将delFlag置为true并记录删除时间（delTime），超过保留期的记录由后台任务分批物理删除
+ * <br>delFlag为空的记录不会被查询到：插入时为空会自动置为false，已有数据需先调用MongoHolder.extInitDelFlag
+ * <br>首次使用实体类（或后台清理前）创建索引：liveIndexes中的索引只包含delFlag=false的记录（索引名为默认索引名加_live），另建delTime索引只包含已删除的记录；
+ * 创建失败不影响读写，间隔一段时间后重试
+ **/
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface MongoSoftDelete {
+
+    /**
+     * 已删除记录的保留天数（超过后物理删除）
+     * @return int
+     */
+    int retentionDays() default 30;
+
+    /**
+     * 只包含未删除记录的索引（每项为索引键的json，如：{userName:1,age:-1}）
+     * @return java.lang.String[]
+     */
+    String[] liveIndexes() default {};
+}
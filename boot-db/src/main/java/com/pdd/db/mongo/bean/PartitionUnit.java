@@ -0,0 +1,32 @@
+package com.pdd.db.mongo.bean;
+
+/**
+ * 分区时间单位（分区集合名为：集合名_时间后缀）
+ **/
+public enum PartitionUnit {
+    /**
+     * 按天分区（后缀yyyyMMdd）
+     */
+    DAY("yyyyMMdd"),
+    /**
+     * 按月分区（后缀yyyyMM）
+     */
+    MONTH("yyyyMM"),
+    /**
+     * 按年分区（后缀yyyy）
+     */
+    YEAR("yyyy");
+
+    /**
+     * 后缀格式
+     */
+    private final String suffixPattern;
+
+    PartitionUnit(String suffixPattern){
+        this.suffixPattern=suffixPattern;
+    }
+
+    public String getSuffixPattern(){
+        return suffixPattern;
+    }
+}
@@ -0,0 +1,19 @@
+package com.pdd.db.mongo.converter;
+
+/**
+ * BigDecimal映射方式
+ **/
+public enum BigDecimalMode {
+    /**
+     * 存储为Double，读取时经字符串转换（原有方式）
+     */
+    DOUBLE,
+    /**
+     * 存储为Double，读取时不生成中间字符串（结果与DOUBLE一致）
+     */
+    DOUBLE_FAST,
+    /**
+     * 存储为Decimal128（不丢失精度，需mongo3.4及以上）；读取时兼容已存储的Double
+     */
+    DECIMAL128
+}
@@ -0,0 +1,20 @@
+package com.pdd.db.mongo.converter;
+
+import org.bson.types.Decimal128;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.WritingConverter;
+import org.springframework.stereotype.Component;
+import java.math.BigDecimal;
+
+/**
+ * mongo数字转换器(BigDecimal转Decimal128，不丢失精度)
+ * <br>有效位数超过34位时抛出NumberFormatException
+ **/
+@Component
+@WritingConverter
+public class BigDecimalToDecimal128Converter implements Converter<BigDecimal, Decimal128> {
+    @Override
+    public Decimal128 convert(BigDecimal source) {
+        return new Decimal128(source);
+    }
+}
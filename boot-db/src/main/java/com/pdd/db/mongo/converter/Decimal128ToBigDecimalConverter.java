@@ -0,0 +1,19 @@
+package com.pdd.db.mongo.converter;
+
+import org.bson.types.Decimal128;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.stereotype.Component;
+import java.math.BigDecimal;
+
+/**
+ * mongo数字转换器(Decimal128转BigDecimal)
+ **/
+@Component
+@ReadingConverter
+public class Decimal128ToBigDecimalConverter implements Converter<Decimal128, BigDecimal> {
+    @Override
+    public BigDecimal convert(Decimal128 source) {
+        return source.bigDecimalValue();
+    }
+}
@@ -0,0 +1,71 @@
+package com.pdd.db.mongo.converter;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.stereotype.Component;
+import java.math.BigDecimal;
+
+/**
+ * mongo数字转换器(Double转BigDecimal，不生成中间字符串)
+ * <br>结果与new BigDecimal(String.valueOf(source))一致（数值和精度均相同）：
+ * 取能还原为原double的最少小数位数，直接由整数和精度构造；
+ * 绝对值不在[0.001,10000000)范围内（字符串为科学计数法）或小数位数过多时，按字符串方式转换
+ **/
+@Component
+@ReadingConverter
+public class FastDoubleToBigDecimalConverter implements Converter<Double, BigDecimal> {
+
+    /**
+     * 最大小数位数
+     */
+    private static final int MAX_SCALE=15;
+
+    /**
+     * 10的幂（均可用double精确表示）
+     */
+    private static final double[] POW10=new double[MAX_SCALE+1];
+
+    /**
+     * double可精确表示的最大整数
+     */
+    private static final double MAX_EXACT_LONG=(double)(1L<<53);
+
+    static {
+        POW10[0]=1;
+        for(int i=1;i<=MAX_SCALE;i++){
+            POW10[i]=POW10[i-1]*10;
+        }
+    }
+
+    @Override
+    public BigDecimal convert(Double source) {
+        return toBigDecimal(source);
+    }
+
+    /**
+     * double转BigDecimal
+     * @param source 数值
+     * @return java.math.BigDecimal 
+     */
+    public static BigDecimal toBigDecimal(double source){
+        if(source==0){
+            //与"0.0"、"-0.0"一致
+            return BigDecimal.valueOf(0,1);
+        }
+        double abs=Math.abs(source);
+        if(abs>=1e-3 && abs<1e7){
+            for(int scale=0;scale<=MAX_SCALE;scale++){
+                double scaled=source*POW10[scale];
+                if(Math.abs(scaled)>=MAX_EXACT_LONG){
+                    break;
+                }
+                double unscaled=Math.rint(scaled);
+                if(unscaled/POW10[scale]==source){
+                    //字符串形式至少有一位小数（如"12.0"）
+                    return scale==0?BigDecimal.valueOf((long)unscaled*10,1):BigDecimal.valueOf((long)unscaled,scale);
+                }
+            }
+        }
+        return new BigDecimal(String.valueOf(source));
+    }
+}
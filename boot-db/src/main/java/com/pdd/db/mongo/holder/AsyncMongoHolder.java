@@ -0,0 +1,376 @@
+package com.pdd.db.mongo.holder;
+
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import com.pdd.db.mongo.MongoHolderProperties;
+import com.pdd.db.mongo.bean.MongoBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 异步mongo句柄（MongoHolder的异步版本，返回CompletableFuture）
+ * <br>按操作类别使用独立的有界线程池（舱壁隔离）：主键和单条查询、多条查询（计数、聚合）、写入互不排队，
+ * 批量扫描占满线程时不影响主键查询的延迟；每类操作占用的连接数不超过其线程数
+ * <br>等待队列满时直接拒绝，返回的future以RejectedExecutionException异常完成
+ * <br>回调（thenApply等非Async方法）在句柄线程中执行，耗时的处理请切换到业务线程池
+ **/
+@Component
+public class AsyncMongoHolder {
+
+    /**
+     * mongo句柄
+     */
+    @Autowired
+    private MongoHolder mongoHolder;
+
+    /**
+     * 句柄扩展功能配置
+     */
+    @Autowired
+    private MongoHolderProperties mongoHolderProperties;
+
+    /**
+     * 主键和单条查询线程池
+     */
+    private Bulkhead pointReadBulkhead;
+
+    /**
+     * 多条查询、计数、聚合线程池
+     */
+    private Bulkhead scanBulkhead;
+
+    /**
+     * 写入线程池
+     */
+    private Bulkhead writeBulkhead;
+
+    /**
+     * 初始化线程池
+     * @return void 
+     */
+    @PostConstruct
+    public void init(){
+        pointReadBulkhead=new Bulkhead("pointRead",mongoHolderProperties.getAsyncPointReadThreads(),mongoHolderProperties.getAsyncPointReadQueueSize());
+        scanBulkhead=new Bulkhead("scan",mongoHolderProperties.getAsyncScanThreads(),mongoHolderProperties.getAsyncScanQueueSize());
+        writeBulkhead=new Bulkhead("write",mongoHolderProperties.getAsyncWriteThreads(),mongoHolderProperties.getAsyncWriteQueueSize());
+    }
+
+    /**
+     * 关闭线程池（等待中的任务以异常完成）
+     * @return void 
+     */
+    @PreDestroy
+    public void destroy(){
+        pointReadBulkhead.shutdown();
+        scanBulkhead.shutdown();
+        writeBulkhead.shutdown();
+    }
+
+    /**
+     * 获取线程池统计
+     * @return java.util.List<com.pdd.db.mongo.holder.BulkheadStats> 
+     */
+    public List<BulkheadStats> getBulkheadStats(){
+        List<BulkheadStats> stats=new ArrayList<>(3);
+        stats.add(pointReadBulkhead.getStats());
+        stats.add(scanBulkhead.getStats());
+        stats.add(writeBulkhead.getStats());
+        return stats;
+    }
+
+    //--------------------【主键和单条查询】--------------------
+
+    /**
+     * 查询第一条
+     * @param query 
+     * @param entityClass 
+     * @return java.util.concurrent.CompletableFuture<T> 
+     */
+    public <T extends MongoBean> CompletableFuture<T> findOne(Query query, Class<T> entityClass){
+        return pointReadBulkhead.submit(() -> mongoHolder.findOne(query,entityClass));
+    }
+
+    /**
+     * 根据主键查询
+     * @param id 
+     * @param entityClass 
+     * @return java.util.concurrent.CompletableFuture<T> 
+     */
+    public <T extends MongoBean> CompletableFuture<T> findById(Object id, Class<T> entityClass){
+        return pointReadBulkhead.submit(() -> mongoHolder.findById(id,entityClass));
+    }
+
+    /**
+     * 主键查询
+     * @param _id 
+     * @param entityClass 
+     * @return java.util.concurrent.CompletableFuture<T> 
+     */
+    public <T extends MongoBean> CompletableFuture<T> extFindById(String _id, Class<T> entityClass){
+        return pointReadBulkhead.submit(() -> mongoHolder.extFindById(_id,entityClass));
+    }
+
+    /**
+     * 根据多个主键查询
+     * @param ids 
+     * @param entityClass 
+     * @return java.util.concurrent.CompletableFuture<java.util.List<T>> 
+     */
+    public <T extends MongoBean> CompletableFuture<List<T>> extFindByIds(Collection<String> ids, Class<T> entityClass){
+        return pointReadBulkhead.submit(() -> mongoHolder.extFindByIds(ids,entityClass));
+    }
+
+    //--------------------【多条查询、计数、聚合】--------------------
+
+    /**
+     * 查询满足条件记录
+     * @param query 
+     * @param entityClass 
+     * @return java.util.concurrent.CompletableFuture<java.util.List<T>> 
+     */
+    public <T extends MongoBean> CompletableFuture<List<T>> find(Query query, Class<T> entityClass){
+        return scanBulkhead.submit(() -> mongoHolder.find(query,entityClass));
+    }
+
+    /**
+     * 查询总数
+     * @param query 
+     * @param entityClass 
+     * @return java.util.concurrent.CompletableFuture<java.lang.Long> 
+     */
+    public <T extends MongoBean> CompletableFuture<Long> count(Query query, Class<T> entityClass){
+        return scanBulkhead.submit(() -> mongoHolder.count(query,entityClass));
+    }
+
+    /**
+     * 聚合操作
+     * @param aggregation 
+     * @param entityClass 
+     * @param outputType 
+     * @return java.util.concurrent.CompletableFuture<org.springframework.data.mongodb.core.aggregation.AggregationResults<O>> 
+     */
+    public <O> CompletableFuture<AggregationResults<O>> aggregate(Aggregation aggregation, Class<? extends MongoBean> entityClass, Class<O> outputType){
+        return scanBulkhead.submit(() -> mongoHolder.aggregate(aggregation,entityClass,outputType));
+    }
+
+    /**
+     * 执行游标查询（执行器在扫描线程中调用）
+     * @param query 查询器
+     * @param entityClass 查询实体
+     * @param batchSize 批次大小
+     * @param executor 执行器
+     * @return java.util.concurrent.CompletableFuture<java.lang.Void> 
+     */
+    public <T extends MongoBean> CompletableFuture<Void> extCursorQueryExe(Query query, Class<T> entityClass, Integer batchSize, Executor<T> executor){
+        return scanBulkhead.submit(() -> {
+            mongoHolder.extCursorQueryExe(query,entityClass,batchSize,executor);
+            return null;
+        });
+    }
+
+    //--------------------【写入】--------------------
+
+    /**
+     * 插入数据
+     * @param objectToSave 
+     * @return java.util.concurrent.CompletableFuture<T> 
+     */
+    public <T extends MongoBean> CompletableFuture<T> insert(T objectToSave){
+        return writeBulkhead.submit(() -> mongoHolder.insert(objectToSave));
+    }
+
+    /**
+     * 批量插入数据
+     * @param batchToSave 
+     * @return java.util.concurrent.CompletableFuture<java.util.Collection<T>> 
+     */
+    public <T extends MongoBean> CompletableFuture<Collection<T>> insertAll(Collection<? extends T> batchToSave){
+        return writeBulkhead.submit(() -> mongoHolder.insertAll(batchToSave));
+    }
+
+    /**
+     * 条件删除
+     * @param query 
+     * @param entityClass 
+     * @return java.util.concurrent.CompletableFuture<com.mongodb.client.result.DeleteResult> 
+     */
+    public <T extends MongoBean> CompletableFuture<DeleteResult> remove(Query query, Class<T> entityClass){
+        return writeBulkhead.submit(() -> mongoHolder.remove(query,entityClass));
+    }
+
+    /**
+     * 根据主键删除
+     * @param _id 主键
+     * @param entityClass mongo实体类
+     * @return java.util.concurrent.CompletableFuture<com.mongodb.client.result.DeleteResult> 
+     */
+    public <T extends MongoBean> CompletableFuture<DeleteResult> extRemoveById(String _id, Class<T> entityClass){
+        return writeBulkhead.submit(() -> mongoHolder.extRemoveById(_id,entityClass));
+    }
+
+    /**
+     * 更新第一条
+     * @param query 查询条件
+     * @param mongoBean 要更新的实体
+     * @param updateFields 要更新的字段
+     * @return java.util.concurrent.CompletableFuture<com.mongodb.client.result.UpdateResult> 
+     */
+    public <T extends MongoBean> CompletableFuture<UpdateResult> extUpdateFirst(Query query, T mongoBean, String... updateFields){
+        return writeBulkhead.submit(() -> mongoHolder.extUpdateFirst(query,mongoBean,updateFields));
+    }
+
+    /**
+     * 批量更新
+     * @param query 查询条件
+     * @param mongoBean 要更新的实体
+     * @param updateFields 要更新的字段
+     * @return java.util.concurrent.CompletableFuture<com.mongodb.client.result.UpdateResult> 
+     */
+    public <T extends MongoBean> CompletableFuture<UpdateResult> extUpdateMulti(Query query, T mongoBean, String... updateFields){
+        return writeBulkhead.submit(() -> mongoHolder.extUpdateMulti(query,mongoBean,updateFields));
+    }
+
+    /**
+     * 根据主键更新数据（更新指定的字段/更新不为空的字段）
+     * @param _id 主键
+     * @param mongoBean 要更新的实体
+     * @param updateFields 要更新的字段
+     * @return java.util.concurrent.CompletableFuture<com.mongodb.client.result.UpdateResult> 
+     */
+    public <T extends MongoBean> CompletableFuture<UpdateResult> extUpdateById(String _id, T mongoBean, String... updateFields){
+        return writeBulkhead.submit(() -> mongoHolder.extUpdateById(_id,mongoBean,updateFields));
+    }
+
+    /**
+     * 根据主键更新所有字段
+     * @param _id 主键
+     * @param mongoBean 要更新的实体
+     * @return java.util.concurrent.CompletableFuture<com.mongodb.client.result.UpdateResult> 
+     */
+    public <T extends MongoBean> CompletableFuture<UpdateResult> extUpdateAllById(String _id, T mongoBean){
+        return writeBulkhead.submit(() -> mongoHolder.extUpdateAllById(_id,mongoBean));
+    }
+
+    /**
+     * 根据主键批量更新（更新指定的字段/更新不为空的字段）
+     * @param mongoBeans 要更新的实体
+     * @param updateFields 要更新的字段
+     * @return java.util.concurrent.CompletableFuture<com.pdd.db.mongo.holder.BulkResult> 
+     */
+    public <T extends MongoBean> CompletableFuture<BulkResult> extBulkUpdateById(Collection<T> mongoBeans, String... updateFields){
+        return writeBulkhead.submit(() -> mongoHolder.extBulkUpdateById(mongoBeans,updateFields));
+    }
+
+    /**
+     * 有界线程池（舱壁）
+     */
+    private static final class Bulkhead {
+
+        private final String name;
+
+        private final ThreadPoolExecutor pool;
+
+        private final int queueCapacity;
+
+        private final LongAdder rejectedCount=new LongAdder();
+
+        Bulkhead(String name, int threads, int queueCapacity){
+            this.name=name;
+            this.queueCapacity=Math.max(queueCapacity,1);
+            CustomizableThreadFactory threadFactory=new CustomizableThreadFactory("mongo-async-"+name+"-");
+            threadFactory.setDaemon(true);
+            threads=Math.max(threads,1);
+            this.pool=new ThreadPoolExecutor(threads,threads,60,TimeUnit.SECONDS,new ArrayBlockingQueue<>(this.queueCapacity),threadFactory,new ThreadPoolExecutor.AbortPolicy());
+            this.pool.allowCoreThreadTimeOut(true);
+        }
+
+        /**
+         * 提交任务（队列满时返回以RejectedExecutionException完成的future）
+         * @param task 任务
+         * @return java.util.concurrent.CompletableFuture<R> 
+         */
+        <R> CompletableFuture<R> submit(Callable<R> task){
+            CompletableFuture<R> future=new CompletableFuture<>();
+            try {
+                pool.execute(new BulkheadTask<>(task,future));
+            } catch (RejectedExecutionException e) {
+                rejectedCount.increment();
+                future.completeExceptionally(new RejectedExecutionException("mongo异步句柄["+name+"]繁忙，等待队列已满",e));
+            }
+            return future;
+        }
+
+        /**
+         * 关闭线程池（等待中的任务以RejectedExecutionException完成）
+         * @return void 
+         */
+        void shutdown(){
+            for(Runnable runnable:pool.shutdownNow()){
+                if(runnable instanceof BulkheadTask){
+                    ((BulkheadTask<?>)runnable).future.completeExceptionally(new RejectedExecutionException("mongo异步句柄["+name+"]已关闭"));
+                }
+            }
+        }
+
+        /**
+         * 获取统计
+         * @return com.pdd.db.mongo.holder.BulkheadStats 
+         */
+        BulkheadStats getStats(){
+            BulkheadStats stats=new BulkheadStats();
+            stats.setName(name);
+            stats.setThreads(pool.getMaximumPoolSize());
+            stats.setActiveCount(pool.getActiveCount());
+            stats.setQueuedCount(pool.getQueue().size());
+            stats.setQueueCapacity(queueCapacity);
+            stats.setCompletedCount(pool.getCompletedTaskCount());
+            stats.setRejectedCount(rejectedCount.sum());
+            return stats;
+        }
+    }
+
+    /**
+     * 线程池任务（持有future，关闭时完成等待中的任务）
+     */
+    private static final class BulkheadTask<R> implements Runnable {
+
+        private final Callable<R> task;
+
+        private final CompletableFuture<R> future;
+
+        BulkheadTask(Callable<R> task, CompletableFuture<R> future){
+            this.task=task;
+            this.future=future;
+        }
+
+        @Override
+        public void run() {
+            //等待期间已取消的任务不再执行
+            if(future.isDone()){
+                return;
+            }
+            try {
+                future.complete(task.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
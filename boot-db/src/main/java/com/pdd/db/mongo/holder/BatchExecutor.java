@@ -0,0 +1,16 @@
+package com.pdd.db.mongo.holder;
+
+import java.util.List;
+
+/**
+ * mongo游标批量执行器
+ **/
+public interface BatchExecutor<T> {
+    
+    /**
+     * 执行
+     * @param cModels 执行实体类（一批，与游标批次大小一致，最后一批可能不足）
+     * @return void 
+     */
+    void invoke(List<T> cModels) throws Exception;
+}
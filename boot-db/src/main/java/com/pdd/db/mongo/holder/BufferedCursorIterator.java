@@ -0,0 +1,121 @@
+package com.pdd.db.mongo.holder;
+
+import com.pdd.db.mongo.metrics.ScanMetrics;
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * 缓冲游标迭代器（后台线程按批预取并转换，放入有界缓冲区）
+ * <br>缓冲区满时后台线程等待消费方，内存占用与结果集大小无关
+ * <br>读取完毕或异常时自动关闭；提前结束时需调用close
+ **/
+class BufferedCursorIterator<T> implements CloseableIterator<T> {
+
+    /**
+     * 游标预取器（为空表示无记录）
+     */
+    private final CursorPrefetcher<T> prefetcher;
+
+    /**
+     * 扫描指标
+     */
+    private final ScanMetrics scanMetrics;
+
+    /**
+     * 关闭回调（参数为是否因异常关闭，可为空）
+     */
+    private final Consumer<Boolean> closeListener;
+
+    /**
+     * 当前批次
+     */
+    private List<T> chunk;
+
+    /**
+     * 当前批次的读取位置
+     */
+    private int position;
+
+    /**
+     * 是否已关闭
+     */
+    private boolean closed;
+
+    /**
+     * @param prefetcher 游标预取器（可为空）
+     * @param scanMetrics 扫描指标
+     * @param closeListener 关闭回调（可为空）
+     */
+    BufferedCursorIterator(CursorPrefetcher<T> prefetcher, ScanMetrics scanMetrics, Consumer<Boolean> closeListener){
+        this.prefetcher=prefetcher;
+        this.scanMetrics=scanMetrics;
+        this.closeListener=closeListener;
+        this.closed=prefetcher==null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(closed){
+            return false;
+        }
+        if(chunk!=null && position<chunk.size()){
+            return true;
+        }
+        try {
+            chunk=prefetcher.next();
+        } catch (RuntimeException e) {
+            this.close(true);
+            throw e;
+        } catch (InterruptedException e) {
+            this.close(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("游标预取被中断",e);
+        } catch (Exception e) {
+            this.close(true);
+            throw new IllegalStateException(e.getMessage(),e);
+        }
+        position=0;
+        if(chunk==null || chunk.isEmpty()){
+            this.close(false);
+            return false;
+        }
+        scanMetrics.addExecute(0,chunk.size());
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if(!this.hasNext()){
+            throw new NoSuchElementException();
+        }
+        return chunk.get(position++);
+    }
+
+    @Override
+    public void close() {
+        this.close(false);
+    }
+
+    /**
+     * 关闭预取
+     * @param failed 是否因异常关闭
+     * @return void 
+     */
+    private void close(boolean failed){
+        if(closed){
+            return;
+        }
+        closed=true;
+        chunk=null;
+        try {
+            prefetcher.close();
+        } finally {
+            if(closeListener!=null){
+                closeListener.accept(failed);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.pdd.db.mongo.holder;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量写入结果
+ **/
+@Data
+public class BulkResult {
+
+    /**
+     * 提交的记录数
+     */
+    private int totalCount;
+
+    /**
+     * 写入成功的记录数
+     */
+    private int successCount;
+
+    /**
+     * 匹配的记录数（批量写入只返回汇总数量）
+     */
+    private long matchedCount;
+
+    /**
+     * 实际修改的记录数
+     */
+    private long modifiedCount;
+
+    /**
+     * 写入失败的记录
+     */
+    private List<ItemFailure> failures = new ArrayList<>();
+
+    /**
+     * 是否全部写入成功
+     * @return boolean
+     */
+    public boolean isSuccess(){
+        return failures.isEmpty();
+    }
+
+    /**
+     * 失败记录
+     */
+    @Data
+    public static class ItemFailure {
+
+        /**
+         * 在提交集合中的序号（从0开始）
+         */
+        private int index;
+
+        /**
+         * 主键
+         */
+        private String id;
+
+        /**
+         * mongo错误码（非服务端错误时为空）
+         */
+        private Integer code;
+
+        /**
+         * 错误信息
+         */
+        private String message;
+
+        /**
+         * 异常（服务端单条写入错误时为空）
+         */
+        private Exception exception;
+    }
+}
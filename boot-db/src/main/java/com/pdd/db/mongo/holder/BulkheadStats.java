@@ -0,0 +1,45 @@
+package com.pdd.db.mongo.holder;
+
+import lombok.Data;
+
+/**
+ * 异步句柄线程池统计
+ **/
+@Data
+public class BulkheadStats {
+
+    /**
+     * 操作类别（pointRead：主键和单条查询；scan：多条查询、计数、聚合；write：写入）
+     */
+    private String name;
+
+    /**
+     * 线程数
+     */
+    private int threads;
+
+    /**
+     * 正在执行的任务数
+     */
+    private int activeCount;
+
+    /**
+     * 等待中的任务数
+     */
+    private int queuedCount;
+
+    /**
+     * 等待队列长度
+     */
+    private int queueCapacity;
+
+    /**
+     * 已完成的任务数
+     */
+    private long completedCount;
+
+    /**
+     * 被拒绝的任务数
+     */
+    private long rejectedCount;
+}
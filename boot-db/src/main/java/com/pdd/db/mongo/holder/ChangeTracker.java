@@ -0,0 +1,224 @@
+package com.pdd.db.mongo.holder;
+
+import com.pdd.db.mongo.bean.MongoBean;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 变更跟踪器（一个跟踪范围内查询出的实体快照，只在所属线程内使用）
+ * <br>快照为实体按转换器写入的文档，更新时与实体当前写入的文档逐字段比较，只发送变化的字段
+ * <br>快照记录的是查询时的值，查询后其他途径的写入不会反映在比较中
+ **/
+final class ChangeTracker {
+
+    /**
+     * 最多跟踪的实体数（超过后不再跟踪，更新时按原方式全量发送）
+     */
+    private final int maxEntities;
+
+    /**
+     * 实体快照（按实体对象标识）
+     */
+    private final Map<MongoBean, Document> snapshots=new IdentityHashMap<>();
+
+    ChangeTracker(int maxEntities){
+        this.maxEntities=maxEntities;
+    }
+
+    /**
+     * 记录实体快照
+     * @param mongoBean 实体
+     * @param document 实体写入的文档
+     * @return void
+     */
+    void track(MongoBean mongoBean, Document document){
+        if(this.canTrack(mongoBean)){
+            snapshots.put(mongoBean,copyDocument(document));
+        }
+    }
+
+    /**
+     * 实体是否可以记录快照（未超过最多跟踪数，或已跟踪时覆盖快照）
+     * @param mongoBean 实体
+     * @return boolean
+     */
+    boolean canTrack(MongoBean mongoBean){
+        return snapshots.size()<maxEntities || snapshots.containsKey(mongoBean);
+    }
+
+    /**
+     * 实体是否已跟踪
+     * @param mongoBean 实体
+     * @return boolean
+     */
+    boolean isTracked(MongoBean mongoBean){
+        return snapshots.containsKey(mongoBean);
+    }
+
+    /**
+     * 计算实体相对快照的变更
+     * @param mongoBean 实体
+     * @param document 实体当前写入的文档
+     * @param id 更新的主键（与快照主键不一致时不比较）
+     * @param unsetRemoved 快照中有、当前没有的字段是否unset（否：与原更新方式一致，只set）
+     * @return com.pdd.db.mongo.holder.ChangeTracker.Change 未跟踪或主键不一致时返回null
+     */
+    Change diff(MongoBean mongoBean, Document document, Object id, boolean unsetRemoved){
+        Document snapshot=snapshots.get(mongoBean);
+        if(snapshot==null || id==null || !id.equals(snapshot.get("_id"))){
+            return null;
+        }
+        Update update=new Update();
+        boolean changed=diffDocument("",snapshot,document,unsetRemoved,update);
+        return new Change(mongoBean,snapshot,document,unsetRemoved,changed?update:null);
+    }
+
+    /**
+     * 逐字段比较文档，嵌套文档按a.b路径比较
+     * @return boolean 是否有变化
+     */
+    private boolean diffDocument(String prefix, Document before, Document after, boolean unsetRemoved, Update update){
+        boolean changed=false;
+        for(Map.Entry<String, Object> entry:after.entrySet()){
+            String path=prefix+entry.getKey();
+            Object value=entry.getValue();
+            if(before.containsKey(entry.getKey())){
+                Object beforeValue=before.get(entry.getKey());
+                if(Objects.deepEquals(beforeValue,value)){
+                    continue;
+                }
+                if(beforeValue instanceof Document && value instanceof Document && this.isPathDiffable((Document)beforeValue,(Document)value,unsetRemoved)){
+                    changed|=this.diffDocument(path+".",(Document)beforeValue,(Document)value,unsetRemoved,update);
+                    continue;
+                }
+            }
+            update.set(path,value);
+            changed=true;
+        }
+        if(unsetRemoved){
+            for(String key:before.keySet()){
+                if(!after.containsKey(key)){
+                    update.unset(prefix+key);
+                    changed=true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 嵌套文档是否可按子字段路径更新
+     * <br>字段名含.或$（如Map的键）时不可作为路径；只set时，有字段被移除需整体替换
+     * @return boolean
+     */
+    private boolean isPathDiffable(Document before, Document after, boolean unsetRemoved){
+        for(String key:after.keySet()){
+            if(key.isEmpty() || key.indexOf('.')>=0 || key.charAt(0)=='$'){
+                return false;
+            }
+        }
+        for(String key:before.keySet()){
+            if(key.isEmpty() || key.indexOf('.')>=0 || key.charAt(0)=='$'){
+                return false;
+            }
+            if(!unsetRemoved && !after.containsKey(key)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 复制文档（可变的值也复制，避免实体原地修改后影响快照）
+     * @param document 文档
+     * @return org.bson.Document
+     */
+    private static Document copyDocument(Document document){
+        Document copy=new Document();
+        for(Map.Entry<String, Object> entry:document.entrySet()){
+            copy.put(entry.getKey(),copyValue(entry.getValue()));
+        }
+        return copy;
+    }
+
+    private static Object copyValue(Object value){
+        if(value instanceof Document){
+            return copyDocument((Document)value);
+        }
+        if(value instanceof List){
+            List<Object> copy=new ArrayList<>(((List<?>)value).size());
+            for(Object item:(List<?>)value){
+                copy.add(copyValue(item));
+            }
+            return copy;
+        }
+        if(value instanceof Date){
+            return new Date(((Date)value).getTime());
+        }
+        if(value instanceof byte[]){
+            return ((byte[])value).clone();
+        }
+        return value;
+    }
+
+    /**
+     * 实体变更
+     */
+    final class Change {
+
+        private final MongoBean mongoBean;
+
+        private final Document snapshot;
+
+        private final Document document;
+
+        private final boolean unsetRemoved;
+
+        /**
+         * 变更的字段（无变化时为null）
+         */
+        private final Update update;
+
+        private Change(MongoBean mongoBean, Document snapshot, Document document, boolean unsetRemoved, Update update){
+            this.mongoBean=mongoBean;
+            this.snapshot=snapshot;
+            this.document=document;
+            this.unsetRemoved=unsetRemoved;
+            this.update=update;
+        }
+
+        /**
+         * 是否无变化（无变化时不需要写入）
+         * @return boolean
+         */
+        boolean isEmpty(){
+            return update==null;
+        }
+
+        Update getUpdate(){
+            return update;
+        }
+
+        /**
+         * 写入成功后更新快照（只set时，快照中被移除的字段在库中仍保留）
+         * @return void
+         */
+        void commit(){
+            Document committed;
+            if(unsetRemoved){
+                committed=document;
+            }else{
+                committed=new Document(snapshot);
+                committed.putAll(document);
+            }
+            snapshots.put(mongoBean,copyDocument(committed));
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.pdd.db.mongo.holder;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 计数缓存（按集合和查询条件缓存精确计数）
+ * <br>句柄写操作时按集合失效；计数期间有写操作时不缓存本次结果，避免缓存写入前的计数
+ * <br>只失效通过句柄的写操作，其他途径的写入在过期时间内不可见
+ **/
+final class CountCache {
+
+    /**
+     * 过期时间（毫秒）
+     */
+    private final long ttlMillis;
+
+    /**
+     * 每个集合的最大缓存条数
+     */
+    private final int maxSize;
+
+    /**
+     * 集合对应的计数（查询条件 -> 计数）
+     */
+    private final ConcurrentMap<String, ConcurrentMap<String, Entry>> collections=new ConcurrentHashMap<>();
+
+    /**
+     * 写操作序号
+     */
+    private final AtomicLong writeSeq=new AtomicLong();
+
+    CountCache(long ttlMillis, int maxSize){
+        this.ttlMillis=ttlMillis;
+        this.maxSize=Math.max(maxSize,1);
+    }
+
+    /**
+     * 获取缓存的计数
+     * @param collectionName 集合名
+     * @param key 查询条件
+     * @return java.lang.Long 不存在或已过期时返回null
+     */
+    Long get(String collectionName, String key){
+        Map<String, Entry> counts=collections.get(collectionName);
+        if(counts==null){
+            return null;
+        }
+        Entry entry=counts.get(key);
+        if(entry==null){
+            return null;
+        }
+        if(entry.expireTime<=System.currentTimeMillis()){
+            counts.remove(key,entry);
+            return null;
+        }
+        return entry.count;
+    }
+
+    /**
+     * 开始计数（返回当前写操作序号，放入缓存时校验）
+     * @return long 
+     */
+    long beginLoad(){
+        return writeSeq.get();
+    }
+
+    /**
+     * 放入缓存（计数期间有写操作时不放入）
+     * @param collectionName 集合名
+     * @param key 查询条件
+     * @param count 计数
+     * @param loadSeq 开始计数时的写操作序号
+     * @return void 
+     */
+    void put(String collectionName, String key, long count, long loadSeq){
+        if(writeSeq.get()!=loadSeq){
+            return;
+        }
+        ConcurrentMap<String, Entry> counts=collections.computeIfAbsent(collectionName,k -> new ConcurrentHashMap<>());
+        if(counts.size()>=maxSize){
+            this.evict(counts);
+        }
+        Entry entry=new Entry(count,System.currentTimeMillis()+ttlMillis);
+        counts.put(key,entry);
+        //放入期间发生写操作时撤销
+        if(writeSeq.get()!=loadSeq){
+            counts.remove(key,entry);
+        }
+    }
+
+    /**
+     * 失效集合的计数
+     * @param collectionName 集合名
+     * @return void 
+     */
+    void invalidate(String collectionName){
+        writeSeq.incrementAndGet();
+        if(!collections.isEmpty()){
+            collections.remove(collectionName);
+        }
+    }
+
+    /**
+     * 清理过期计数，仍然已满时清空
+     * @param counts 集合的计数
+     * @return void 
+     */
+    private void evict(ConcurrentMap<String, Entry> counts){
+        long now=System.currentTimeMillis();
+        Iterator<Entry> iterator=counts.values().iterator();
+        while (iterator.hasNext()) {
+            if(iterator.next().expireTime<=now){
+                iterator.remove();
+            }
+        }
+        if(counts.size()>=maxSize){
+            counts.clear();
+        }
+    }
+
+    /**
+     * 缓存的计数
+     */
+    private static final class Entry {
+
+        private final long count;
+
+        private final long expireTime;
+
+        Entry(long count, long expireTime){
+            this.count=count;
+            this.expireTime=expireTime;
+        }
+    }
+}
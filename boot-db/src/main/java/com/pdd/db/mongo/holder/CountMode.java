@@ -0,0 +1,19 @@
+package com.pdd.db.mongo.holder;
+
+/**
+ * 计数方式
+ **/
+public enum CountMode {
+    /**
+     * 精确计数（countDocuments，扫描满足条件的记录）
+     */
+    EXACT,
+    /**
+     * 无查询条件时使用集合元数据估算（estimatedDocumentCount，不扫描记录；开启软删除的实体类带未删除条件，精确计数）；有条件时精确计数
+     */
+    ESTIMATED,
+    /**
+     * 无查询条件时估算；有条件时精确计数并按查询条件缓存（短时间内有效，句柄写操作时失效）
+     */
+    CACHED
+}
@@ -0,0 +1,115 @@
+package com.pdd.db.mongo.holder;
+
+import com.mongodb.client.MongoCursor;
+import com.pdd.db.mongo.metrics.ScanMetrics;
+import org.bson.Document;
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 游标迭代器（按需从游标拉取并转换，不缓存已读取的记录）
+ * <br>读取完毕、读取或转换异常时自动关闭游标；提前结束时需调用close
+ **/
+class CursorIterator<T> implements CloseableIterator<T> {
+
+    /**
+     * 游标（为空表示无记录）
+     */
+    private final MongoCursor<Document> cursor;
+
+    /**
+     * 文档转换器
+     */
+    private final Function<Document, T> decoder;
+
+    /**
+     * 扫描指标
+     */
+    private final ScanMetrics scanMetrics;
+
+    /**
+     * 关闭回调（参数为是否因异常关闭，可为空）
+     */
+    private final Consumer<Boolean> closeListener;
+
+    /**
+     * 是否已关闭
+     */
+    private boolean closed;
+
+    /**
+     * @param cursor 游标（可为空）
+     * @param decoder 文档转换器
+     * @param scanMetrics 扫描指标
+     * @param closeListener 关闭回调（可为空）
+     */
+    CursorIterator(MongoCursor<Document> cursor, Function<Document, T> decoder, ScanMetrics scanMetrics, Consumer<Boolean> closeListener){
+        this.cursor=cursor;
+        this.decoder=decoder;
+        this.scanMetrics=scanMetrics;
+        this.closeListener=closeListener;
+        this.closed=cursor==null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(closed){
+            return false;
+        }
+        try {
+            if(cursor.hasNext()){
+                return true;
+            }
+        } catch (RuntimeException e) {
+            this.close(true);
+            throw e;
+        }
+        this.close(false);
+        return false;
+    }
+
+    @Override
+    public T next() {
+        if(!this.hasNext()){
+            throw new NoSuchElementException();
+        }
+        try {
+            long fetchStart=scanMetrics.now();
+            Document document=cursor.next();
+            long convertStart=scanMetrics.now();
+            T model=decoder.apply(document);
+            scanMetrics.add(convertStart-fetchStart,scanMetrics.now()-convertStart,0);
+            return model;
+        } catch (RuntimeException e) {
+            this.close(true);
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        this.close(false);
+    }
+
+    /**
+     * 关闭游标
+     * @param failed 是否因异常关闭
+     * @return void 
+     */
+    private void close(boolean failed){
+        if(closed){
+            return;
+        }
+        closed=true;
+        try {
+            cursor.close();
+        } finally {
+            if(closeListener!=null){
+                closeListener.accept(failed);
+            }
+        }
+    }
+}
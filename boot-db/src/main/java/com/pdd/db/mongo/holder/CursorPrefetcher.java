@@ -0,0 +1,202 @@
+package com.pdd.db.mongo.holder;
+
+import com.mongodb.client.MongoCursor;
+import com.pdd.db.mongo.metrics.ScanMetrics;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 游标预取器
+ * <br>后台线程从游标拉取文档并转换为实体，按批放入有界队列；消费方处理当前批次时，下一批次已在后台拉取和转换
+ * <br>后台任务在句柄的预取线程池中执行，线程池已满时不预取，由消费方线程逐批拉取和转换
+ * <br>游标由拉取的线程独占并负责关闭，内存占用上限为（缓冲批次数+2）个批次
+ **/
+class CursorPrefetcher<T> implements AutoCloseable {
+
+    /**
+     * 结束标记
+     */
+    private static final List<Object> END=new ArrayList<>(0);
+
+    /**
+     * 入队等待间隔（毫秒），用于及时响应关闭
+     */
+    private static final long OFFER_WAIT_MILLIS=100;
+
+    /**
+     * 游标
+     */
+    private final MongoCursor<Document> cursor;
+
+    /**
+     * 文档转换器
+     */
+    private final Function<Document, T> decoder;
+
+    /**
+     * 每批数量
+     */
+    private final int chunkSize;
+
+    /**
+     * 扫描指标
+     */
+    private final ScanMetrics scanMetrics;
+
+    /**
+     * 已转换的批次
+     */
+    private final BlockingQueue<List<?>> queue;
+
+    /**
+     * 是否由消费方线程拉取（预取线程池已满时）
+     */
+    private final boolean inline;
+
+    /**
+     * 是否已关闭
+     */
+    private volatile boolean closed;
+
+    /**
+     * 后台线程异常
+     */
+    private volatile Throwable failure;
+
+    /**
+     * 是否已读取完毕
+     */
+    private boolean finished;
+
+    /**
+     * 创建并启动预取
+     * @param cursor 游标（由预取器关闭）
+     * @param decoder 文档转换器
+     * @param chunkSize 每批数量
+     * @param bufferChunks 缓冲批次数
+     * @param scanMetrics 扫描指标（累加拉取和转换耗时）
+     * @param executor 预取线程池（拒绝执行时由消费方线程拉取）
+     */
+    CursorPrefetcher(MongoCursor<Document> cursor, Function<Document, T> decoder, int chunkSize, int bufferChunks, ScanMetrics scanMetrics, Executor executor){
+        this.cursor=cursor;
+        this.decoder=decoder;
+        this.chunkSize=Math.max(chunkSize,1);
+        this.scanMetrics=scanMetrics;
+        this.queue=new ArrayBlockingQueue<>(Math.max(bufferChunks,1));
+        boolean started;
+        try {
+            executor.execute(this::fetch);
+            started=true;
+        } catch (RejectedExecutionException e) {
+            started=false;
+        }
+        this.inline=!started;
+    }
+
+    /**
+     * 获取下一批次（阻塞至后台线程转换完成）
+     * @return java.util.List<T> 读取完毕时返回null
+     */
+    @SuppressWarnings("unchecked")
+    List<T> next() throws Exception{
+        if(finished){
+            return null;
+        }
+        if(inline){
+            List<T> chunk=this.read();
+            if(chunk.isEmpty()){
+                this.close();
+                return null;
+            }
+            return chunk;
+        }
+        List<?> chunk=queue.take();
+        if(chunk==END){
+            finished=true;
+            Throwable e=failure;
+            if(e instanceof Exception){
+                throw (Exception)e;
+            }else if(e instanceof Error){
+                throw (Error)e;
+            }
+            return null;
+        }
+        return (List<T>)chunk;
+    }
+
+    /**
+     * 关闭预取（后台线程在当前批次结束后关闭游标并退出；消费方线程拉取时直接关闭游标）
+     */
+    @Override
+    public void close(){
+        closed=true;
+        finished=true;
+        queue.clear();
+        if(inline){
+            cursor.close();
+        }
+    }
+
+    /**
+     * 后台拉取
+     */
+    private void fetch(){
+        try (MongoCursor<Document> c = cursor) {
+            while (!closed) {
+                List<T> chunk=this.read();
+                if(chunk.isEmpty() || !this.offer(chunk)){
+                    return;
+                }
+            }
+        } catch (Throwable e) {
+            failure=e;
+        } finally {
+            try {
+                this.offer(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 拉取并转换一批
+     * @return java.util.List<T> 读取完毕或已关闭时为空
+     */
+    private List<T> read(){
+        List<T> chunk=new ArrayList<>(chunkSize);
+        long fetchStart=scanMetrics.now();
+        while (!closed && chunk.size()<chunkSize && cursor.hasNext()) {
+            Document document=cursor.next();
+            long convertStart=scanMetrics.now();
+            chunk.add(decoder.apply(document));
+            long convertEnd=scanMetrics.now();
+            scanMetrics.addFetch(convertStart-fetchStart);
+            scanMetrics.addConvert(convertEnd-convertStart);
+            fetchStart=scanMetrics.now();
+        }
+        return chunk;
+    }
+
+    /**
+     * 放入队列（队列满时等待，已关闭时放弃）
+     * @param chunk 批次
+     * @return boolean 是否放入
+     */
+    private boolean offer(List<?> chunk) throws InterruptedException{
+        while (!closed) {
+            if(queue.offer(chunk,OFFER_WAIT_MILLIS,TimeUnit.MILLISECONDS)){
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,63 @@
+package com.pdd.db.mongo.holder;
+
+import org.apache.commons.lang3.StringUtils;
+import org.bson.Document;
+
+/**
+ * 文档工具类
+ **/
+final class DocumentUtils {
+
+    private DocumentUtils(){
+    }
+
+    /**
+     * 获取文档字段值（支持a.b形式的嵌套字段）
+     * @param document 文档
+     * @param fieldName 字段名
+     * @return java.lang.Object 
+     */
+    static Object getFieldValue(Document document, String fieldName){
+        Object value=document;
+        for(String key:StringUtils.split(fieldName,'.')){
+            if(!(value instanceof Document)){
+                return null;
+            }
+            value=((Document)value).get(key);
+        }
+        return value;
+    }
+
+    /**
+     * 是否为同一BSON比较类型（数字类型之间可相互比较）
+     * @param a 
+     * @param b 
+     * @return boolean 
+     */
+    static boolean isSameBsonType(Object a, Object b){
+        if(a instanceof Number && b instanceof Number){
+            return true;
+        }
+        return a.getClass()==b.getClass();
+    }
+
+    /**
+     * 比较字段值（空值最小，数字之间按数值比较，其他同类型按自然顺序，不同类型按类名）
+     * @param a 
+     * @param b 
+     * @return int 
+     */
+    @SuppressWarnings("unchecked")
+    static int compare(Object a, Object b){
+        if(a==null || b==null){
+            return a==null?(b==null?0:-1):1;
+        }
+        if(a instanceof Number && b instanceof Number){
+            return Double.compare(((Number)a).doubleValue(),((Number)b).doubleValue());
+        }
+        if(a.getClass()==b.getClass() && a instanceof Comparable){
+            return ((Comparable<Object>)a).compareTo(b);
+        }
+        return a.getClass().getName().compareTo(b.getClass().getName());
+    }
+}
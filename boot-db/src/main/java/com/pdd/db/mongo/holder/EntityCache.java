@@ -0,0 +1,162 @@
+package com.pdd.db.mongo.holder;
+
+import org.bson.Document;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 实体缓存（按集合，缓存主键查询的原始文档）
+ * <br>缓存文档而不是实体，每次命中重新转换，调用方修改实体不会影响缓存
+ * <br>单条写入按主键失效；多条写入递增集合版本号，旧版本的记录视为失效
+ * <br>加载前记录写入序号，加载期间有任何失效操作时不放入缓存，避免并发写入后缓存旧值
+ **/
+final class EntityCache {
+
+    /**
+     * 集合名
+     */
+    private final String collectionName;
+
+    /**
+     * 最大缓存条数
+     */
+    private final int maxSize;
+
+    /**
+     * 缓存有效期（纳秒）
+     */
+    private final long ttlNanos;
+
+    /**
+     * 缓存记录（按访问顺序，用于淘汰最久未访问的记录）
+     */
+    private final LinkedHashMap<Object, Entry> entries=new LinkedHashMap<>(16,0.75f,true);
+
+    /**
+     * 集合版本号
+     */
+    private long epoch;
+
+    /**
+     * 写入序号（每次失效递增）
+     */
+    private long writeSeq;
+
+    private long hitCount;
+
+    private long missCount;
+
+    private long evictionCount;
+
+    private long expirationCount;
+
+    EntityCache(String collectionName, int maxSize, long ttlSeconds){
+        this.collectionName=collectionName;
+        this.maxSize=Math.max(maxSize,1);
+        this.ttlNanos=ttlSeconds*1000000000L;
+    }
+
+    /**
+     * 获取缓存
+     * @param id 主键
+     * @return org.bson.Document 未命中时返回null
+     */
+    synchronized Document get(Object id){
+        Entry entry=entries.get(id);
+        if(entry!=null && (entry.epoch!=epoch || System.nanoTime()-entry.expireAt>0)){
+            entries.remove(id);
+            expirationCount++;
+            entry=null;
+        }
+        if(entry==null){
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.document;
+    }
+
+    /**
+     * 开始加载（记录当前写入序号）
+     * @return long 写入序号
+     */
+    synchronized long beginLoad(){
+        return writeSeq;
+    }
+
+    /**
+     * 放入缓存（加载期间有失效操作时放弃）
+     * @param id 主键
+     * @param document 文档
+     * @param loadSeq 开始加载时的写入序号
+     * @return void
+     */
+    synchronized void put(Object id, Document document, long loadSeq){
+        if(loadSeq!=writeSeq){
+            return;
+        }
+        entries.put(id,new Entry(document,epoch,System.nanoTime()+ttlNanos));
+        if(entries.size()>maxSize){
+            Iterator<Map.Entry<Object, Entry>> iterator=entries.entrySet().iterator();
+            iterator.next();
+            iterator.remove();
+            evictionCount++;
+        }
+    }
+
+    /**
+     * 按主键失效
+     * @param id 主键
+     * @return void
+     */
+    synchronized void invalidate(Object id){
+        writeSeq++;
+        if(entries.remove(id)!=null){
+            expirationCount++;
+        }
+    }
+
+    /**
+     * 整个集合失效（递增版本号，旧记录在访问或淘汰时清理）
+     * @return void
+     */
+    synchronized void invalidateAll(){
+        writeSeq++;
+        epoch++;
+    }
+
+    /**
+     * 获取统计
+     * @return com.pdd.db.mongo.holder.EntityCacheStats
+     */
+    synchronized EntityCacheStats getStats(){
+        EntityCacheStats stats=new EntityCacheStats();
+        stats.setCollectionName(collectionName);
+        stats.setSize(entries.size());
+        stats.setHitCount(hitCount);
+        stats.setMissCount(missCount);
+        stats.setEvictionCount(evictionCount);
+        stats.setExpirationCount(expirationCount);
+        return stats;
+    }
+
+    /**
+     * 缓存记录
+     */
+    private static final class Entry {
+
+        private final Document document;
+
+        private final long epoch;
+
+        private final long expireAt;
+
+        Entry(Document document, long epoch, long expireAt){
+            this.document=document;
+            this.epoch=epoch;
+            this.expireAt=expireAt;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.pdd.db.mongo.holder;
+
+import lombok.Data;
+
+/**
+ * 实体缓存统计
+ **/
+@Data
+public class EntityCacheStats {
+
+    /**
+     * 集合名
+     */
+    private String collectionName;
+
+    /**
+     * 当前缓存条数（包含已失效但尚未清理的记录）
+     */
+    private int size;
+
+    /**
+     * 命中次数
+     */
+    private long hitCount;
+
+    /**
+     * 未命中次数
+     */
+    private long missCount;
+
+    /**
+     * 超过最大条数淘汰的次数
+     */
+    private long evictionCount;
+
+    /**
+     * 过期或被写操作失效后清理的次数
+     */
+    private long expirationCount;
+
+    /**
+     * 命中率
+     * @return double
+     */
+    public double getHitRate(){
+        long total=hitCount+missCount;
+        return total==0?0:(double)hitCount/total;
+    }
+}
@@ -0,0 +1,152 @@
+package com.pdd.db.mongo.holder;
+
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 主键合并查询（一个集合）
+ * <br>时间窗口内或达到最大条数的主键查询合并为一次_id $in查询，结果按主键分发给各调用方
+ * <br>窗口从第一个主键加入时开始计时，达到最大条数时由加入的调用方线程立即查询，否则到期后由调度线程交给查询线程池查询
+ * <br>调度线程只负责计时，不执行查询，慢查询不会推迟其他集合的窗口到期
+ **/
+final class IdBatchLoader {
+
+    /**
+     * 调度线程池
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * 窗口到期查询的线程池
+     */
+    private final Executor workerPool;
+
+    /**
+     * 合并窗口（毫秒）
+     */
+    private final long windowMillis;
+
+    /**
+     * 每次查询最大主键数
+     */
+    private final int maxBatchSize;
+
+    /**
+     * 按主键查询文档
+     */
+    private final Function<Collection<Object>, List<Document>> finder;
+
+    /**
+     * 等待查询的批次
+     */
+    private Batch pending;
+
+    IdBatchLoader(ScheduledExecutorService scheduler, Executor workerPool, long windowMillis, int maxBatchSize, Function<Collection<Object>, List<Document>> finder){
+        this.scheduler=scheduler;
+        this.workerPool=workerPool;
+        this.windowMillis=windowMillis;
+        this.maxBatchSize=Math.max(maxBatchSize,1);
+        this.finder=finder;
+    }
+
+    /**
+     * 按主键查询（阻塞到所在批次查询完成）
+     * @param id 主键（已转换为数据库中的类型）
+     * @return org.bson.Document 不存在时返回null
+     */
+    Document load(Object id){
+        CompletableFuture<Document> future;
+        Batch full=null;
+        synchronized (this) {
+            if(pending==null){
+                Batch batch=new Batch();
+                scheduler.schedule(() -> this.flushPending(batch),windowMillis,TimeUnit.MILLISECONDS);
+                pending=batch;
+            }
+            future=pending.add(id);
+            if(pending.futures.size()>=maxBatchSize){
+                full=pending;
+                pending=null;
+            }
+        }
+        if(full!=null){
+            this.flush(full);
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof RuntimeException){
+                throw (RuntimeException)e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 窗口到期交给查询线程池查询（已因达到最大条数查询时跳过）
+     * @param batch 批次
+     * @return void
+     */
+    private void flushPending(Batch batch){
+        synchronized (this) {
+            if(pending!=batch){
+                return;
+            }
+            pending=null;
+        }
+        try {
+            workerPool.execute(() -> this.flush(batch));
+        } catch (RejectedExecutionException e) {
+            for(CompletableFuture<Document> future:batch.futures.values()){
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * 查询批次并分发结果
+     * @param batch 批次
+     * @return void
+     */
+    private void flush(Batch batch){
+        try {
+            List<Document> documents=finder.apply(new ArrayList<>(batch.futures.keySet()));
+            Map<Object, Document> documentMap=new HashMap<>(documents.size()*2);
+            for(Document document:documents){
+                documentMap.put(document.get("_id"),document);
+            }
+            for(Map.Entry<Object, CompletableFuture<Document>> entry:batch.futures.entrySet()){
+                entry.getValue().complete(documentMap.get(entry.getKey()));
+            }
+        } catch (RuntimeException e) {
+            for(CompletableFuture<Document> future:batch.futures.values()){
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * 批次（同一主键共用一个结果）
+     */
+    private static final class Batch {
+
+        private final Map<Object, CompletableFuture<Document>> futures=new LinkedHashMap<>();
+
+        CompletableFuture<Document> add(Object id){
+            return futures.computeIfAbsent(id,k -> new CompletableFuture<>());
+        }
+    }
+}
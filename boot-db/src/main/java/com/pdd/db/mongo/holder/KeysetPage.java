@@ -0,0 +1,28 @@
+package com.pdd.db.mongo.holder;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 键集分页结果
+ **/
+@Data
+public class KeysetPage<T> {
+
+    /**
+     * 当前页数据
+     */
+    private List<T> content = new ArrayList<>();
+
+    /**
+     * 是否还有下一页
+     */
+    private boolean hasMore;
+
+    /**
+     * 下一页标记（无下一页时为空）
+     */
+    private String nextToken;
+}
@@ -0,0 +1,224 @@
+package com.pdd.db.mongo.holder;
+
+import org.bson.BsonBinaryReader;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 键集（seek）分页工具类
+ * <br>按排序键记录上一页最后一条的位置，下一页直接从该位置之后查询，每页开销与页数无关
+ **/
+final class KeysetUtils {
+
+    /**
+     * 主键字段
+     */
+    private static final String ID_FIELD="_id";
+
+    /**
+     * 分页标记中的排序字段
+     */
+    private static final String TOKEN_SORT="s";
+
+    /**
+     * 分页标记中的位置字段
+     */
+    private static final String TOKEN_KEY="k";
+
+    private KeysetUtils(){
+    }
+
+    /**
+     * 获取键集排序（排序中不含_id时，追加与最后一个排序字段同向的_id，保证排序唯一）
+     * @param sort 原始排序（可为空）
+     * @return org.bson.Document 
+     */
+    static Document getKeysetSort(Document sort){
+        Document keysetSort=new Document();
+        int direction=1;
+        if(sort!=null){
+            for(Map.Entry<String, Object> entry:sort.entrySet()){
+                direction=getDirection(entry.getValue());
+                keysetSort.append(entry.getKey(),direction);
+            }
+        }
+        if(!keysetSort.containsKey(ID_FIELD)){
+            keysetSort.append(ID_FIELD,direction);
+        }
+        return keysetSort;
+    }
+
+    /**
+     * 获取记录在键集排序中的位置
+     * @param keysetSort 键集排序
+     * @param document 记录
+     * @return org.bson.Document 
+     */
+    static Document getKey(Document keysetSort, Document document){
+        Document key=new Document();
+        for(String fieldName:keysetSort.keySet()){
+            key.append(fieldName,DocumentUtils.getFieldValue(document,fieldName));
+        }
+        return key;
+    }
+
+    /**
+     * 获取位置之后的查询条件
+     * <br>(k1>v1) or (k1=v1 and k2>v2) or ...，降序字段使用小于；空值按mongo排序规则视为最小值
+     * @param keysetSort 键集排序
+     * @param key 上一条记录的位置
+     * @return org.bson.Document 
+     */
+    static Document getSeekFilter(Document keysetSort, Document key){
+        List<Document> branches=new ArrayList<>();
+        List<String> fieldNames=new ArrayList<>(keysetSort.keySet());
+        for(int i=0;i<fieldNames.size();i++){
+            String fieldName=fieldNames.get(i);
+            Document range=getRangeAfter(fieldName,key.get(fieldName),getDirection(keysetSort.get(fieldName)));
+            if(range==null){
+                continue;
+            }
+            List<Document> conditions=new ArrayList<>();
+            for(int j=0;j<i;j++){
+                conditions.add(new Document(fieldNames.get(j),key.get(fieldNames.get(j))));
+            }
+            conditions.add(range);
+            branches.add(conditions.size()==1?range:new Document("$and",conditions));
+        }
+        if(branches.isEmpty()){
+            //已是最后位置，不再匹配任何记录
+            return new Document(ID_FIELD,new Document("$in",new ArrayList<>()));
+        }
+        return branches.size()==1?branches.get(0):new Document("$or",branches);
+    }
+
+    /**
+     * 获取键集分页的返回字段（保证排序字段被返回，用于生成分页标记）
+     * @param fields 查询器指定的返回字段
+     * @param keysetSort 键集排序
+     * @return org.bson.Document 
+     */
+    static Document getKeysetFields(Document fields, Document keysetSort){
+        Document keysetFields=new Document(fields);
+        boolean inclusion=false;
+        for(Map.Entry<String, Object> entry:fields.entrySet()){
+            if(!ID_FIELD.equals(entry.getKey()) && isIncluded(entry.getValue())){
+                inclusion=true;
+                break;
+            }
+        }
+        for(String fieldName:keysetSort.keySet()){
+            if(inclusion){
+                keysetFields.put(fieldName,1);
+            }else{
+                //排除模式下，不排除排序字段
+                keysetFields.remove(fieldName);
+            }
+        }
+        return keysetFields;
+    }
+
+    /**
+     * 合并查询条件
+     * @param queryObject 原始查询条件（可为空）
+     * @param seekFilter 位置条件
+     * @return org.bson.Document 
+     */
+    static Document and(Document queryObject, Document seekFilter){
+        if(queryObject==null || queryObject.isEmpty()){
+            return seekFilter;
+        }
+        return new Document("$and",Arrays.asList(queryObject,seekFilter));
+    }
+
+    /**
+     * 生成分页标记（BSON编码后做URL安全的Base64）
+     * @param keysetSort 键集排序
+     * @param key 最后一条记录的位置
+     * @return java.lang.String 
+     */
+    static String encodeToken(Document keysetSort, Document key){
+        Document token=new Document(TOKEN_SORT,keysetSort).append(TOKEN_KEY,key);
+        ByteBuffer buffer=new RawBsonDocument(token,new DocumentCodec()).getByteBuffer().asNIO();
+        byte[] bytes=new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * 解析分页标记
+     * @param token 分页标记
+     * @param keysetSort 当前查询的键集排序（需与生成标记时一致）
+     * @return org.bson.Document 记录位置
+     */
+    static Document decodeToken(String token, Document keysetSort) throws Exception{
+        Document document;
+        try {
+            byte[] bytes=Base64.getUrlDecoder().decode(token);
+            document=new DocumentCodec().decode(new BsonBinaryReader(ByteBuffer.wrap(bytes)),DecoderContext.builder().build());
+        } catch (RuntimeException e) {
+            throw new Exception("分页标记格式错误",e);
+        }
+        Object sort=document.get(TOKEN_SORT);
+        Object key=document.get(TOKEN_KEY);
+        if(!keysetSort.equals(sort) || !(key instanceof Document)){
+            throw new Exception("分页标记与查询排序不一致");
+        }
+        return (Document)key;
+    }
+
+    /**
+     * 获取单个字段在位置之后的范围条件
+     * @param fieldName 字段名
+     * @param value 位置值
+     * @param direction 排序方向
+     * @return org.bson.Document 无满足条件的范围时返回null
+     */
+    private static Document getRangeAfter(String fieldName, Object value, int direction){
+        if(direction>0){
+            if(value==null){
+                return new Document(fieldName,new Document("$ne",null));
+            }
+            return new Document(fieldName,new Document("$gt",value));
+        }
+        if(value==null){
+            return null;
+        }
+        return new Document("$or",Arrays.asList(
+                new Document(fieldName,new Document("$lt",value)),
+                new Document(fieldName,null)));
+    }
+
+    /**
+     * 返回字段的值是否表示包含（0/false表示排除，其他如1/true/表达式表示包含）
+     * @param value 返回字段的值
+     * @return boolean
+     */
+    private static boolean isIncluded(Object value){
+        if(value instanceof Number){
+            return ((Number)value).intValue()!=0;
+        }
+        if(value instanceof Boolean){
+            return (Boolean)value;
+        }
+        return true;
+    }
+
+    /**
+     * 获取排序方向
+     * @param value 排序值
+     * @return int 1：升序；-1：降序
+     */
+    private static int getDirection(Object value){
+        return value instanceof Number && ((Number)value).intValue()<0?-1:1;
+    }
+}
@@ -1,30 +1,91 @@
 package com.pdd.db.mongo.holder;
 
 
+import com.mongodb.BulkWriteError;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.ChangeStreamIterable;
 import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
+import com.pdd.db.mongo.MongoHolderProperties;
+import com.pdd.db.mongo.MongoWorkloadTemplates;
 import com.pdd.db.mongo.bean.MongoBean;
+import com.pdd.db.mongo.bean.MongoCache;
+import com.pdd.db.mongo.bean.MongoPartition;
+import com.pdd.db.mongo.bean.MongoSoftDelete;
+import com.pdd.db.mongo.metrics.DefaultMongoMetricsRegistry;
+import com.pdd.db.mongo.metrics.MongoMetricsRegistry;
+import com.pdd.db.mongo.metrics.MongoPoolMonitors;
+import com.pdd.db.mongo.metrics.NoopMongoMetricsRegistry;
+import com.pdd.db.mongo.metrics.ScanMetrics;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.convert.CustomConversions;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
 import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.aggregation.TypeBasedAggregationOperationContext;
 import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Collation;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.data.util.StreamUtils;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * 自定义mongo句柄
@@ -32,270 +93,3255 @@ import java.util.Set;
 @Component
 public class MongoHolder {
 
+    /**
+     * 变更跟踪无变化、未写入时返回的更新结果（matchedCount、modifiedCount均为0，用==与记录不存在时的结果区分）
+     */
+    public static final UpdateResult UNCHANGED=UpdateResult.acknowledged(0L,0L,null);
+
     /**
      * 默认游标批量查询数量
      */
     private static final Integer DEFAULT_CURSOR_BATCH_SIZE=1000;
+
+    /**
+     * 更新时间字段（增量扫描的水位）
+     */
+    private static final String UPDATE_DATE_FIELD="updateDate";
+
+    /**
+     * 变更流中完整记录的字段前缀
+     */
+    private static final String FULL_DOCUMENT_PREFIX="fullDocument.";
+
+    /**
+     * 变更流每次等待新变更的最长时间（毫秒）
+     */
+    private static final long CHANGE_STREAM_AWAIT_MILLIS=1000;
+
+    /**
+     * 软删除索引创建失败后的重试间隔（毫秒）
+     */
+    private static final long SOFT_DELETE_INDEX_RETRY_MILLIS=60000;
+    
+    /**
+     * mongo句柄
+     */
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    /**
+     * 负载句柄（按操作类型或指定的负载配置选择）
+     */
+    @Autowired
+    private MongoWorkloadTemplates mongoWorkloadTemplates;
+
+    /**
+     * 连接池监控（未注册时不检查连接池饱和）
+     */
+    @Autowired(required=false)
+    private MongoPoolMonitors mongoPoolMonitors;
+
+    /**
+     * mongo转换器
+     */
+    @Autowired
+    private MongoConverter mongoConverter;
+
+    /**
+     * 句柄扩展功能配置
+     */
+    @Autowired
+    private MongoHolderProperties mongoHolderProperties;
+
+    /**
+     * 自定义转换器
+     */
+    @Autowired
+    private CustomConversions customConversions;
+
+    /**
+     * 指标注册器（未注册bean时按配置使用默认实现）
+     */
+    @Autowired(required = false)
+    private MongoMetricsRegistry metricsRegistry;
+
+    /**
+     * 是否记录指标（未启用时不计时）
+     */
+    private boolean metricsEnabled;
+
+    /**
+     * 扫描检查点存储（未注册bean时使用mongo集合存储）
+     */
+    @Autowired(required = false)
+    private ScanCheckpointStore scanCheckpointStore;
+
+    /**
+     * 当前线程指定的负载配置名称
+     */
+    private final ThreadLocal<String> currentProfile=new ThreadLocal<>();
+
+    /**
+     * 当前线程的变更跟踪器
+     */
+    private final ThreadLocal<ChangeTracker> currentTracker=new ThreadLocal<>();
+
+    /**
+     * 更新计划缓存
+     */
+    private UpdatePlanCache updatePlanCache;
+
+    /**
+     * 查询映射（聚合管道字段映射）
+     */
+    private QueryMapper queryMapper;
+
+    /**
+     * 查询分析器
+     */
+    private QueryProfiler queryProfiler;
+
+    /**
+     * 是否开启慢查询检测
+     */
+    private boolean queryProfileEnabled;
+
+    /**
+     * 计数缓存
+     */
+    private CountCache countCache;
+
+    /**
+     * 接口投影代理工厂
+     */
+    private SpelAwareProxyProjectionFactory projectionFactory;
+
+    /**
+     * 实体类对应的缓存（未开启缓存的实体类为空）
+     */
+    private final ConcurrentMap<Class<?>, Optional<EntityCache>> entityCaches=new ConcurrentHashMap<>();
+
+    /**
+     * 集合对应的缓存
+     */
+    private final ConcurrentMap<String, EntityCache> collectionCaches=new ConcurrentHashMap<>();
+
+    /**
+     * 集合对应的主键合并查询
+     */
+    private final ConcurrentMap<String, IdBatchLoader> idBatchLoaders=new ConcurrentHashMap<>();
+
+    /**
+     * 主键合并查询的调度线程池（未开启合并查询时为空）
+     */
+    private ScheduledExecutorService idBatchScheduler;
+
+    /**
+     * 主键合并查询窗口到期的查询线程池（未开启合并查询时为空）
+     */
+    private ExecutorService idBatchWorkerPool;
+
+    /**
+     * 批量游标查询的预取线程池（线程数有上限，已满时不预取）
+     */
+    private ExecutorService cursorPrefetchPool;
+
+    /**
+     * 实体类对应的软删除配置（未开启软删除的实体类为空）
+     */
+    private final ConcurrentMap<Class<?>, Optional<MongoSoftDelete>> softDeletes=new ConcurrentHashMap<>();
+
+    /**
+     * 集合的软删除索引下次可创建的时间（创建成功后为Long.MAX_VALUE，失败后间隔一段时间重试）
+     */
+    private final ConcurrentMap<String, Long> softDeleteIndexTimes=new ConcurrentHashMap<>();
+
+    /**
+     * 软删除记录清理
+     */
+    private SoftDeletePurger softDeletePurger;
+
+    /**
+     * 软删除记录清理的调度线程池（未开启清理时为空）
+     */
+    private ScheduledExecutorService softDeletePurgeScheduler;
+
+    /**
+     * 实体类对应的分区路由（未分区的实体类为空）
+     */
+    private final ConcurrentMap<Class<?>, Optional<PartitionRouter>> partitionRouters=new ConcurrentHashMap<>();
+
+    /**
+     * 分区并行查询线程池
+     */
+    private ExecutorService partitionQueryPool;
+
+    /**
+     * 初始化
+     * @return void 
+     */
+    @PostConstruct
+    public void init(){
+        updatePlanCache=new UpdatePlanCache(mongoConverter,customConversions);
+        projectionFactory=new SpelAwareProxyProjectionFactory();
+        queryMapper=new QueryMapper(mongoConverter);
+        countCache=new CountCache(mongoHolderProperties.getCountCacheTtlMillis(),mongoHolderProperties.getCountCacheMaxSize());
+        if(metricsRegistry==null){
+            metricsRegistry=mongoHolderProperties.isMetricsEnabled()?new DefaultMongoMetricsRegistry():new NoopMongoMetricsRegistry();
+        }
+        metricsEnabled=metricsRegistry.isEnabled();
+        if(scanCheckpointStore==null){
+            scanCheckpointStore=new MongoScanCheckpointStore(mongoTemplate,mongoHolderProperties.getScanCheckpointCollection());
+        }
+        queryProfiler=new QueryProfiler(mongoConverter,command -> this.getTemplate(MongoWorkload.ANALYTICS).getDb().runCommand(command),
+                mongoHolderProperties.getQueryProfileSlowMillis(),mongoHolderProperties.getQueryProfileSampleRate(),mongoHolderProperties.getQueryProfileExplainIntervalMillis(),
+                mongoHolderProperties.getQueryProfileMaxShapes(),mongoHolderProperties.getQueryProfileExplainVerbosity());
+        queryProfileEnabled=mongoHolderProperties.isQueryProfileEnabled();
+        partitionQueryPool=Executors.newFixedThreadPool(Math.max(mongoHolderProperties.getPartitionQueryThreads(),1),new CustomizableThreadFactory("mongo-partition-"));
+        cursorPrefetchPool=new ThreadPoolExecutor(0,Math.max(mongoHolderProperties.getCursorPrefetchThreads(),1),60L,TimeUnit.SECONDS,
+                new SynchronousQueue<>(),new CustomizableThreadFactory("mongo-prefetch-"));
+        if(mongoHolderProperties.isIdBatchEnabled()){
+            idBatchScheduler=Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("mongo-id-batch-timer-"));
+            idBatchWorkerPool=Executors.newFixedThreadPool(Math.max(mongoHolderProperties.getIdBatchThreads(),1),new CustomizableThreadFactory("mongo-id-batch-"));
+        }
+        softDeletePurger=new SoftDeletePurger(collectionName -> this.getTemplate(MongoWorkload.BULK_WRITE).getCollection(collectionName),metricsRegistry,
+                mongoHolderProperties.getSoftDeletePurgeBatchSize(),mongoHolderProperties.getSoftDeletePurgePauseMillis(),mongoHolderProperties.getSoftDeletePurgeMaxBatches());
+        //启动时已扫描到的实体类登记清理（不访问数据库），索引在首次使用或清理前创建
+        for(MongoPersistentEntity<?> entity:mongoConverter.getMappingContext().getPersistentEntities()){
+            this.getSoftDelete(entity.getType());
+        }
+        if(mongoHolderProperties.isSoftDeletePurgeEnabled()){
+            long interval=mongoHolderProperties.getSoftDeletePurgeIntervalMillis();
+            softDeletePurgeScheduler=Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("mongo-purge-"));
+            softDeletePurgeScheduler.scheduleWithFixedDelay(this::purgeSoftDeleted,interval,interval,TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 关闭主键合并查询、软删除清理的调度线程池，explain、分区查询和预取线程池（进行中的预取中断，消费方收到异常）
+     * @return void 
+     */
+    @PreDestroy
+    public void destroy(){
+        partitionQueryPool.shutdown();
+        cursorPrefetchPool.shutdownNow();
+        if(idBatchScheduler!=null){
+            idBatchScheduler.shutdown();
+            idBatchWorkerPool.shutdown();
+        }
+        if(softDeletePurgeScheduler!=null){
+            softDeletePurgeScheduler.shutdownNow();
+        }
+        queryProfiler.shutdown();
+    }
+
+    /**
+     * 在指定负载下执行（当前线程内的句柄操作均使用该负载配置的客户端，不再自动选择）
+     * <br>并行扫描、预取等后台线程使用调用时选择的客户端；异步句柄的任务不继承当前线程的负载
+     * @param profile 负载配置名称（未配置时使用默认客户端）
+     * @param action 操作
+     * @return R 
+     */
+    public <R> R extWithProfile(String profile, Callable<R> action) throws Exception{
+        String previous=currentProfile.get();
+        currentProfile.set(profile);
+        try {
+            return action.call();
+        } finally {
+            if(previous==null){
+                currentProfile.remove();
+            }else{
+                currentProfile.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 在变更跟踪范围内执行
+     * <br>范围内通过find、findOne、findById、extFindById、游标查询（实体类型）得到的实体记录快照，
+     * 之后对这些实体的extUpdateById（不指定字段）、extUpdateAllById、批量更新、extSaveChanges只发送变化的字段，无变化时不写入
+     * <br>快照为查询时的值，查询后其他途径对同一记录的写入不参与比较；嵌套范围共用最外层的跟踪器，跟踪实体数超过配置后不再跟踪
+     * @param action 操作
+     * @return R 
+     */
+    public <R> R extWithChangeTracking(Callable<R> action) throws Exception{
+        if(currentTracker.get()!=null){
+            return action.call();
+        }
+        currentTracker.set(new ChangeTracker(mongoHolderProperties.getChangeTrackingMaxEntities()));
+        try {
+            return action.call();
+        } finally {
+            currentTracker.remove();
+        }
+    }
+
+    /**
+     * 获取负载句柄
+     * @param profile 负载配置名称
+     * @return org.springframework.data.mongodb.core.MongoTemplate 未配置时返回默认句柄
+     */
+    public MongoTemplate extGetTemplate(String profile){
+        MongoTemplate template=mongoWorkloadTemplates.getTemplate(profile);
+        return template!=null?template:mongoTemplate;
+    }
+
+    /**
+     * 选择句柄（优先当前线程指定的负载，其次按操作类型自动选择，均未配置时使用默认句柄）
+     * @param workload 操作类型
+     * @return org.springframework.data.mongodb.core.MongoTemplate 
+     */
+    private MongoTemplate getTemplate(MongoWorkload workload){
+        MongoTemplate template=mongoTemplate;
+        String profile=null;
+        if(!mongoWorkloadTemplates.isEmpty()){
+            profile=currentProfile.get()!=null?currentProfile.get():workload.getProfileName();
+            template=mongoWorkloadTemplates.getTemplate(profile);
+            if(template==null){
+                template=mongoTemplate;
+                profile=null;
+            }
+        }
+        //连接池饱和时快速失败
+        if(mongoPoolMonitors!=null){
+            mongoPoolMonitors.checkSaturation(profile);
+        }
+        return template;
+    }
+
+    /**
+     * 获取指标注册器
+     * @return com.pdd.db.mongo.metrics.MongoMetricsRegistry 
+     */
+    public MongoMetricsRegistry extGetMetricsRegistry(){
+        return metricsRegistry;
+    }
+
+    /**
+     * 立即分析查询（同步执行explain，返回执行计划类型、扫描数和建议索引）
+     * @param query 查询器
+     * @param entityClass 查询实体
+     * @return com.pdd.db.mongo.holder.QueryShapeReport 
+     */
+    public <T extends MongoBean> QueryShapeReport extAnalyzeQuery(Query query, Class<T> entityClass){
+        this.checkNotPartitioned(entityClass,"查询分析");
+        return queryProfiler.analyze(this.getCollectionName(entityClass),entityClass,query);
+    }
+
+    /**
+     * 获取慢查询检测的形态报告（开启query-profile-enabled后累计）
+     * @return java.util.List<com.pdd.db.mongo.holder.QueryShapeReport> 
+     */
+    public List<QueryShapeReport> extGetQueryShapeReports(){
+        return queryProfiler.getReports();
+    }
+
+    /**
+     * 获取慢查询检测统计（形态数、记录查询和explain的失败次数及最近一次失败）
+     * @return com.pdd.db.mongo.holder.QueryProfileStats 
+     */
+    public QueryProfileStats extGetQueryProfileStats(){
+        return queryProfiler.getStats();
+    }
+
+    /**
+     * 清空慢查询检测的形态报告
+     * @return void 
+     */
+    public void extResetQueryShapeReports(){
+        queryProfiler.reset();
+    }
+
+    /**
+     * 获取连接池监控（连接池和命令指标）
+     * @return com.pdd.db.mongo.metrics.MongoPoolMonitors 未注册时返回null
+     */
+    public MongoPoolMonitors extGetPoolMonitors(){
+        return mongoPoolMonitors;
+    }
+    
+    /**
+     * 获取类的表名（分区实体类为基础集合名）
+     * @param entityClass 
+     * @return java.lang.String 
+     */
+    public <T extends MongoBean> String getCollectionName(Class<T> entityClass){
+        return mongoTemplate.getCollectionName(entityClass);
+    }
+    
+    /**
+     * 插入数据
+     * @param objectToSave 
+     * @return T 
+     */
+    public <T extends MongoBean> T insert(T objectToSave){
+        long startTime=this.startTimer();
+        try {
+            this.initDelFlag(objectToSave);
+            MongoTemplate template=this.getTemplate(MongoWorkload.OLTP);
+            PartitionRouter router=objectToSave==null?null:this.getPartitionRouter(objectToSave.getClass());
+            T saved=router==null?template.insert(objectToSave):template.insert(objectToSave,this.getPartitionCollectionName(router,objectToSave,template));
+            this.record("insert",objectToSave.getClass(),startTime,1,false);
+            return saved;
+        } catch (RuntimeException e) {
+            this.record("insert",objectToSave==null?null:objectToSave.getClass(),startTime,0,true);
+            throw e;
+        } finally {
+            if(objectToSave!=null){
+                this.invalidateCount(objectToSave.getClass());
+            }
+        }
+    }
+
+    /**
+     * 批量插入数据
+     * @param batchToSave 
+     * @return java.util.Collection<T> 
+     */
+    public <T extends MongoBean> Collection<T> insertAll(Collection<? extends T> batchToSave){
+        long startTime=this.startTimer();
+        Class<?> entityClass=metricsEnabled?this.getFirstClass(batchToSave):null;
+        try {
+            if(batchToSave!=null){
+                for(T mongoBean:batchToSave){
+                    this.initDelFlag(mongoBean);
+                }
+            }
+            Collection<T> saved=this.insertAllRouted(this.getTemplate(MongoWorkload.BULK_WRITE),batchToSave);
+            this.record("insertAll",entityClass,startTime,saved.size(),false);
+            return saved;
+        } catch (RuntimeException e) {
+            this.record("insertAll",entityClass,startTime,0,true);
+            throw e;
+        } finally {
+            if(batchToSave!=null){
+                Set<Class<?>> entityClasses=new HashSet<>();
+                for(T mongoBean:batchToSave){
+                    if(mongoBean!=null && entityClasses.add(mongoBean.getClass())){
+                        this.invalidateCount(mongoBean.getClass());
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * 批量插入（分区实体类按分区分组插入）
+     * @param template mongo句柄
+     * @param batchToSave 
+     * @return java.util.Collection<T> 
+     */
+    private <T extends MongoBean> Collection<T> insertAllRouted(MongoTemplate template, Collection<? extends T> batchToSave){
+        if(batchToSave==null){
+            return template.insertAll(batchToSave);
+        }
+        Map<String, List<T>> partitionBatches=new LinkedHashMap<>();
+        List<T> others=new ArrayList<>();
+        for(T mongoBean:batchToSave){
+            PartitionRouter router=mongoBean==null?null:this.getPartitionRouter(mongoBean.getClass());
+            if(router==null){
+                others.add(mongoBean);
+            }else{
+                partitionBatches.computeIfAbsent(this.getPartitionCollectionName(router,mongoBean,template),k -> new ArrayList<>()).add(mongoBean);
+            }
+        }
+        if(partitionBatches.isEmpty()){
+            return template.insertAll(batchToSave);
+        }
+        List<T> saved=new ArrayList<>(batchToSave.size());
+        if(!others.isEmpty()){
+            saved.addAll(template.insertAll(others));
+        }
+        for(Map.Entry<String, List<T>> entry:partitionBatches.entrySet()){
+            saved.addAll(template.insert(entry.getValue(),entry.getKey()));
+        }
+        return saved;
+    }
     
     /**
-     * mongo句柄
+     * 流式批量插入（数据源按批读取，不需要全部放入内存）
+     * <br>每批在工作线程中转换为BSON，再按条数和字节数拆分为无序批量插入；工作线程数即同时写入的批次数，
+     * 另有配置数量的批次预读等待，数据源读取速度受写入速度限制
+     * <br>单条转换或写入失败（如主键重复）记录在结果中，不影响其他记录；主键为空时写入前生成并回填实体
+     * <br>直接写入集合，不触发映射事件
+     * @param source 数据源（读取失败时等待已提交批次完成后抛出）
+     * @param entityClass 实体类（决定写入的集合）
+     * @param workerPool 工作线程池（为空时按配置创建临时线程池）
+     * @return com.pdd.db.mongo.holder.BulkResult 序号为记录在数据源中的序号
+     */
+    public <T extends MongoBean> BulkResult extIngest(Iterator<? extends T> source, Class<T> entityClass, ExecutorService workerPool) throws Exception{
+        BulkResult result=new BulkResult();
+        if(source==null || entityClass==null){
+            return result;
+        }
+        if(this.getPartitionRouter(entityClass)!=null){
+            throw new Exception("分区实体类不支持流式插入，请使用insertAll");
+        }
+        long startTime=this.startTimer();
+        int threads=Math.max(mongoHolderProperties.getIngestThreads(),1);
+        int batchSize=Math.max(mongoHolderProperties.getIngestBatchSize(),1);
+        MongoCollection<RawBsonDocument> collection=this.getTemplate(MongoWorkload.BULK_WRITE).getCollection(this.getCollectionName(entityClass)).withDocumentClass(RawBsonDocument.class);
+        Codec<Document> codec=collection.getCodecRegistry().get(Document.class);
+        boolean tempPool=false;
+        if(workerPool==null){
+            workerPool=Executors.newFixedThreadPool(threads,new CustomizableThreadFactory("mongo-ingest-"));
+            tempPool=true;
+        }
+        //正在写入和预读等待的批次数
+        int permits=threads+Math.max(mongoHolderProperties.getIngestQueueBatches(),0);
+        Semaphore inFlight=new Semaphore(permits);
+        int total=0;
+        try {
+            while (source.hasNext()) {
+                List<T> batch=new ArrayList<>(batchSize);
+                int firstIndex=total;
+                while (batch.size()<batchSize && source.hasNext()) {
+                    batch.add(source.next());
+                    total++;
+                }
+                inFlight.acquire();
+                try {
+                    workerPool.execute(() -> {
+                        try {
+                            this.ingestBatch(collection,codec,batch,firstIndex,result);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    inFlight.release();
+                    throw e;
+                }
+            }
+        } finally {
+            //等待已提交的批次完成
+            inFlight.acquireUninterruptibly(permits);
+            if(tempPool){
+                workerPool.shutdown();
+            }
+            result.setTotalCount(total);
+            this.record("extIngest",entityClass,startTime,result.getSuccessCount(),!result.isSuccess());
+            this.invalidateCount(entityClass);
+        }
+        return result;
+    }
+
+    /**
+     * 流式批量插入（工作线程池按配置创建）
+     * @param source 数据源
+     * @param entityClass 实体类
+     * @return com.pdd.db.mongo.holder.BulkResult 
+     */
+    public <T extends MongoBean> BulkResult extIngest(Iterator<? extends T> source, Class<T> entityClass) throws Exception{
+        return this.extIngest(source,entityClass,null);
+    }
+
+    /**
+     * 流式批量插入（读取完毕后关闭数据流）
+     * @param source 数据流
+     * @param entityClass 实体类
+     * @return com.pdd.db.mongo.holder.BulkResult 
+     */
+    public <T extends MongoBean> BulkResult extIngest(Stream<? extends T> source, Class<T> entityClass) throws Exception{
+        if(source==null){
+            return new BulkResult();
+        }
+        try (Stream<? extends T> stream = source) {
+            return this.extIngest(stream.iterator(),entityClass,null);
+        }
+    }
+
+    /**
+     * 转换并写入一批记录（按条数和字节数拆分为无序批量插入）
+     * @param collection 集合
+     * @param codec 文档编码器
+     * @param batch 本批记录
+     * @param firstIndex 本批第一条在数据源中的序号
+     * @param result 写入结果（多个工作线程共用，更新时加锁）
+     * @return void 
+     */
+    private <T extends MongoBean> void ingestBatch(MongoCollection<RawBsonDocument> collection, Codec<Document> codec, List<T> batch, int firstIndex, BulkResult result){
+        long maxBytes=mongoHolderProperties.getIngestBatchBytes();
+        List<RawBsonDocument> documents=new ArrayList<>(batch.size());
+        List<Integer> indexes=new ArrayList<>(batch.size());
+        long bytes=0;
+        for(int i=0;i<batch.size();i++){
+            T mongoBean=batch.get(i);
+            RawBsonDocument document;
+            try {
+                if(mongoBean==null){
+                    throw new Exception("要插入的对象为空");
+                }
+                if(StringUtils.isBlank(mongoBean.getId())){
+                    mongoBean.setId(new ObjectId().toHexString());
+                }
+                this.initDelFlag(mongoBean);
+                Document converted=new Document();
+                mongoConverter.write(mongoBean,converted);
+                document=new RawBsonDocument(converted,codec);
+            } catch (Exception e) {
+                synchronized (result) {
+                    this.addBulkFailure(result,firstIndex+i,mongoBean==null?null:mongoBean.getId(),null,e.getMessage(),e);
+                }
+                continue;
+            }
+            int size=document.getByteBuffer().remaining();
+            if(!documents.isEmpty() && bytes+size>maxBytes){
+                this.insertIngestBatch(collection,batch,documents,indexes,firstIndex,result);
+                documents=new ArrayList<>(batch.size());
+                indexes=new ArrayList<>(batch.size());
+                bytes=0;
+            }
+            documents.add(document);
+            indexes.add(i);
+            bytes+=size;
+        }
+        if(!documents.isEmpty()){
+            this.insertIngestBatch(collection,batch,documents,indexes,firstIndex,result);
+        }
+    }
+
+    /**
+     * 无序批量插入
+     * @param collection 集合
+     * @param batch 本批记录
+     * @param documents 要插入的文档
+     * @param indexes 文档对应的记录在本批中的序号
+     * @param firstIndex 本批第一条在数据源中的序号
+     * @param result 写入结果
+     * @return void 
+     */
+    private <T extends MongoBean> void insertIngestBatch(MongoCollection<RawBsonDocument> collection, List<T> batch, List<RawBsonDocument> documents, List<Integer> indexes, int firstIndex, BulkResult result){
+        try {
+            collection.insertMany(documents,new InsertManyOptions().ordered(false));
+            synchronized (result) {
+                result.setSuccessCount(result.getSuccessCount()+documents.size());
+            }
+        } catch (MongoBulkWriteException e) {
+            //无序写入：除错误记录外，其他记录均已写入
+            synchronized (result) {
+                result.setSuccessCount(result.getSuccessCount()+documents.size()-e.getWriteErrors().size());
+                for(com.mongodb.bulk.BulkWriteError error:e.getWriteErrors()){
+                    int index=indexes.get(error.getIndex());
+                    this.addBulkFailure(result,firstIndex+index,batch.get(index).getId(),error.getCode(),error.getMessage(),null);
+                }
+            }
+        } catch (RuntimeException e) {
+            //整批失败（如网络异常），本批记录均视为失败
+            synchronized (result) {
+                for(Integer index:indexes){
+                    this.addBulkFailure(result,firstIndex+index,batch.get(index).getId(),null,e.getMessage(),e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 条件删除（物理删除，实体类开启软删除时同样直接删除；分区实体类在条件涉及的分区上删除）
+     * @param query
+     * @param entityClass
+     * @return
+     */
+    public <T extends MongoBean> DeleteResult remove(Query query, Class<T> entityClass){
+        long startTime=this.startTimer();
+        try {
+            DeleteResult result=this.removeRouted(this.getTemplate(MongoWorkload.OLTP),query,entityClass);
+            this.record("remove",entityClass,startTime,result.wasAcknowledged()?result.getDeletedCount():0,false);
+            return result;
+        } catch (RuntimeException e) {
+            this.record("remove",entityClass,startTime,0,true);
+            throw e;
+        } finally {
+            this.invalidateCache(entityClass);
+        }
+    }
+
+    /**
+     * 查询满足条件记录（分区实体类只查询条件涉及的分区，并行查询后合并）
+     * @param query
+     * @param entityClass
+     * @return java.util.List<T>
+     */
+    public <T extends MongoBean> List<T> find(Query query, Class<T> entityClass){
+        long startTime=this.startTimer();
+        long profileStart=this.startProfile();
+        try {
+            query=this.getLiveQuery(query,entityClass);
+            PartitionRouter router=this.getPartitionRouter(entityClass);
+            List<T> list;
+            if(router!=null){
+                list=this.findPartitioned(query,entityClass,router);
+            }else{
+                list=this.getTemplate(MongoWorkload.OLTP).find(query,entityClass);
+                this.profile("find",entityClass,query,profileStart);
+            }
+            this.track(list);
+            this.record("find",entityClass,startTime,list.size(),false);
+            return list;
+        } catch (RuntimeException e) {
+            this.record("find",entityClass,startTime,0,true);
+            throw e;
+        }
+    }
+    
+    /**
+     * 查询第一条（分区实体类与find一致，在条件涉及的分区上查询后按排序取第一条）
+     * @param query 
+     * @param entityClass 
+     * @return T 
+     */
+    public <T extends MongoBean> T findOne(Query query, Class<T> entityClass){
+        long startTime=this.startTimer();
+        try {
+            T model;
+            PartitionRouter router=this.getPartitionRouter(entityClass);
+            if(router!=null){
+                List<T> list=this.findPartitioned(Query.of(this.getLiveQuery(query,entityClass)).limit(1),entityClass,router);
+                model=list.isEmpty()?null:list.get(0);
+            }else{
+                model=this.getTemplate(MongoWorkload.OLTP).findOne(this.getLiveQuery(query,entityClass),entityClass);
+            }
+            this.track(model);
+            this.record("findOne",entityClass,startTime,model==null?0:1,false);
+            return model;
+        } catch (RuntimeException e) {
+            this.record("findOne",entityClass,startTime,0,true);
+            throw e;
+        }
+    }
+    
+    /**
+     * 根据主键查询（分区实体类在所有分区上并行查询）
+     * @param id 
+     * @param entityClass 
+     * @return T 
+     */
+    public <T extends MongoBean> T findById(Object id, Class<T> entityClass){
+        long startTime=this.startTimer();
+        try {
+            T model;
+            EntityCache entityCache=this.getEntityCache(entityClass);
+            if(id!=null && entityCache==null && (this.isIdBatchActive() || this.getPartitionRouter(entityClass)!=null)){
+                Document document=this.findDocumentById(mongoConverter.convertId(id,ObjectId.class),entityClass);
+                model=document==null?null:mongoConverter.read(entityClass,document);
+            }else if(entityCache==null || id==null){
+                model=this.getTemplate(MongoWorkload.OLTP).findById(id,entityClass);
+            }else{
+                model=this.findByIdCached(entityCache,mongoConverter.convertId(id,ObjectId.class),entityClass);
+            }
+            model=this.getLive(model);
+            this.track(model);
+            this.record("findById",entityClass,startTime,model==null?0:1,false);
+            return model;
+        } catch (RuntimeException e) {
+            this.record("findById",entityClass,startTime,0,true);
+            throw e;
+        }
+    }
+
+    /**
+     * 查询总数
+     * @param query 
+     * @param entityClass 
+     * @return long 
+     */
+    public <T extends MongoBean> long count(Query query, Class<T> entityClass){
+        return this.extCount(query,entityClass,mongoHolderProperties.getCountMode());
+    }
+
+    /**
+     * 按计数方式查询总数
+     * <br>无查询条件（且无跳过和限制）时，ESTIMATED和CACHED使用集合元数据估算，不扫描记录（开启软删除的实体类有未删除条件，不估算）；
+     * 有条件时CACHED按查询条件缓存精确计数，过期时间内句柄对该集合的写操作会使缓存失效；分区实体类各分区精确计数后相加
+     * @param query 查询器（为空时查询全部）
+     * @param entityClass 查询实体
+     * @param countMode 计数方式（为空时精确计数）
+     * @return long 
+     */
+    public <T extends MongoBean> long extCount(Query query, Class<T> entityClass, CountMode countMode){
+        long startTime=this.startTimer();
+        long profileStart=this.startProfile();
+        try {
+            long count;
+            Query liveQuery=this.getLiveQuery(query==null?new Query():query,entityClass);
+            PartitionRouter router=this.getPartitionRouter(entityClass);
+            if(router!=null){
+                count=this.countPartitioned(liveQuery,entityClass,router);
+            }else if(countMode==null || countMode==CountMode.EXACT){
+                count=this.getTemplate(MongoWorkload.OLTP).count(liveQuery,entityClass);
+                this.profile("count",entityClass,liveQuery,profileStart);
+            }else if(liveQuery.getQueryObject().isEmpty() && liveQuery.getSkip()<=0 && liveQuery.getLimit()<=0){
+                count=this.getTemplate(MongoWorkload.OLTP).getCollection(this.getCollectionName(entityClass)).estimatedDocumentCount();
+            }else if(countMode==CountMode.CACHED){
+                count=this.countCached(liveQuery,entityClass);
+            }else{
+                count=this.getTemplate(MongoWorkload.OLTP).count(liveQuery,entityClass);
+            }
+            this.record("count",entityClass,startTime,0,false);
+            return count;
+        } catch (RuntimeException e) {
+            this.record("count",entityClass,startTime,0,true);
+            throw e;
+        }
+    }
+
+    /**
+     * 计数（最多数到limit，达到后服务端停止扫描）
+     * <br>用于“是否超过N条”之类的判断，开销与limit相关而非满足条件的总数
+     * @param query 查询器
+     * @param entityClass 查询实体
+     * @param limit 计数上限（需大于0）
+     * @return long 不超过limit的计数
+     */
+    public <T extends MongoBean> long extCountUpTo(Query query, Class<T> entityClass, long limit) throws Exception{
+        if(limit<=0){
+            throw new Exception("计数上限需大于0");
+        }
+        long startTime=this.startTimer();
+        try {
+            CountOptions countOptions=new CountOptions().limit((int)Math.min(limit,Integer.MAX_VALUE));
+            if(query.getMeta().getMaxTimeMsec()!=null){
+                countOptions.maxTime(query.getMeta().getMaxTimeMsec(),TimeUnit.MILLISECONDS);
+            }
+            query.getCollation().ifPresent(collation -> countOptions.collation(collation.toMongoCollation()));
+            MongoTemplate template=this.getTemplate(MongoWorkload.OLTP);
+            PartitionRouter router=this.getPartitionRouter(entityClass);
+            long count;
+            if(router!=null){
+                //各分区最多数到limit，相加后截取
+                Document filter=this.getMappedFilter(this.getLiveQuery(query,entityClass),entityClass);
+                count=0;
+                for(Long partitionCount:this.fanOut(this.getPartitions(router,filter,template),collectionName -> template.getCollection(collectionName).countDocuments(filter,countOptions))){
+                    count+=partitionCount;
+                }
+                count=Math.min(count,limit);
+            }else{
+                count=template.getCollection(this.getCollectionName(entityClass)).countDocuments(this.getLiveFilter(query.getQueryObject(),entityClass),countOptions);
+            }
+            this.record("extCountUpTo",entityClass,startTime,0,false);
+            return count;
+        } catch (RuntimeException e) {
+            this.record("extCountUpTo",entityClass,startTime,0,true);
+            throw e;
+        }
+    }
+
+    /**
+     * 是否有超过n条满足条件的记录（最多数到n+1条）
+     * @param query 查询器
+     * @param entityClass 查询实体
+     * @param n 条数（需大于等于0）
+     * @return boolean 
+     */
+    public <T extends MongoBean> boolean extHasMoreThan(Query query, Class<T> entityClass, long n) throws Exception{
+        if(n<0){
+            throw new Exception("条数需大于等于0");
+        }
+        return this.extCountUpTo(query,entityClass,n+1)>n;
+    }
+
+    /**
+     * 精确计数（按查询条件缓存）
+     * @param query 查询器
+     * @param entityClass 查询实体
+     * @return long 
+     */
+    private <T extends MongoBean> long countCached(Query query, Class<T> entityClass){
+        String collectionName=this.getCollectionName(entityClass);
+        //映射后再序列化（枚举等类型需先转换为mongo类型）
+        Document filter=queryMapper.getMappedObject(query.getQueryObject(),mongoConverter.getMappingContext().getRequiredPersistentEntity(entityClass));
+        String key=filter.toJson()+'|'+query.getSkip()+'|'+query.getLimit()+'|'+query.getCollation().map(Object::toString).orElse("");
+        Long cached=countCache.get(collectionName,key);
+        if(cached!=null){
+            return cached;
+        }
+        long loadSeq=countCache.beginLoad();
+        long count=this.getTemplate(MongoWorkload.OLTP).count(query,entityClass);
+        countCache.put(collectionName,key,count,loadSeq);
+        return count;
+    }
+    
+    /**
+     * 聚合操作
+     * @param aggregation 
+     * @param entityClass 输入实体（决定集合和字段映射）
+     * @param outputType 输出类型
+     * @return org.springframework.data.mongodb.core.aggregation.AggregationResults<O> 
+     */
+    public <O> AggregationResults<O> aggregate(Aggregation aggregation, Class<? extends MongoBean> entityClass, Class<O> outputType){
+        this.checkNotPartitioned(entityClass,"聚合");
+        long startTime=this.startTimer();
+        try {
+            AggregationResults<O> results=this.getTemplate(MongoWorkload.ANALYTICS).aggregate(aggregation,entityClass,outputType);
+            this.record("aggregate",entityClass,startTime,results.getMappedResults().size(),false);
+            return results;
+        } catch (RuntimeException e) {
+            this.record("aggregate",entityClass,startTime,0,true);
+            throw e;
+        }
+    }
+
+    /**
+     * 游标聚合（逐条转换后交给执行器，不缓存结果，内存占用与结果数量无关）
+     * <br>结果数据量大或分组超过内存限制时开启allowDiskUse
+     * @param aggregation 聚合（选项中的排序规则、注释生效）
+     * @param entityClass 输入实体（决定集合和字段映射）
+     * @param outputType 输出类型（实体类、DTO类或Document）
+     * @param batchSize 批次大小（为空时取聚合选项，均未指定时使用默认值）
+     * @param allowDiskUse 是否允许使用磁盘（为空时取聚合选项或配置）
+     * @param executor 执行器
+     * @return void 
+     */
+    public <O> void extAggregateExe(Aggregation aggregation, Class<? extends MongoBean> entityClass, Class<O> outputType, Integer batchSize, Boolean allowDiskUse, Executor<O> executor) throws Exception{
+        if(aggregation==null || entityClass==null || outputType==null || executor==null){
+            return ;
+        }
+        long startTime=this.startTimer();
+        ScanMetrics scanMetrics=new ScanMetrics(metricsEnabled);
+        try (MongoCursor<Document> cursor = this.extGetAggregateCursor(aggregation,entityClass,batchSize,allowDiskUse)) {
+            long fetchStart=scanMetrics.now();
+            while (cursor.hasNext()) {
+                Document document=cursor.next();
+                long convertStart=scanMetrics.now();
+                O model=mongoConverter.read(outputType,document);
+                long executeStart=scanMetrics.now();
+                executor.invoke(model);
+                fetchStart=this.addScan(scanMetrics,fetchStart,convertStart,executeStart);
+            }
+            this.recordScan("extAggregateExe",entityClass,startTime,scanMetrics,false);
+        } catch (Exception e) {
+            this.recordScan("extAggregateExe",entityClass,startTime,scanMetrics,true);
+            throw e;
+        }
+    }
+
+    /**
+     * 游标聚合迭代（按需从游标拉取并转换）
+     * <br>读取完毕或异常时自动关闭游标；提前结束时需调用close，建议在try-with-resources中使用
+     * @param aggregation 聚合
+     * @param entityClass 输入实体
+     * @param outputType 输出类型
+     * @param batchSize 批次大小
+     * @param allowDiskUse 是否允许使用磁盘
+     * @return org.springframework.data.util.CloseableIterator<O> 
+     */
+    public <O> CloseableIterator<O> extAggregateIterator(Aggregation aggregation, Class<? extends MongoBean> entityClass, Class<O> outputType, Integer batchSize, Boolean allowDiskUse){
+        long startTime=this.startTimer();
+        ScanMetrics scanMetrics=new ScanMetrics(metricsEnabled);
+        MongoCursor<Document> cursor=this.extGetAggregateCursor(aggregation,entityClass,batchSize,allowDiskUse);
+        return new CursorIterator<>(cursor,document -> mongoConverter.read(outputType,document),scanMetrics,
+                metricsEnabled?failed -> this.recordScan("extAggregateIterator",entityClass,startTime,scanMetrics,failed):null);
+    }
+
+    /**
+     * 游标聚合流（关闭流时关闭游标，建议在try-with-resources中使用）
+     * @param aggregation 聚合
+     * @param entityClass 输入实体
+     * @param outputType 输出类型
+     * @param batchSize 批次大小
+     * @param allowDiskUse 是否允许使用磁盘
+     * @return java.util.stream.Stream<O> 
+     */
+    public <O> Stream<O> extAggregateStream(Aggregation aggregation, Class<? extends MongoBean> entityClass, Class<O> outputType, Integer batchSize, Boolean allowDiskUse){
+        return StreamUtils.createStreamFromIterator(this.extAggregateIterator(aggregation,entityClass,outputType,batchSize,allowDiskUse));
+    }
+
+    /**
+     * 获取聚合游标
+     * @param aggregation 聚合
+     * @param entityClass 输入实体
+     * @param batchSize 批次大小
+     * @param allowDiskUse 是否允许使用磁盘
+     * @return com.mongodb.client.MongoCursor<org.bson.Document> 
+     */
+    private MongoCursor<Document> extGetAggregateCursor(Aggregation aggregation, Class<? extends MongoBean> entityClass, Integer batchSize, Boolean allowDiskUse){
+        this.checkNotPartitioned(entityClass,"聚合");
+        List<Document> pipeline=aggregation.toPipeline(new TypeBasedAggregationOperationContext(entityClass,mongoConverter.getMappingContext(),queryMapper));
+        AggregationOptions options=aggregation.getOptions();
+        if(batchSize==null || batchSize<=0){
+            batchSize=options.getCursorBatchSize()!=null?options.getCursorBatchSize():DEFAULT_CURSOR_BATCH_SIZE;
+        }
+        if(allowDiskUse==null){
+            allowDiskUse=options.isAllowDiskUse() || mongoHolderProperties.isAggregateAllowDiskUse();
+        }
+        AggregateIterable<Document> aggregateIterable=this.getTemplate(MongoWorkload.ANALYTICS).getCollection(this.getCollectionName(entityClass))
+                .aggregate(pipeline).allowDiskUse(allowDiskUse).batchSize(batchSize);
+        options.getCollation().map(Collation::toMongoCollation).ifPresent(aggregateIterable::collation);
+        options.getComment().ifPresent(aggregateIterable::comment);
+        return aggregateIterable.iterator();
+    }
+    
+    //--------------------【扩展方法】--------------------
+
+    /**
+     * 主键查询（分区实体类在所有分区上并行查询）
+     * @param _id 
+     * @param entityClass 
+     * @return T 
+     */
+    public <T extends MongoBean> T extFindById(String _id, Class<T> entityClass){
+        long startTime=this.startTimer();
+        try {
+            T model;
+            EntityCache entityCache=this.getEntityCache(entityClass);
+            if(entityCache!=null){
+                model=this.findByIdCached(entityCache,new ObjectId(_id),entityClass);
+            }else if(this.isIdBatchActive() || this.getPartitionRouter(entityClass)!=null){
+                Document document=this.findDocumentById(new ObjectId(_id),entityClass);
+                model=document==null?null:mongoConverter.read(entityClass,document);
+            }else{
+                Query query=new Query(Criteria.where("_id").is(new ObjectId(_id)));
+                model=this.getTemplate(MongoWorkload.OLTP).findOne(query,entityClass);
+            }
+            model=this.getLive(model);
+            this.track(model);
+            this.record("extFindById",entityClass,startTime,model==null?0:1,false);
+            return model;
+        } catch (RuntimeException e) {
+            this.record("extFindById",entityClass,startTime,0,true);
+            throw e;
+        }
+    }
+
+    /**
+     * 根据多个主键查询（按配置的最大条数分批以_id $in查询，开启缓存的实体类先读取缓存；开启软删除的实体类已删除的记录为null；分区实体类每批在所有分区上并行查询）
+     * @param ids 主键
+     * @param entityClass 查询实体
+     * @return java.util.List<T> 与主键顺序一致，不存在的主键对应位置为null
+     */
+    public <T extends MongoBean> List<T> extFindByIds(Collection<String> ids, Class<T> entityClass){
+        List<T> list=new ArrayList<>(ids==null?0:ids.size());
+        if(CollectionUtils.isEmpty(ids)){
+            return list;
+        }
+        long startTime=this.startTimer();
+        try {
+            EntityCache entityCache=this.getEntityCache(entityClass);
+            List<ObjectId> objectIds=new ArrayList<>(ids.size());
+            Map<Object, Document> documentMap=new HashMap<>(ids.size()*2);
+            Set<Object> missingIds=new LinkedHashSet<>();
+            for(String id:ids){
+                ObjectId objectId=new ObjectId(id);
+                objectIds.add(objectId);
+                Document document=entityCache!=null && !documentMap.containsKey(objectId)?entityCache.get(objectId):null;
+                if(document!=null){
+                    documentMap.put(objectId,document);
+                }else if(!documentMap.containsKey(objectId)){
+                    missingIds.add(objectId);
+                }
+            }
+            if(!missingIds.isEmpty()){
+                long loadSeq=entityCache!=null?entityCache.beginLoad():0;
+                String collectionName=this.getCollectionName(entityClass);
+                PartitionRouter router=this.getPartitionRouter(entityClass);
+                int batchSize=Math.max(mongoHolderProperties.getIdBatchMaxSize(),1);
+                List<Object> missingList=new ArrayList<>(missingIds);
+                for(int from=0;from<missingList.size();from+=batchSize){
+                    List<Object> batchIds=missingList.subList(from,Math.min(from+batchSize,missingList.size()));
+                    for(Document document:router==null?this.findDocumentsByIds(collectionName,batchIds):this.findDocumentsByIdsPartitioned(router,batchIds)){
+                        documentMap.put(document.get("_id"),document);
+                        if(entityCache!=null){
+                            entityCache.put(document.get("_id"),document,loadSeq);
+                        }
+                    }
+                }
+            }
+            int found=0;
+            for(ObjectId objectId:objectIds){
+                Document document=documentMap.get(objectId);
+                T model=this.getLive(document==null?null:mongoConverter.read(entityClass,document));
+                this.track(model);
+                list.add(model);
+                if(model!=null){
+                    found++;
+                }
+            }
+            this.record("extFindByIds",entityClass,startTime,found,false);
+            return list;
+        } catch (RuntimeException e) {
+            this.record("extFindByIds",entityClass,startTime,0,true);
+            throw e;
+        }
+    }
+
+    /**
+     * 更新第一条（分区实体类按时间顺序在条件涉及的分区上依次更新，更新到一条后停止）
+     * @param query 查询条件
+     * @param mongoBean 要更新的实体
+     * @param updateFields 
+     * @return com.mongodb.client.result.UpdateResult 
+     */
+    public <T extends MongoBean> UpdateResult extUpdateFirst(Query query, T mongoBean,String... updateFields) throws Exception{
+        long startTime=this.startTimer();
+        try {
+            Update update=getUpdateFromBean(mongoBean,updateFields);
+            UpdateResult result=this.updateFirstRouted(this.getTemplate(MongoWorkload.OLTP),query,update,mongoBean.getClass());
+            this.record("extUpdateFirst",mongoBean.getClass(),startTime,this.getModifiedCount(result),false);
+            return result;
+        } catch (Exception e) {
+            this.record("extUpdateFirst",mongoBean==null?null:mongoBean.getClass(),startTime,0,true);
+            throw e;
+        } finally {
+            if(mongoBean!=null){
+                this.invalidateCache(mongoBean.getClass());
+            }
+        }
+    }
+
+    /**
+     * 批量更新（分区实体类在条件涉及的分区上并行更新）
+     * @param query 查询条件
+     * @param mongoBean 要更新的实体
+     * @param updateFields 要更新的字段（有参数时，更新指定的字段；无此参数时，更新mongoBean所有不为空的字段）
+     * @return com.mongodb.client.result.UpdateResult 
+     */
+    public <T extends MongoBean> UpdateResult extUpdateMulti(Query query, T mongoBean,String... updateFields) throws Exception{
+        long startTime=this.startTimer();
+        long profileStart=this.startProfile();
+        try {
+            Update update=getUpdateFromBean(mongoBean,updateFields);
+            UpdateResult result=this.updateMultiRouted(this.getTemplate(MongoWorkload.OLTP),query,update,mongoBean.getClass());
+            this.profile("extUpdateMulti",mongoBean.getClass(),query,profileStart);
+            this.record("extUpdateMulti",mongoBean.getClass(),startTime,this.getModifiedCount(result),false);
+            return result;
+        } catch (Exception e) {
+            this.record("extUpdateMulti",mongoBean==null?null:mongoBean.getClass(),startTime,0,true);
+            throw e;
+        } finally {
+            if(mongoBean!=null){
+                this.invalidateCache(mongoBean.getClass());
+            }
+        }
+    }
+    
+    /**
+     * 根据主键更新数据（更新指定的字段/更新不为空的字段）
+     * @param _id 主键
+     * @param mongoBean 要更新的实体
+     * @param updateFields 要更新的字段（有参数时，更新指定的字段；无此参数时，更新mongoBean所有不为空的字段）
+     * @return com.mongodb.client.result.UpdateResult 
+     */
+    public <T extends MongoBean> UpdateResult extUpdateById(String _id,T mongoBean,String... updateFields) throws Exception{
+        long startTime=this.startTimer();
+        ObjectId id=null;
+        boolean written=false;
+        try {
+            id=new ObjectId(_id);
+            //变更跟踪范围内查询的实体，只发送变化的字段
+            ChangeTracker.Change change=updateFields.length==0?this.getChange(mongoBean,id,false):null;
+            if(change!=null && change.isEmpty()){
+                this.record("extUpdateById",mongoBean.getClass(),startTime,0,false);
+                return UNCHANGED;
+            }
+            written=true;
+            Query query=new Query(Criteria.where("_id").is(id));
+            Update update=change!=null?change.getUpdate():getUpdateFromBean(mongoBean,updateFields);
+            UpdateResult result=this.updateByIdRouted(this.getTemplate(MongoWorkload.OLTP),query,update,mongoBean.getClass());
+            if(change!=null){
+                change.commit();
+            }
+            this.record("extUpdateById",mongoBean.getClass(),startTime,this.getModifiedCount(result),false);
+            return result;
+        } catch (Exception e) {
+            this.record("extUpdateById",mongoBean==null?null:mongoBean.getClass(),startTime,0,true);
+            throw e;
+        } finally {
+            if(mongoBean!=null && id!=null && written){
+                this.invalidateCache(mongoBean.getClass(),id);
+            }
+        }
+    }
+
+    /**
+     * 根据主键更新所有字段
+     * @param _id 主键
+     * @param mongoBean 要更新的实体
+     * @return com.mongodb.client.result.UpdateResult
+     */
+    public <T extends MongoBean> UpdateResult extUpdateAllById(String _id,T mongoBean) throws Exception{
+        return this.extUpdateChangesById("extUpdateAllById",_id,mongoBean,false);
+    }
+
+    /**
+     * 根据主键保存实体的变更（变更跟踪范围内查询的实体，只发送变化的字段：变化的set，变为空的unset；无变化时不写入）
+     * <br>实体未跟踪时与extUpdateAllById一致（更新所有不为空的字段）
+     * @param mongoBean 要保存的实体（主键取实体的id）
+     * @return com.mongodb.client.result.UpdateResult 无变化未写入时返回UNCHANGED
+     */
+    public <T extends MongoBean> UpdateResult extSaveChanges(T mongoBean) throws Exception{
+        if(mongoBean==null){
+            throw new Exception("要更新的对象为空");
+        }
+        return this.extUpdateChangesById("extSaveChanges",mongoBean.getId(),mongoBean,true);
+    }
+
+    /**
+     * 根据主键更新（已跟踪的实体只发送变化的字段，未跟踪时更新所有字段）
+     * @param operation 操作名
+     * @param _id 主键
+     * @param mongoBean 要更新的实体
+     * @param unsetRemoved 变为空的字段是否unset
+     * @return com.mongodb.client.result.UpdateResult 
+     */
+    private <T extends MongoBean> UpdateResult extUpdateChangesById(String operation, String _id, T mongoBean, boolean unsetRemoved) throws Exception{
+        if(StringUtils.isBlank(_id)){
+            throw new Exception("更新主键不可为空");
+        }
+        long startTime=this.startTimer();
+        ObjectId id=new ObjectId(_id);
+        ChangeTracker.Change change=this.getChange(mongoBean,id,unsetRemoved);
+        if(change!=null && change.isEmpty()){
+            this.record(operation,mongoBean.getClass(),startTime,0,false);
+            return UNCHANGED;
+        }
+        Query query=new Query(Criteria.where("_id").is(id));
+        Update update=change!=null?change.getUpdate():getAllUpdateFromBean(mongoBean);
+        try {
+            UpdateResult result=this.updateByIdRouted(this.getTemplate(MongoWorkload.OLTP),query,update,mongoBean.getClass());
+            if(change!=null){
+                change.commit();
+            }
+            this.record(operation,mongoBean.getClass(),startTime,this.getModifiedCount(result),false);
+            return result;
+        } catch (RuntimeException e) {
+            this.record(operation,mongoBean.getClass(),startTime,0,true);
+            throw e;
+        } finally {
+            this.invalidateCache(mongoBean.getClass(),id);
+        }
+    }
+    
+    /**
+     * 根据主键批量更新（更新指定的字段/更新不为空的字段）
+     * <br>按配置的每批数量分批，以无序批量写入提交；单条失败不影响其他记录，失败记录在结果中返回
+     * @param mongoBeans 要更新的实体（主键取实体的id）
+     * @param updateFields 要更新的字段（有参数时，更新指定的字段；无此参数时，更新mongoBean所有不为空的字段）
+     * @return com.pdd.db.mongo.holder.BulkResult 
+     */
+    public <T extends MongoBean> BulkResult extBulkUpdateById(Collection<T> mongoBeans, String... updateFields){
+        return this.extBulkUpdateById(mongoBeans,mongoHolderProperties.getBulkWriteBatchSize(),updateFields);
+    }
+
+    /**
+     * 根据主键批量更新（更新指定的字段/更新不为空的字段）
+     * @param mongoBeans 要更新的实体（主键取实体的id）
+     * @param batchSize 每批数量
+     * @param updateFields 要更新的字段（有参数时，更新指定的字段；无此参数时，更新mongoBean所有不为空的字段）
+     * @return com.pdd.db.mongo.holder.BulkResult 
+     */
+    public <T extends MongoBean> BulkResult extBulkUpdateById(Collection<T> mongoBeans, int batchSize, String... updateFields){
+        return this.extBulkUpdate(mongoBeans,batchSize,false,updateFields);
+    }
+
+    /**
+     * 根据主键批量更新所有字段
+     * @param mongoBeans 要更新的实体（主键取实体的id）
+     * @return com.pdd.db.mongo.holder.BulkResult 
+     */
+    public <T extends MongoBean> BulkResult extBulkUpdateAllById(Collection<T> mongoBeans){
+        return this.extBulkUpdateAllById(mongoBeans,mongoHolderProperties.getBulkWriteBatchSize());
+    }
+
+    /**
+     * 根据主键批量更新所有字段
+     * @param mongoBeans 要更新的实体（主键取实体的id）
+     * @param batchSize 每批数量
+     * @return com.pdd.db.mongo.holder.BulkResult 
+     */
+    public <T extends MongoBean> BulkResult extBulkUpdateAllById(Collection<T> mongoBeans, int batchSize){
+        return this.extBulkUpdate(mongoBeans,batchSize,true);
+    }
+
+    /**
+     * 根据主键批量更新
+     * @param mongoBeans 要更新的实体
+     * @param batchSize 每批数量
+     * @param allFields 是否更新所有字段
+     * @param updateFields 要更新的字段
+     * @return com.pdd.db.mongo.holder.BulkResult 
+     */
+    private <T extends MongoBean> BulkResult extBulkUpdate(Collection<T> mongoBeans, int batchSize, boolean allFields, String... updateFields){
+        BulkResult result=new BulkResult();
+        if(CollectionUtils.isEmpty(mongoBeans)){
+            return result;
+        }
+        if(batchSize<=0){
+            batchSize=mongoHolderProperties.getBulkWriteBatchSize();
+        }
+        result.setTotalCount(mongoBeans.size());
+        //按实体类分组（批量写入按集合提交），记录每条在提交集合中的序号
+        Map<Class<?>, List<Integer>> classIndexes=new LinkedHashMap<>();
+        List<T> beanList=new ArrayList<>(mongoBeans);
+        for(int i=0;i<beanList.size();i++){
+            T mongoBean=beanList.get(i);
+            if(mongoBean==null){
+                this.addBulkFailure(result,i,null,null,"要更新的对象为空",null);
+                continue;
+            }
+            classIndexes.computeIfAbsent(mongoBean.getClass(),k -> new ArrayList<>()).add(i);
+        }
+        for(Map.Entry<Class<?>, List<Integer>> entry:classIndexes.entrySet()){
+            List<Integer> indexes=entry.getValue();
+            for(int from=0;from<indexes.size();from+=batchSize){
+                this.extBulkUpdateChunk(entry.getKey(),beanList,indexes.subList(from,Math.min(from+batchSize,indexes.size())),allFields,updateFields,result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 提交一批更新（分区实体类先按主键查询所在分区，再按分区分别提交；不在任何分区的记录没有写入，记为失败）
+     * @param entityClass 实体类
+     * @param beanList 要更新的实体
+     * @param indexes 本批实体的序号
+     * @param allFields 是否更新所有字段
+     * @param updateFields 要更新的字段
+     * @param result 批量写入结果
+     * @return void 
+     */
+    private <T extends MongoBean> void extBulkUpdateChunk(Class<?> entityClass, List<T> beanList, List<Integer> indexes, boolean allFields, String[] updateFields, BulkResult result){
+        PartitionRouter router=this.getPartitionRouter(entityClass);
+        if(router==null){
+            this.extBulkUpdateChunk(entityClass,mongoTemplate.getCollectionName(entityClass),beanList,indexes,allFields,updateFields,result);
+            return;
+        }
+        List<Object> ids=new ArrayList<>(indexes.size());
+        for(Integer index:indexes){
+            String id=beanList.get(index).getId();
+            if(StringUtils.isNotBlank(id) && ObjectId.isValid(id)){
+                ids.add(new ObjectId(id));
+            }
+        }
+        Map<Object, String> locations=this.locatePartitions(router,ids);
+        //主键无效的记录提交前校验失败，不会写入基础集合
+        Map<String, List<Integer>> partitionIndexes=new LinkedHashMap<>();
+        for(Integer index:indexes){
+            String id=beanList.get(index).getId();
+            if(StringUtils.isBlank(id) || !ObjectId.isValid(id)){
+                partitionIndexes.computeIfAbsent(mongoTemplate.getCollectionName(entityClass),k -> new ArrayList<>()).add(index);
+            }else if(locations.containsKey(new ObjectId(id))){
+                partitionIndexes.computeIfAbsent(locations.get(new ObjectId(id)),k -> new ArrayList<>()).add(index);
+            }else{
+                this.addBulkFailure(result,index,id,null,"更新记录不存在",null);
+            }
+        }
+        for(Map.Entry<String, List<Integer>> entry:partitionIndexes.entrySet()){
+            this.extBulkUpdateChunk(entityClass,entry.getKey(),beanList,entry.getValue(),allFields,updateFields,result);
+        }
+    }
+
+    /**
+     * 向一个集合提交一批更新
+     * @param entityClass 实体类
+     * @param collectionName 集合名
+     * @param beanList 要更新的实体
+     * @param indexes 本批实体的序号
+     * @param allFields 是否更新所有字段
+     * @param updateFields 要更新的字段
+     * @param result 批量写入结果
+     * @return void 
+     */
+    private <T extends MongoBean> void extBulkUpdateChunk(Class<?> entityClass, String collectionName, List<T> beanList, List<Integer> indexes, boolean allFields, String[] updateFields, BulkResult result){
+        BulkOperations bulkOperations=this.getTemplate(MongoWorkload.BULK_WRITE).bulkOps(BulkOperations.BulkMode.UNORDERED,entityClass,collectionName);
+        //已加入批量写入的记录序号（批量写入错误中的序号对应此列表）
+        List<Integer> submitted=new ArrayList<>(indexes.size());
+        //已跟踪实体的变更（与submitted一一对应，未跟踪为null）
+        List<ChangeTracker.Change> changes=new ArrayList<>(indexes.size());
+        for(Integer index:indexes){
+            T mongoBean=beanList.get(index);
+            try {
+                if(StringUtils.isBlank(mongoBean.getId())){
+                    throw new Exception("更新主键不可为空");
+                }
+                ObjectId id=new ObjectId(mongoBean.getId());
+                ChangeTracker.Change change=allFields || updateFields.length==0?this.getChange(mongoBean,id,false):null;
+                if(change!=null && change.isEmpty()){
+                    //无变化不写入，视为成功（未发送写入，不计入匹配数）
+                    result.setSuccessCount(result.getSuccessCount()+1);
+                    continue;
+                }
+                Query query=new Query(Criteria.where("_id").is(id));
+                Update update=change!=null?change.getUpdate():allFields?getAllUpdateFromBean(mongoBean):getUpdateFromBean(mongoBean,updateFields);
+                bulkOperations.updateOne(query,update);
+                submitted.add(index);
+                changes.add(change);
+            } catch (Exception e) {
+                this.addBulkFailure(result,index,mongoBean.getId(),null,e.getMessage(),e);
+            }
+        }
+        if(submitted.isEmpty()){
+            return;
+        }
+        EntityCache entityCache=this.getCollectionCache(entityClass);
+        String operation=allFields?"extBulkUpdateAllById":"extBulkUpdateById";
+        long startTime=this.startTimer();
+        int failureCount=result.getFailures().size();
+        try {
+            com.mongodb.bulk.BulkWriteResult writeResult=bulkOperations.execute();
+            result.setMatchedCount(result.getMatchedCount()+writeResult.getMatchedCount());
+            result.setModifiedCount(result.getModifiedCount()+writeResult.getModifiedCount());
+            result.setSuccessCount(result.getSuccessCount()+submitted.size());
+            this.commitChanges(changes,null);
+        } catch (BulkOperationException e) {
+            //无序写入：除错误记录外，其他记录均已写入
+            result.setMatchedCount(result.getMatchedCount()+e.getResult().getMatchedCount());
+            result.setModifiedCount(result.getModifiedCount()+e.getResult().getModifiedCount());
+            result.setSuccessCount(result.getSuccessCount()+submitted.size()-e.getErrors().size());
+            Set<Integer> errorIndexes=new HashSet<>();
+            for(BulkWriteError error:e.getErrors()){
+                Integer index=submitted.get(error.getIndex());
+                errorIndexes.add(error.getIndex());
+                this.addBulkFailure(result,index,beanList.get(index).getId(),error.getCode(),error.getMessage(),null);
+            }
+            this.commitChanges(changes,errorIndexes);
+        } catch (RuntimeException e) {
+            //整批失败（如网络异常），本批记录均视为失败
+            for(Integer index:submitted){
+                this.addBulkFailure(result,index,beanList.get(index).getId(),null,e.getMessage(),e);
+            }
+        } finally {
+            this.record(operation,entityClass,startTime,submitted.size(),result.getFailures().size()>failureCount);
+            this.invalidateCount(entityClass);
+            if(entityCache!=null){
+                for(Integer index:submitted){
+                    entityCache.invalidate(new ObjectId(beanList.get(index).getId()));
+                }
+            }
+        }
+    }
+
+    /**
+     * 批量写入后更新已跟踪实体的快照
+     * @param changes 变更（未跟踪为null）
+     * @param errorIndexes 写入失败的序号（为空表示全部成功）
+     * @return void 
+     */
+    private void commitChanges(List<ChangeTracker.Change> changes, Set<Integer> errorIndexes){
+        for(int i=0;i<changes.size();i++){
+            if(changes.get(i)!=null && (errorIndexes==null || !errorIndexes.contains(i))){
+                changes.get(i).commit();
+            }
+        }
+    }
+
+    /**
+     * 记录批量写入失败
+     * @param result 批量写入结果
+     * @param index 序号
+     * @param id 主键
+     * @param code 错误码
+     * @param message 错误信息
+     * @param exception 异常
+     * @return void 
+     */
+    private void addBulkFailure(BulkResult result, int index, String id, Integer code, String message, Exception exception){
+        BulkResult.ItemFailure failure=new BulkResult.ItemFailure();
+        failure.setIndex(index);
+        failure.setId(id);
+        failure.setCode(code);
+        failure.setMessage(message);
+        failure.setException(exception);
+        result.getFailures().add(failure);
+    }
+
+    /**
+     * 根据主键删除（开启软删除的实体类将delFlag置为true并记录删除时间，删除数为本次标记的条数；分区实体类在所有分区上并行删除）
+     * @param _id 主键
+     * @param entityClass mongo实体类
+     * @return com.mongodb.client.result.DeleteResult 
+     */
+    public <T extends MongoBean> DeleteResult extRemoveById(String _id,Class<T> entityClass){
+        long startTime=this.startTimer();
+        ObjectId id=new ObjectId(_id);
+        Query query=new Query(Criteria.where("_id").is(id));
+        try {
+            DeleteResult result;
+            if(this.isSoftDelete(entityClass)){
+                query.addCriteria(Criteria.where(SoftDeletePurger.DEL_FLAG).ne(true));
+                Update update=new Update().set(SoftDeletePurger.DEL_FLAG,true).set(SoftDeletePurger.DEL_TIME,new Date());
+                UpdateResult updateResult=this.getTemplate(MongoWorkload.OLTP).updateFirst(query,update,entityClass);
+                result=updateResult.wasAcknowledged()?DeleteResult.acknowledged(updateResult.getModifiedCount()):DeleteResult.unacknowledged();
+            }else{
+                result=this.removeRouted(this.getTemplate(MongoWorkload.OLTP),query,entityClass);
+            }
+            this.record("extRemoveById",entityClass,startTime,result.wasAcknowledged()?result.getDeletedCount():0,false);
+            return result;
+        } catch (RuntimeException e) {
+            this.record("extRemoveById",entityClass,startTime,0,true);
+            throw e;
+        } finally {
+            this.invalidateCache(entityClass,id);
+        }
+    }
+
+    /**
+     * 初始化删除标志（delFlag为空的记录置为false）
+     * <br>软删除只查询delFlag为false的记录，实体类开启软删除前写入的数据需先初始化
+     * @param entityClass mongo实体类
+     * @return com.mongodb.client.result.UpdateResult 
+     */
+    public <T extends MongoBean> UpdateResult extInitDelFlag(Class<T> entityClass){
+        try {
+            return this.updateMultiRouted(this.getTemplate(MongoWorkload.BULK_WRITE),new Query(Criteria.where(SoftDeletePurger.DEL_FLAG).is(null)),
+                    new Update().set(SoftDeletePurger.DEL_FLAG,false),entityClass);
+        } finally {
+            this.invalidateCache(entityClass);
+        }
+    }
+
+    /**
+     * 立即清理超过保留期的已删除记录（与后台清理相同，分批删除，最多删除配置的批次数）
+     * @param entityClass mongo实体类
+     * @return long 删除条数（未开启软删除的实体类返回0）
+     */
+    public <T extends MongoBean> long extPurgeDeleted(Class<T> entityClass){
+        if(!this.isSoftDelete(entityClass)){
+            return 0;
+        }
+        return softDeletePurger.purge(this.getCollectionName(entityClass));
+    }
+
+    /**
+     * 获取软删除清理统计（每个登记的集合一条，包含最近一次清理失败和索引创建失败）
+     * @return java.util.List<com.pdd.db.mongo.holder.SoftDeletePurgeStats> 
+     */
+    public List<SoftDeletePurgeStats> extGetPurgeStats(){
+        return softDeletePurger.getStats();
+    }
+        
+    /**
+     * 获取mongo游标（需要手动关闭）
+     * @param query 查询对象
+     * @param entityClass 查询实体
+     * @param batchSize 批次大小（默认1000，需大于0）
+     * @param pageNum 当前页数
+     * @param pageSize 每页大小
+     * @return com.mongodb.client.MongoCursor<org.bson.Document> 
+     */
+    <T extends MongoBean> MongoCursor<Document> extGetMongoCursor(Query query, Class<T> entityClass, Integer batchSize, Integer pageNum, Integer pageSize){
+        if(query==null){
+            return null;
+        }
+        return this.extGetMongoCursor(query,entityClass,Document.class,query.getFieldsObject(),batchSize,pageNum,pageSize);
+    }
+
+    /**
+     * 获取mongo游标（需要手动关闭）
+     * @param query 查询对象
+     * @param entityClass 查询实体
+     * @param documentClass 游标文档类型（Document或RawBsonDocument）
+     * @param fields 返回字段（为空时返回全部字段）
+     * @param batchSize 批次大小（默认1000，需大于0）
+     * @param pageNum 当前页数
+     * @param pageSize 每页大小
+     * @return com.mongodb.client.MongoCursor<D> 
+     */
+    private <T extends MongoBean, D> MongoCursor<D> extGetMongoCursor(Query query, Class<T> entityClass, Class<D> documentClass, Document fields, Integer batchSize, Integer pageNum, Integer pageSize){
+        if(query==null || entityClass==null){
+            return null;
+        }
+        this.checkNotPartitioned(entityClass,"游标查询");
+        MongoCollection<D> collection=this.getTemplate(MongoWorkload.ANALYTICS).getCollection(mongoTemplate.getCollectionName(entityClass)).withDocumentClass(documentClass);
+        FindIterable<D> findIterable=this.extGetFindIterable(collection,this.getLiveFilter(query.getQueryObject(),entityClass),fields,query.getSortObject(),batchSize);
+        //（5）跳过记录数
+        if(pageNum!=null && pageSize!=null){
+            findIterable.skip((pageNum - 1) * pageSize);
+            findIterable.limit(pageSize);
+        }
+        
+        return findIterable.cursor();
+    }
+
+    /**
+     * 获取填充了游标属性的查询
+     * @param collection 集合
+     * @param filter 查询条件
+     * @param fields 返回字段（可为空）
+     * @param sort 排序（可为空）
+     * @param batchSize 批次大小（默认1000，需大于0）
+     * @return com.mongodb.client.FindIterable<D>
+     */
+    private <D> FindIterable<D> extGetFindIterable(MongoCollection<D> collection, Document filter, Document fields, Document sort, Integer batchSize){
+        FindIterable<D> findIterable=collection.find(filter);
+        ////----------填充游标属性----------
+        //（1）游标不超时
+        findIterable.noCursorTimeout(true);
+        //（2）批次拉取大小（默认1000）
+        if(batchSize==null || batchSize<=0){
+            batchSize=DEFAULT_CURSOR_BATCH_SIZE;
+        }
+        findIterable.batchSize(batchSize);
+        //（3）排序
+        if(sort!=null){
+            findIterable.sort(sort);
+        }
+        //（4）返回字段
+        if(fields!=null && !fields.isEmpty()){
+            findIterable.projection(fields);
+        }
+        return findIterable;
+    }
+
+    /**
+     * 执行游标查询
+     * @param query 查询器
+     * @param entityClass 查询实体
+     * @param batchSize 批次大小
+     * @param pageNum 当前页
+     * @param pageSize 每次大小
+     * @param executor 执行器
+     * @return void 
+     */
+    public <T extends MongoBean> void extCursorQueryExe(Query query, Class<T> entityClass, Integer batchSize, Integer pageNum, Integer pageSize, Executor<T> executor) throws Exception{
+        if(executor==null){
+            return ;
+        }
+        long startTime=this.startTimer();
+        long profileStart=this.startProfile();
+        ScanMetrics scanMetrics=new ScanMetrics(metricsEnabled);
+        try (MongoCursor<Document> cursor = this.extGetMongoCursor(query,entityClass,batchSize,pageNum,pageSize)) {
+            if(cursor==null){
+                return ;
+            }
+            //游标耗时包含执行器耗时，按打开游标（查询第一批）的耗时检测
+            this.profile("extCursorQueryExe",entityClass,query,profileStart);
+            T model;
+            long fetchStart=scanMetrics.now();
+            while (cursor.hasNext()) {
+                Document document=cursor.next();
+                long convertStart=scanMetrics.now();
+                model = mongoConverter.read(entityClass, document);
+                this.track(model);
+                long executeStart=scanMetrics.now();
+                executor.invoke(model);
+                fetchStart=this.addScan(scanMetrics,fetchStart,convertStart,executeStart);
+            }
+            this.recordScan("extCursorQueryExe",entityClass,startTime,scanMetrics,false);
+        } catch (Exception e) {
+            this.recordScan("extCursorQueryExe",entityClass,startTime,scanMetrics,true);
+            throw e;
+        }
+    }
+
+    /**
+     * 执行游标查询
+     * @param query 查询器
+     * @param entityClass 查询实体
+     * @param batchSize 批次大小
+     * @param executor 执行器
+     * @return void 
+     */
+    public <T extends MongoBean> void extCursorQueryExe(Query query, Class<T> entityClass, Integer batchSize, Executor<T> executor) throws Exception{
+        this.extCursorQueryExe(query,entityClass,batchSize,null,null,executor);
+    }
+
+    /**
+     * 执行游标查询
+     * @param query 查询器
+     * @param entityClass 查询实体
+     * @param executor 执行器
+     * @return void
+     */
+    public <T extends MongoBean> void extCursorQueryExe(Query query, Class<T> entityClass, Executor<T> executor) throws Exception{
+        this.extCursorQueryExe(query,entityClass,null,null,null,executor);
+    }
+
+    /**
+     * 执行游标查询（按结果类型投影，只传输和转换结果类型需要的字段）
+     * <br>查询器指定了返回字段时以查询器为准；否则按结果类型的属性计算返回字段
+     * <br>结果类型为接口时返回接口代理（只填充投影字段的实体），为类时直接转换为该类
+     * @param query 查询器
+     * @param entityClass 查询实体
+     * @param resultType 结果类型（DTO类或接口）
+     * @param batchSize 批次大小
+     * @param executor 执行器
+     * @return void 
+     */
+    public <T extends MongoBean, R> void extCursorQueryExe(Query query, Class<T> entityClass, Class<R> resultType, Integer batchSize, Executor<R> executor) throws Exception{
+        if(query==null || entityClass==null || resultType==null || executor==null){
+            return ;
+        }
+        long startTime=this.startTimer();
+        ScanMetrics scanMetrics=new ScanMetrics(metricsEnabled);
+        ProjectionReader<R> reader=ProjectionReader.create(mongoConverter,projectionFactory,entityClass,resultType,query.getFieldsObject());
+        try (MongoCursor<Document> cursor = this.extGetMongoCursor(query,entityClass,Document.class,reader.getFields(),batchSize,null,null)) {
+            long fetchStart=scanMetrics.now();
+            while (cursor.hasNext()) {
+                Document document=cursor.next();
+                long convertStart=scanMetrics.now();
+                R model=reader.read(document);
+                long executeStart=scanMetrics.now();
+                executor.invoke(model);
+                fetchStart=this.addScan(scanMetrics,fetchStart,convertStart,executeStart);
+            }
+            this.recordScan("extCursorQueryExe",entityClass,startTime,scanMetrics,false);
+        } catch (Exception e) {
+            this.recordScan("extCursorQueryExe",entityClass,startTime,scanMetrics,true);
+            throw e;
+        }
+    }
+
+    /**
+     * 执行原始BSON游标查询（不转换为Document和实体，执行器直接读取原始字节）
+     * <br>RawBsonDocument按需解析字段（字段值为BsonValue），适用于只读取少量字段的大批量扫描
+     * @param query 查询器
+     * @param entityClass 查询实体（用于确定集合）
+     * @param batchSize 批次大小
+     * @param pageNum 当前页
+     * @param pageSize 每页大小
+     * @param executor 执行器
+     * @return void 
+     */
+    public <T extends MongoBean> void extRawCursorQueryExe(Query query, Class<T> entityClass, Integer batchSize, Integer pageNum, Integer pageSize, Executor<RawBsonDocument> executor) throws Exception{
+        if(executor==null){
+            return ;
+        }
+        long startTime=this.startTimer();
+        ScanMetrics scanMetrics=new ScanMetrics(metricsEnabled);
+        try (MongoCursor<RawBsonDocument> cursor = this.extGetMongoCursor(query,entityClass,RawBsonDocument.class,query==null?null:query.getFieldsObject(),batchSize,pageNum,pageSize)) {
+            if(cursor==null){
+                return ;
+            }
+            long fetchStart=scanMetrics.now();
+            while (cursor.hasNext()) {
+                RawBsonDocument document=cursor.next();
+                long executeStart=scanMetrics.now();
+                executor.invoke(document);
+                if(metricsEnabled){
+                    scanMetrics.addBytes(document.getByteBuffer().remaining());
+                }
+                fetchStart=this.addScan(scanMetrics,fetchStart,executeStart,executeStart);
+            }
+            this.recordScan("extRawCursorQueryExe",entityClass,startTime,scanMetrics,false);
+        } catch (Exception e) {
+            this.recordScan("extRawCursorQueryExe",entityClass,startTime,scanMetrics,true);
+            throw e;
+        }
+    }
+
+    /**
+     * 执行原始BSON游标查询
+     * @param query 查询器
+     * @param entityClass 查询实体（用于确定集合）
+     * @param batchSize 批次大小
+     * @param executor 执行器
+     * @return void 
+     */
+    public <T extends MongoBean> void extRawCursorQueryExe(Query query, Class<T> entityClass, Integer batchSize, Executor<RawBsonDocument> executor) throws Exception{
+        this.extRawCursorQueryExe(query,entityClass,batchSize,null,null,executor);
+    }
+
+    /**
+     * 键集分页查询（按上一页最后一条记录的排序键定位，每页开销与页数无关）
+     * <br>排序取查询器的排序，排序中不含_id时自动追加_id；排序字段需有对应索引且类型一致
+     * @param query 查询器（分页和跳过参数无效）
+     * @param entityClass 查询实体
+     * @param pageSize 每页大小
+     * @param continuationToken 分页标记（查询第一页时为空，之后传入上一页返回的nextToken）
+     * @return com.pdd.db.mongo.holder.KeysetPage<T> 
+     */
+    public <T extends MongoBean> KeysetPage<T> extFindByKeyset(Query query, Class<T> entityClass, int pageSize, String continuationToken) throws Exception{
+        if(query==null || entityClass==null){
+            return null;
+        }
+        this.checkNotPartitioned(entityClass,"键集分页");
+        if(pageSize<=0){
+            throw new Exception("每页大小需大于0");
+        }
+        long startTime=this.startTimer();
+        try {
+            KeysetPage<T> page=this.extFindByKeyset(query,entityClass,pageSize,continuationToken,KeysetUtils.getKeysetSort(query.getSortObject()));
+            this.record("extFindByKeyset",entityClass,startTime,page.getContent().size(),false);
+            return page;
+        } catch (Exception e) {
+            this.record("extFindByKeyset",entityClass,startTime,0,true);
+            throw e;
+        }
+    }
+
+    /**
+     * 键集分页查询
+     * @param query 查询器
+     * @param entityClass 查询实体
+     * @param pageSize 每页大小
+     * @param continuationToken 分页标记
+     * @param keysetSort 键集排序（已追加_id）
+     * @return com.pdd.db.mongo.holder.KeysetPage<T> 
+     */
+    private <T extends MongoBean> KeysetPage<T> extFindByKeyset(Query query, Class<T> entityClass, int pageSize, String continuationToken, Document keysetSort) throws Exception{
+        Document filter=this.getLiveFilter(query.getQueryObject(),entityClass);
+        if(StringUtils.isNotBlank(continuationToken)){
+            filter=KeysetUtils.and(filter,KeysetUtils.getSeekFilter(keysetSort,KeysetUtils.decodeToken(continuationToken,keysetSort)));
+        }
+        MongoCollection<Document> collection=this.getTemplate(MongoWorkload.OLTP).getCollection(this.getCollectionName(entityClass));
+        //多取一条，用于判断是否有下一页
+        FindIterable<Document> findIterable=collection.find(filter).sort(keysetSort).limit(pageSize+1);
+        if(!query.getFieldsObject().isEmpty()){
+            findIterable.projection(KeysetUtils.getKeysetFields(query.getFieldsObject(),keysetSort));
+        }
+        List<Document> documents=findIterable.into(new ArrayList<>(pageSize+1));
+        KeysetPage<T> page=new KeysetPage<>();
+        page.setHasMore(documents.size()>pageSize);
+        if(page.isHasMore()){
+            documents=documents.subList(0,pageSize);
+        }
+        for(Document document:documents){
+            page.getContent().add(mongoConverter.read(entityClass,document));
+        }
+        if(page.isHasMore()){
+            page.setNextToken(KeysetUtils.encodeToken(keysetSort,KeysetUtils.getKey(keysetSort,documents.get(documents.size()-1))));
+        }
+        return page;
+    }
+
+    /**
+     * 可恢复游标查询（按排序键分段扫描，定期保存检查点，中断后再次执行从检查点继续）
+     * <br>每段使用一个短生命周期游标（不设置游标不超时），段内读取完毕即关闭；排序取查询器的排序并自动追加_id
+     * <br>执行器异常时保存最后一条成功记录的检查点后抛出；检查点之后、异常之前已处理的记录在恢复时会再次处理（至少一次）
+     * <br>扫描完毕后检查点标记为已完成，再次执行直接返回；需重新扫描时先删除检查点
+     * @param scanId 扫描任务标识（同一标识对应同一查询）
+     * @param query 查询器（分页和跳过参数无效；排序变化时无法恢复）
+     * @param entityClass 查询实体
+     * @param segmentSize 每段记录数（为空或小于等于0时取配置）
+     * @param checkpointInterval 检查点间隔（为空或小于等于0时取配置）
+     * @param executor 执行器
+     * @return com.pdd.db.mongo.holder.ScanCheckpoint 最后保存的检查点
+     */
+    public <T extends MongoBean> ScanCheckpoint extResumableCursorQueryExe(String scanId, Query query, Class<T> entityClass, Integer segmentSize, Integer checkpointInterval, Executor<T> executor) throws Exception{
+        if(StringUtils.isBlank(scanId)){
+            throw new Exception("扫描任务标识不可为空");
+        }
+        if(query==null || entityClass==null || executor==null){
+            return null;
+        }
+        this.checkNotPartitioned(entityClass,"可恢复扫描");
+        if(segmentSize==null || segmentSize<=0){
+            segmentSize=mongoHolderProperties.getResumableScanSegmentSize();
+        }
+        if(checkpointInterval==null || checkpointInterval<=0){
+            checkpointInterval=mongoHolderProperties.getResumableScanCheckpointInterval();
+        }
+        ScanCheckpoint checkpoint=scanCheckpointStore.load(scanId);
+        if(checkpoint==null){
+            checkpoint=new ScanCheckpoint();
+            checkpoint.setScanId(scanId);
+        }else if(checkpoint.isFinished()){
+            return checkpoint;
+        }
+        Document keysetSort=KeysetUtils.getKeysetSort(query.getSortObject());
+        Document lastKey=StringUtils.isBlank(checkpoint.getToken())?null:KeysetUtils.decodeToken(checkpoint.getToken(),keysetSort);
+        Document fields=query.getFieldsObject().isEmpty()?null:KeysetUtils.getKeysetFields(query.getFieldsObject(),keysetSort);
+        MongoCollection<Document> collection=this.getTemplate(MongoWorkload.ANALYTICS).getCollection(this.getCollectionName(entityClass));
+
+        Document queryObject=this.getLiveFilter(query.getQueryObject(),entityClass);
+        long startTime=this.startTimer();
+        ScanMetrics scanMetrics=new ScanMetrics(metricsEnabled);
+        //上次保存检查点后处理的记录数
+        int uncheckpointed=0;
+        try {
+            int segmentCount;
+            do {
+                Document filter=lastKey==null?queryObject:KeysetUtils.and(queryObject,KeysetUtils.getSeekFilter(keysetSort,lastKey));
+                FindIterable<Document> findIterable=collection.find(filter).sort(keysetSort).limit(segmentSize).batchSize(Math.min(segmentSize,DEFAULT_CURSOR_BATCH_SIZE));
+                if(fields!=null){
+                    findIterable.projection(fields);
+                }
+                segmentCount=0;
+                try (MongoCursor<Document> cursor = findIterable.cursor()) {
+                    long fetchStart=scanMetrics.now();
+                    while (cursor.hasNext()) {
+                        Document document=cursor.next();
+                        long convertStart=scanMetrics.now();
+                        T model=mongoConverter.read(entityClass,document);
+                        long executeStart=scanMetrics.now();
+                        executor.invoke(model);
+                        fetchStart=this.addScan(scanMetrics,fetchStart,convertStart,executeStart);
+                        lastKey=KeysetUtils.getKey(keysetSort,document);
+                        segmentCount++;
+                        if(++uncheckpointed>=checkpointInterval){
+                            this.saveCheckpoint(checkpoint,keysetSort,lastKey,uncheckpointed,false);
+                            uncheckpointed=0;
+                        }
+                    }
+                }
+            } while (segmentCount>=segmentSize);
+            this.saveCheckpoint(checkpoint,keysetSort,lastKey,uncheckpointed,true);
+            this.recordScan("extResumableCursorQueryExe",entityClass,startTime,scanMetrics,false);
+            return checkpoint;
+        } catch (Exception e) {
+            this.recordScan("extResumableCursorQueryExe",entityClass,startTime,scanMetrics,true);
+            if(uncheckpointed>0){
+                try {
+                    this.saveCheckpoint(checkpoint,keysetSort,lastKey,uncheckpointed,false);
+                } catch (RuntimeException saveException) {
+                    e.addSuppressed(saveException);
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 可恢复游标查询（段大小和检查点间隔取配置）
+     * @param scanId 扫描任务标识
+     * @param query 查询器
+     * @param entityClass 查询实体
+     * @param executor 执行器
+     * @return com.pdd.db.mongo.holder.ScanCheckpoint 
+     */
+    public <T extends MongoBean> ScanCheckpoint extResumableCursorQueryExe(String scanId, Query query, Class<T> entityClass, Executor<T> executor) throws Exception{
+        return this.extResumableCursorQueryExe(scanId,query,entityClass,null,null,executor);
+    }
+
+    /**
+     * 删除可恢复扫描的检查点（再次执行将从头开始）
+     * @param scanId 扫描任务标识
+     * @return void 
+     */
+    public void extRemoveScanCheckpoint(String scanId){
+        scanCheckpointStore.remove(scanId);
+    }
+
+    /**
+     * 增量扫描（按更新时间和主键的水位，只读取水位之后更新的记录）
+     * <br>按{updateDate:1,_id:1}排序分段扫描（需要该索引），定期保存水位，下次执行从水位继续；已删除（delFlag为true）的记录同样返回，用于同步删除
+     * <br>扫描开始时的最大更新时间之后可能还有相同更新时间的写入，水位不越过该时间，这部分记录在下次执行时会再次返回（至少一次）；
+     * 更新时间由写入方维护，需随每次写入递增
+     * <br>与可恢复扫描共用检查点存储，消费方标识不可与扫描任务标识重复；需重新全量同步时调用extRemoveScanCheckpoint删除水位
+     * @param consumerId 消费方标识（同一标识对应同一查询）
+     * @param query 查询器（排序、分页和跳过参数无效）
+     * @param entityClass 查询实体
+     * @param segmentSize 每段记录数（为空或小于等于0时取配置）
+     * @param checkpointInterval 检查点间隔（为空或小于等于0时取配置）
+     * @param executor 执行器
+     * @return com.pdd.db.mongo.holder.ScanCheckpoint 最后保存的水位
+     */
+    public <T extends MongoBean> ScanCheckpoint extDeltaCursorQueryExe(String consumerId, Query query, Class<T> entityClass, Integer segmentSize, Integer checkpointInterval, Executor<T> executor) throws Exception{
+        if(StringUtils.isBlank(consumerId)){
+            throw new Exception("消费方标识不可为空");
+        }
+        if(query==null || entityClass==null || executor==null){
+            return null;
+        }
+        this.checkNotPartitioned(entityClass,"增量扫描");
+        if(segmentSize==null || segmentSize<=0){
+            segmentSize=mongoHolderProperties.getResumableScanSegmentSize();
+        }
+        if(checkpointInterval==null || checkpointInterval<=0){
+            checkpointInterval=mongoHolderProperties.getResumableScanCheckpointInterval();
+        }
+        ScanCheckpoint checkpoint=scanCheckpointStore.load(consumerId);
+        if(checkpoint==null){
+            checkpoint=new ScanCheckpoint();
+            checkpoint.setScanId(consumerId);
+        }
+        Document keysetSort=KeysetUtils.getKeysetSort(new Document(UPDATE_DATE_FIELD,1));
+        Document lastKey=StringUtils.isBlank(checkpoint.getToken())?null:KeysetUtils.decodeToken(checkpoint.getToken(),keysetSort);
+        Document fields=query.getFieldsObject().isEmpty()?null:KeysetUtils.getKeysetFields(query.getFieldsObject(),keysetSort);
+        MongoCollection<Document> collection=this.getTemplate(MongoWorkload.ANALYTICS).getCollection(this.getCollectionName(entityClass));
+        //扫描开始时的最大更新时间，水位不越过该时间
+        Document latest=collection.find().sort(new Document(UPDATE_DATE_FIELD,-1)).projection(new Document(UPDATE_DATE_FIELD,1)).limit(1).first();
+        Object openFrom=latest==null?null:latest.get(UPDATE_DATE_FIELD);
+
+        long startTime=this.startTimer();
+        ScanMetrics scanMetrics=new ScanMetrics(metricsEnabled);
+        //最后一条更新时间早于openFrom的记录位置
+        Document watermark=null;
+        int uncheckpointed=0;
+        try {
+            int segmentCount;
+            do {
+                Document filter=lastKey==null?query.getQueryObject():KeysetUtils.and(query.getQueryObject(),KeysetUtils.getSeekFilter(keysetSort,lastKey));
+                FindIterable<Document> findIterable=collection.find(filter).sort(keysetSort).limit(segmentSize).batchSize(Math.min(segmentSize,DEFAULT_CURSOR_BATCH_SIZE));
+                if(fields!=null){
+                    findIterable.projection(fields);
+                }
+                segmentCount=0;
+                try (MongoCursor<Document> cursor = findIterable.cursor()) {
+                    long fetchStart=scanMetrics.now();
+                    while (cursor.hasNext()) {
+                        Document document=cursor.next();
+                        long convertStart=scanMetrics.now();
+                        T model=mongoConverter.read(entityClass,document);
+                        long executeStart=scanMetrics.now();
+                        executor.invoke(model);
+                        fetchStart=this.addScan(scanMetrics,fetchStart,convertStart,executeStart);
+                        lastKey=KeysetUtils.getKey(keysetSort,document);
+                        segmentCount++;
+                        uncheckpointed++;
+                        if(this.isBefore(lastKey.get(UPDATE_DATE_FIELD),openFrom)){
+                            watermark=lastKey;
+                            if(uncheckpointed>=checkpointInterval){
+                                this.saveCheckpoint(checkpoint,keysetSort,watermark,uncheckpointed,false);
+                                uncheckpointed=0;
+                            }
+                        }
+                    }
+                }
+            } while (segmentCount>=segmentSize);
+            this.saveCheckpoint(checkpoint,keysetSort,watermark,uncheckpointed,false);
+            this.recordScan("extDeltaCursorQueryExe",entityClass,startTime,scanMetrics,false);
+            return checkpoint;
+        } catch (Exception e) {
+            this.recordScan("extDeltaCursorQueryExe",entityClass,startTime,scanMetrics,true);
+            if(uncheckpointed>0){
+                try {
+                    this.saveCheckpoint(checkpoint,keysetSort,watermark,uncheckpointed,false);
+                } catch (RuntimeException saveException) {
+                    e.addSuppressed(saveException);
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 增量扫描（每段记录数和检查点间隔取配置）
+     * @param consumerId 消费方标识
+     * @param query 查询器
+     * @param entityClass 查询实体
+     * @param executor 执行器
+     * @return com.pdd.db.mongo.holder.ScanCheckpoint 最后保存的水位
+     */
+    public <T extends MongoBean> ScanCheckpoint extDeltaCursorQueryExe(String consumerId, Query query, Class<T> entityClass, Executor<T> executor) throws Exception{
+        return this.extDeltaCursorQueryExe(consumerId,query,entityClass,null,null,executor);
+    }
+
+    /**
+     * 增量扫描后监听变更流（部署为副本集或分片集群时）
+     * <br>先打开变更流再执行增量扫描，扫描期间的写入由变更流补齐；之后持续读取变更流直到监听时长结束
+     * <br>只处理插入、更新和替换（按查询条件匹配变更后的完整记录），物理删除不处理；变更流读取的记录不推进水位，下次增量扫描会再次返回（至少一次）
+     * <br>部署不支持变更流（单机）时只执行增量扫描
+     * @param consumerId 消费方标识
+     * @param query 查询器（只支持字段条件及其$and、$or、$nor组合）
+     * @param entityClass 查询实体
+     * @param watchMillis 监听时长（毫秒）
+     * @param executor 执行器
+     * @return long 本次处理的记录数
+     */
+    public <T extends MongoBean> long extDeltaWatch(String consumerId, Query query, Class<T> entityClass, long watchMillis, Executor<T> executor) throws Exception{
+        if(query==null || entityClass==null || executor==null){
+            return 0;
+        }
+        this.checkNotPartitioned(entityClass,"增量扫描");
+        long[] count=new long[1];
+        Executor<T> countingExecutor=model -> {
+            executor.invoke(model);
+            count[0]++;
+        };
+        MongoTemplate template=this.getTemplate(MongoWorkload.ANALYTICS);
+        if(!this.isChangeStreamSupported(template)){
+            this.extDeltaCursorQueryExe(consumerId,query,entityClass,countingExecutor);
+            return count[0];
+        }
+        Document match=this.getChangeStreamFilter(query.getQueryObject())
+                .append("operationType",new Document("$in",Arrays.asList("insert","update","replace")));
+        ChangeStreamIterable<Document> changeStream=template.getCollection(this.getCollectionName(entityClass)).watch(Collections.singletonList(new Document("$match",match)))
+                .fullDocument(FullDocument.UPDATE_LOOKUP).maxAwaitTime(CHANGE_STREAM_AWAIT_MILLIS,TimeUnit.MILLISECONDS);
+        long startTime=this.startTimer();
+        long scanned=0;
+        try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = changeStream.cursor()) {
+            this.extDeltaCursorQueryExe(consumerId,query,entityClass,countingExecutor);
+            scanned=count[0];
+            long deadline=System.currentTimeMillis()+watchMillis;
+            while (System.currentTimeMillis()<deadline && !Thread.currentThread().isInterrupted()) {
+                ChangeStreamDocument<Document> event=cursor.tryNext();
+                if(event!=null && event.getFullDocument()!=null){
+                    countingExecutor.invoke(mongoConverter.read(entityClass,event.getFullDocument()));
+                }
+            }
+            this.record("extDeltaWatch",entityClass,startTime,count[0]-scanned,false);
+            return count[0];
+        } catch (Exception e) {
+            this.record("extDeltaWatch",entityClass,startTime,count[0]-scanned,true);
+            throw e;
+        }
+    }
+
+    /**
+     * 保存检查点
+     * @param checkpoint 检查点
+     * @param keysetSort 键集排序
+     * @param lastKey 最后一条已处理记录的位置（可为空）
+     * @param processed 本次新增的已处理记录数
+     * @param finished 是否已扫描完毕
+     * @return void 
+     */
+    private void saveCheckpoint(ScanCheckpoint checkpoint, Document keysetSort, Document lastKey, int processed, boolean finished){
+        String previousToken=checkpoint.getToken();
+        long previousCount=checkpoint.getProcessedCount();
+        if(lastKey!=null){
+            checkpoint.setToken(KeysetUtils.encodeToken(keysetSort,lastKey));
+        }
+        checkpoint.setProcessedCount(previousCount+processed);
+        checkpoint.setFinished(finished);
+        checkpoint.setUpdateTime(System.currentTimeMillis());
+        try {
+            scanCheckpointStore.save(checkpoint);
+        } catch (RuntimeException e) {
+            //保存失败时保持原检查点，避免重复累加
+            checkpoint.setToken(previousToken);
+            checkpoint.setProcessedCount(previousCount);
+            checkpoint.setFinished(false);
+            throw e;
+        }
+    }
+
+    /**
+     * 执行批量游标查询（按游标批次大小分批回调执行器）
+     * <br>执行器处理当前批次时，下一批次已在后台线程拉取并转换，缓冲批次数取配置
+     * @param query 查询器
+     * @param entityClass 查询实体
+     * @param batchSize 批次大小（同时为每次回调的数量）
+     * @param pageNum 当前页
+     * @param pageSize 每页大小
+     * @param executor 批量执行器
+     * @return void 
+     */
+    public <T extends MongoBean> void extCursorBatchQueryExe(Query query, Class<T> entityClass, Integer batchSize, Integer pageNum, Integer pageSize, BatchExecutor<T> executor) throws Exception{
+        if(executor==null){
+            return ;
+        }
+        if(batchSize==null || batchSize<=0){
+            batchSize=DEFAULT_CURSOR_BATCH_SIZE;
+        }
+        MongoCursor<Document> cursor=this.extGetMongoCursor(query,entityClass,batchSize,pageNum,pageSize);
+        if(cursor==null){
+            return ;
+        }
+        long startTime=this.startTimer();
+        ScanMetrics scanMetrics=new ScanMetrics(metricsEnabled);
+        try (CursorPrefetcher<T> prefetcher = new CursorPrefetcher<>(cursor,document -> mongoConverter.read(entityClass,document),batchSize,mongoHolderProperties.getCursorPrefetchChunks(),scanMetrics,cursorPrefetchPool)) {
+            List<T> models;
+            while ((models = prefetcher.next()) != null) {
+                this.track(models);
+                long executeStart=scanMetrics.now();
+                executor.invoke(models);
+                scanMetrics.addExecute(scanMetrics.now()-executeStart,models.size());
+            }
+            this.recordScan("extCursorBatchQueryExe",entityClass,startTime,scanMetrics,false);
+        } catch (Exception e) {
+            this.recordScan("extCursorBatchQueryExe",entityClass,startTime,scanMetrics,true);
+            throw e;
+        }
+    }
+
+    /**
+     * 执行批量游标查询
+     * @param query 查询器
+     * @param entityClass 查询实体
+     * @param batchSize 批次大小
+     * @param executor 批量执行器
+     * @return void 
+     */
+    public <T extends MongoBean> void extCursorBatchQueryExe(Query query, Class<T> entityClass, Integer batchSize, BatchExecutor<T> executor) throws Exception{
+        this.extCursorBatchQueryExe(query,entityClass,batchSize,null,null,executor);
+    }
+
+    /**
+     * 游标迭代查询（按需从游标拉取并转换，每次从服务端拉取一个批次）
+     * <br>读取完毕或异常时自动关闭游标；提前结束时需调用close，建议在try-with-resources中使用
+     * @param query 查询器
+     * @param entityClass 查询实体
+     * @param batchSize 批次大小
+     * @return org.springframework.data.util.CloseableIterator<T> 
+     */
+    public <T extends MongoBean> CloseableIterator<T> extIterator(Query query, Class<T> entityClass, Integer batchSize){
+        long startTime=this.startTimer();
+        ScanMetrics scanMetrics=new ScanMetrics(metricsEnabled);
+        MongoCursor<Document> cursor=this.extGetMongoCursor(query,entityClass,batchSize,null,null);
+        return new CursorIterator<>(cursor,document -> mongoConverter.read(entityClass,document),scanMetrics,
+                metricsEnabled?failed -> this.recordScan("extIterator",entityClass,startTime,scanMetrics,failed):null);
+    }
+
+    /**
+     * 游标流式查询（惰性求值，终止操作时才从游标拉取）
+     * <br>流关闭时关闭游标，需在try-with-resources中使用；limit、findFirst等短路操作后同样需要关闭
+     * @param query 查询器
+     * @param entityClass 查询实体
+     * @param batchSize 批次大小
+     * @return java.util.stream.Stream<T> 
+     */
+    public <T extends MongoBean> Stream<T> extStream(Query query, Class<T> entityClass, Integer batchSize){
+        return StreamUtils.createStreamFromIterator(this.extIterator(query,entityClass,batchSize));
+    }
+
+    /**
+     * 缓冲游标迭代查询（后台线程按批预取并转换，放入有界缓冲区）
+     * <br>消费慢于拉取时后台线程等待，最多缓冲（缓冲批次数+2）个批次，适用于消费方处理较慢的大批量读取
+     * @param query 查询器
+     * @param entityClass 查询实体
+     * @param batchSize 批次大小
+     * @param bufferChunks 缓冲批次数（为空或小于等于0时取配置）
+     * @return org.springframework.data.util.CloseableIterator<T> 
+     */
+    public <T extends MongoBean> CloseableIterator<T> extBufferedIterator(Query query, Class<T> entityClass, Integer batchSize, Integer bufferChunks){
+        if(batchSize==null || batchSize<=0){
+            batchSize=DEFAULT_CURSOR_BATCH_SIZE;
+        }
+        if(bufferChunks==null || bufferChunks<=0){
+            bufferChunks=mongoHolderProperties.getCursorPrefetchChunks();
+        }
+        long startTime=this.startTimer();
+        ScanMetrics scanMetrics=new ScanMetrics(metricsEnabled);
+        MongoCursor<Document> cursor=this.extGetMongoCursor(query,entityClass,batchSize,null,null);
+        CursorPrefetcher<T> prefetcher=cursor==null?null:new CursorPrefetcher<>(cursor,document -> mongoConverter.read(entityClass,document),batchSize,bufferChunks,scanMetrics,cursorPrefetchPool);
+        return new BufferedCursorIterator<>(prefetcher,scanMetrics,
+                metricsEnabled?failed -> this.recordScan("extBufferedIterator",entityClass,startTime,scanMetrics,failed):null);
+    }
+
+    /**
+     * 缓冲游标流式查询（需在try-with-resources中使用）
+     * @param query 查询器
+     * @param entityClass 查询实体
+     * @param batchSize 批次大小
+     * @param bufferChunks 缓冲批次数（为空或小于等于0时取配置）
+     * @return java.util.stream.Stream<T> 
+     */
+    public <T extends MongoBean> Stream<T> extBufferedStream(Query query, Class<T> entityClass, Integer batchSize, Integer bufferChunks){
+        return StreamUtils.createStreamFromIterator(this.extBufferedIterator(query,entityClass,batchSize,bufferChunks));
+    }
+
+    /**
+     * 并行执行游标查询（按分区字段将查询切分为多个范围，每个范围在线程池中使用独立游标执行）
+     * <br>执行器会被多个线程并发调用，需保证线程安全；单个分区失败不影响其他分区，失败分区记录在结果中
+     * @param query 查询器（排序对并行扫描无效）
+     * @param entityClass 查询实体
+     * @param splitField 分区字段（需有索引且类型一致；为空时按_id分区）
+     * @param partitions 分区数（为空或小于等于0时取配置）
+     * @param batchSize 批次大小
+     * @param workerPool 执行线程池（为空时按配置创建临时线程池，执行完毕后关闭）
+     * @param executor 执行器
+     * @return com.pdd.db.mongo.holder.ParallelScanResult 
+     */
+    public <T extends MongoBean> ParallelScanResult extParallelCursorQueryExe(Query query, Class<T> entityClass, String splitField, Integer partitions, Integer batchSize, ExecutorService workerPool, Executor<T> executor) throws Exception{
+        ParallelScanResult result=new ParallelScanResult();
+        if(query==null || entityClass==null || executor==null){
+            return result;
+        }
+        this.checkNotPartitioned(entityClass,"并行扫描");
+        long startTime=System.currentTimeMillis();
+        long scanStartTime=this.startTimer();
+        if(StringUtils.isBlank(splitField)){
+            splitField="_id";
+        }
+        int threads=mongoHolderProperties.getParallelScanThreads();
+        if(partitions==null || partitions<=0){
+            partitions=mongoHolderProperties.getParallelScanPartitions();
+            if(partitions<=0){
+                partitions=threads*4;
+            }
+        }
+        MongoCollection<Document> collection=this.getTemplate(MongoWorkload.ANALYTICS).getCollection(this.getCollectionName(entityClass));
+        Document queryObject=this.getLiveFilter(query.getQueryObject(),entityClass);
+        //计算分区边界（n个边界切分为n+1个分区）
+        List<Object> bounds=this.samplePartitionBounds(collection,queryObject,splitField,partitions);
+        int partitionCount=bounds.size()+1;
+        result.setPartitionCount(partitionCount);
+
+        boolean tempPool=false;
+        if(workerPool==null){
+            workerPool=Executors.newFixedThreadPool(Math.min(threads,partitionCount),new CustomizableThreadFactory("mongo-scan-"));
+            tempPool=true;
+        }
+        List<Future<Object>> futures=new ArrayList<>(partitionCount);
+        AtomicLong[] counters=new AtomicLong[partitionCount];
+        ScanMetrics scanMetrics=new ScanMetrics(metricsEnabled);
+        try {
+            for(int i=0;i<partitionCount;i++){
+                Object lowerBound=i==0?null:bounds.get(i-1);
+                Object upperBound=i==partitionCount-1?null:bounds.get(i);
+                FindIterable<Document> findIterable=this.extGetFindIterable(collection,this.getPartitionFilter(queryObject,splitField,lowerBound,upperBound),query.getFieldsObject(),null,batchSize);
+                AtomicLong counter=counters[i]=new AtomicLong();
+                futures.add(workerPool.submit(() -> {
+                    try (MongoCursor<Document> cursor = findIterable.cursor()) {
+                        long fetchStart=scanMetrics.now();
+                        while (cursor.hasNext()) {
+                            Document document=cursor.next();
+                            long convertStart=scanMetrics.now();
+                            T model=mongoConverter.read(entityClass, document);
+                            long executeStart=scanMetrics.now();
+                            executor.invoke(model);
+                            counter.incrementAndGet();
+                            fetchStart=this.addScan(scanMetrics,fetchStart,convertStart,executeStart);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            //汇总各分区执行结果
+            for(int i=0;i<partitionCount;i++){
+                try {
+                    futures.get(i).get();
+                    result.setSuccessCount(result.getSuccessCount()+1);
+                } catch (ExecutionException e) {
+                    ParallelScanResult.PartitionFailure failure=new ParallelScanResult.PartitionFailure();
+                    failure.setPartitionIndex(i);
+                    failure.setLowerBound(i==0?null:bounds.get(i-1));
+                    failure.setUpperBound(i==partitionCount-1?null:bounds.get(i));
+                    failure.setProcessedCount(counters[i].get());
+                    failure.setException(e.getCause() instanceof Exception?(Exception)e.getCause():e);
+                    result.getFailures().add(failure);
+                }
+            }
+        } catch (InterruptedException e) {
+            for(Future<Object> future:futures){
+                future.cancel(true);
+            }
+            throw e;
+        } finally {
+            if(tempPool){
+                workerPool.shutdownNow();
+            }
+        }
+        long processedCount=0;
+        for(AtomicLong counter:counters){
+            processedCount+=counter.get();
+        }
+        result.setProcessedCount(processedCount);
+        result.setElapsedMillis(System.currentTimeMillis()-startTime);
+        this.recordScan("extParallelCursorQueryExe",entityClass,scanStartTime,scanMetrics,!result.isSuccess());
+        return result;
+    }
+
+    /**
+     * 并行执行游标查询（按_id分区，使用配置的线程数）
+     * @param query 查询器
+     * @param entityClass 查询实体
+     * @param batchSize 批次大小
+     * @param executor 执行器（需保证线程安全）
+     * @return com.pdd.db.mongo.holder.ParallelScanResult 
+     */
+    public <T extends MongoBean> ParallelScanResult extParallelCursorQueryExe(Query query, Class<T> entityClass, Integer batchSize, Executor<T> executor) throws Exception{
+        return this.extParallelCursorQueryExe(query,entityClass,null,null,batchSize,null,executor);
+    }
+
+    /**
+     * 采样计算分区边界（服务端随机采样后排序，按分位数取边界）
+     * <br>有查询条件时只在满足条件的记录中采样，边界按查询结果的分布切分（此时$sample不能使用随机游标，需扫描满足条件的记录）
+     * <br>只保留与首个采样值类型一致的边界，保证各分区范围连续
+     * @param collection 集合
+     * @param queryObject 查询条件（可为空）
+     * @param splitField 分区字段
+     * @param partitions 分区数
+     * @return java.util.List<java.lang.Object> 升序且不重复的边界
+     */
+    private List<Object> samplePartitionBounds(MongoCollection<Document> collection, Document queryObject, String splitField, int partitions){
+        List<Object> bounds=new ArrayList<>();
+        if(partitions<=1){
+            return bounds;
+        }
+        int sampleSize=partitions*mongoHolderProperties.getParallelScanSamplesPerPartition();
+        List<Document> pipeline=new ArrayList<>(4);
+        if(queryObject!=null && !queryObject.isEmpty()){
+            pipeline.add(new Document("$match",queryObject));
+        }
+        pipeline.add(new Document("$sample",new Document("size",sampleSize)));
+        pipeline.add(new Document("$project",new Document(splitField,1)));
+        pipeline.add(new Document("$sort",new Document(splitField,1)));
+        List<Object> samples=new ArrayList<>(sampleSize);
+        for(Document document:collection.aggregate(pipeline).allowDiskUse(true)){
+            Object value=DocumentUtils.getFieldValue(document,splitField);
+            if(value==null){
+                continue;
+            }
+            if(samples.isEmpty() || DocumentUtils.isSameBsonType(samples.get(0),value)){
+                samples.add(value);
+            }
+        }
+        Object lastBound=null;
+        for(int i=1;i<partitions && !samples.isEmpty();i++){
+            Object bound=samples.get(i*samples.size()/partitions);
+            if(!bound.equals(lastBound)){
+                bounds.add(bound);
+                lastBound=bound;
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * 生成分区查询条件
+     * <br>首个分区取[下一分区下边界]的补集，分区字段为空或类型不一致的记录归入首个分区，不会遗漏
+     * @param queryObject 原始查询条件
+     * @param splitField 分区字段
+     * @param lowerBound 下边界（包含，可为空）
+     * @param upperBound 上边界（不包含，可为空）
+     * @return org.bson.Document 
+     */
+    private Document getPartitionFilter(Document queryObject, String splitField, Object lowerBound, Object upperBound){
+        Document range;
+        if(lowerBound==null && upperBound==null){
+            return queryObject;
+        }else if(lowerBound==null){
+            range=new Document(splitField,new Document("$not",new Document("$gte",upperBound)));
+        }else if(upperBound==null){
+            range=new Document(splitField,new Document("$gte",lowerBound));
+        }else{
+            range=new Document(splitField,new Document("$gte",lowerBound).append("$lt",upperBound));
+        }
+        if(queryObject==null || queryObject.isEmpty()){
+            return range;
+        }
+        return new Document("$and",Arrays.asList(queryObject,range));
+    }
+
+    /**
+     * 删除早于分区字段值所在分区的全部分区（删除整个分区集合，代替按范围删除）
+     * @param entityClass 分区实体类
+     * @param value 分区字段值（该值所在的分区及之后的分区保留）
+     * @return java.util.List<java.lang.String> 删除的分区集合名
+     */
+    public <T extends MongoBean> List<String> extDropPartitionsBefore(Class<T> entityClass, Object value) throws Exception{
+        if(entityClass==null || value==null){
+            throw new Exception("实体类和分区字段值不可为空");
+        }
+        PartitionRouter router=this.getPartitionRouter(entityClass);
+        if(router==null){
+            throw new Exception("实体类["+entityClass.getName()+"]未配置分区");
+        }
+        MongoTemplate template=this.getTemplate(MongoWorkload.BULK_WRITE);
+        //删除前总是刷新，包含其他进程写入的分区
+        router.refresh(template.getDb().listCollectionNames().into(new ArrayList<>()));
+        List<String> partitions=router.getPartitionsBefore(value);
+        try {
+            for(String partition:partitions){
+                template.getCollection(partition).drop();
+                router.removePartition(partition);
+            }
+        } finally {
+            this.invalidateCache(entityClass);
+        }
+        return partitions;
+    }
+
+    /**
+     * 分区查询（各分区按排序取跳过数加限制数条，合并排序后跳过和限制）
+     * <br>合并排序按字段值比较，不支持排序规则，带排序规则的排序查询直接失败
+     * @param query 查询器
+     * @param entityClass 分区实体类
+     * @param router 分区路由
+     * @return java.util.List<T> 
+     */
+    private <T extends MongoBean> List<T> findPartitioned(Query query, Class<T> entityClass, PartitionRouter router){
+        MongoTemplate template=this.getTemplate(MongoWorkload.OLTP);
+        MongoPersistentEntity<?> entity=mongoConverter.getMappingContext().getRequiredPersistentEntity(entityClass);
+        Document filter=queryMapper.getMappedObject(query.getQueryObject(),entity);
+        Document sort=queryMapper.getMappedSort(query.getSortObject(),entity);
+        if(!sort.isEmpty() && query.getCollation().isPresent()){
+            throw new IllegalArgumentException("分区实体类["+entityClass.getName()+"]的排序查询不支持排序规则（collation）");
+        }
+        Document fields=queryMapper.getMappedFields(query.getFieldsObject(),entity);
+        if(!fields.isEmpty() && !sort.isEmpty()){
+            //合并排序需要排序字段
+            fields=KeysetUtils.getKeysetFields(fields,sort);
+        }
+        Document projection=fields;
+        int limit=query.getLimit()>0?(int)Math.min(query.getSkip()+query.getLimit(),Integer.MAX_VALUE):0;
+        List<String> partitions=this.getPartitions(router,filter,template);
+        List<List<Document>> results=this.fanOut(partitions,collectionName -> {
+            FindIterable<Document> findIterable=template.getCollection(collectionName).find(filter).limit(limit);
+            if(!sort.isEmpty()){
+                findIterable.sort(sort);
+            }
+            if(!projection.isEmpty()){
+                findIterable.projection(projection);
+            }
+            query.getCollation().ifPresent(collation -> findIterable.collation(collation.toMongoCollation()));
+            if(query.getMeta().getMaxTimeMsec()!=null){
+                findIterable.maxTime(query.getMeta().getMaxTimeMsec(),TimeUnit.MILLISECONDS);
+            }
+            return findIterable.into(new ArrayList<>());
+        });
+        List<Document> documents=new ArrayList<>();
+        for(List<Document> result:results){
+            documents.addAll(result);
+        }
+        if(!sort.isEmpty() && results.size()>1){
+            documents.sort(PartitionRouter.getComparator(sort));
+        }
+        int from=(int)Math.min(query.getSkip(),documents.size());
+        int to=query.getLimit()>0?Math.min(from+query.getLimit(),documents.size()):documents.size();
+        List<T> list=new ArrayList<>(to-from);
+        for(Document document:documents.subList(from,to)){
+            list.add(mongoConverter.read(entityClass,document));
+        }
+        return list;
+    }
+
+    /**
+     * 分区计数（各分区按查询的排序规则和超时时间精确计数后相加，再按跳过数和限制数截取）
+     * @param query 查询器
+     * @param entityClass 分区实体类
+     * @param router 分区路由
+     * @return long 
+     */
+    private <T extends MongoBean> long countPartitioned(Query query, Class<T> entityClass, PartitionRouter router){
+        MongoTemplate template=this.getTemplate(MongoWorkload.OLTP);
+        Document filter=queryMapper.getMappedObject(query.getQueryObject(),mongoConverter.getMappingContext().getRequiredPersistentEntity(entityClass));
+        List<String> partitions=this.getPartitions(router,filter,template);
+        CountOptions countOptions=new CountOptions();
+        query.getCollation().ifPresent(collation -> countOptions.collation(collation.toMongoCollation()));
+        if(query.getMeta().getMaxTimeMsec()!=null){
+            countOptions.maxTime(query.getMeta().getMaxTimeMsec(),TimeUnit.MILLISECONDS);
+        }
+        long count=0;
+        for(Long partitionCount:this.fanOut(partitions,collectionName -> template.getCollection(collectionName).countDocuments(filter,countOptions))){
+            count+=partitionCount;
+        }
+        count=Math.max(count-query.getSkip(),0);
+        return query.getLimit()>0?Math.min(count,query.getLimit()):count;
+    }
+
+    /**
+     * 分区实体类不能按分区路由的操作直接失败（避免读写不存在数据的基础集合）
+     * @param entityClass 实体类
+     * @param operation 操作说明
+     * @return void 
+     */
+    private void checkNotPartitioned(Class<?> entityClass, String operation){
+        if(this.getPartitionRouter(entityClass)!=null){
+            throw new IllegalArgumentException("分区实体类["+entityClass.getName()+"]不支持"+operation+"，请使用find、count或按主键的方法");
+        }
+    }
+
+    /**
+     * 获取映射后的查询条件
+     * @param query 查询器
+     * @param entityClass 实体类
+     * @return org.bson.Document 
+     */
+    private Document getMappedFilter(Query query, Class<?> entityClass){
+        return queryMapper.getMappedObject(query.getQueryObject(),mongoConverter.getMappingContext().getRequiredPersistentEntity(entityClass));
+    }
+
+    /**
+     * 更新第一条（分区实体类按时间顺序在条件涉及的分区上依次更新，更新到一条后停止）
+     * @param template mongo句柄
+     * @param query 查询器
+     * @param update 更新
+     * @param entityClass 实体类
+     * @return com.mongodb.client.result.UpdateResult 
+     */
+    private UpdateResult updateFirstRouted(MongoTemplate template, Query query, Update update, Class<?> entityClass){
+        PartitionRouter router=this.getPartitionRouter(entityClass);
+        if(router==null){
+            return template.updateFirst(query,update,entityClass);
+        }
+        for(String partition:this.getPartitions(router,this.getMappedFilter(query,entityClass),template)){
+            UpdateResult result=template.updateFirst(query,update,entityClass,partition);
+            if(!result.wasAcknowledged() || result.getMatchedCount()>0){
+                return result;
+            }
+        }
+        return UpdateResult.acknowledged(0L,0L,null);
+    }
+
+    /**
+     * 按主键更新（分区实体类在条件涉及的分区上并行更新，主键只存在于一个分区）
+     * @param template mongo句柄
+     * @param query 主键查询器
+     * @param update 更新
+     * @param entityClass 实体类
+     * @return com.mongodb.client.result.UpdateResult 
+     */
+    private UpdateResult updateByIdRouted(MongoTemplate template, Query query, Update update, Class<?> entityClass){
+        PartitionRouter router=this.getPartitionRouter(entityClass);
+        if(router==null){
+            return template.updateFirst(query,update,entityClass);
+        }
+        return this.sumUpdateResults(this.fanOut(this.getPartitions(router,this.getMappedFilter(query,entityClass),template),
+                partition -> template.updateFirst(query,update,entityClass,partition)));
+    }
+
+    /**
+     * 更新全部满足条件的记录（分区实体类在条件涉及的分区上并行更新）
+     * @param template mongo句柄
+     * @param query 查询器
+     * @param update 更新
+     * @param entityClass 实体类
+     * @return com.mongodb.client.result.UpdateResult 
+     */
+    private UpdateResult updateMultiRouted(MongoTemplate template, Query query, Update update, Class<?> entityClass){
+        PartitionRouter router=this.getPartitionRouter(entityClass);
+        if(router==null){
+            return template.updateMulti(query,update,entityClass);
+        }
+        return this.sumUpdateResults(this.fanOut(this.getPartitions(router,this.getMappedFilter(query,entityClass),template),
+                partition -> template.updateMulti(query,update,entityClass,partition)));
+    }
+
+    /**
+     * 删除满足条件的记录（分区实体类在条件涉及的分区上并行删除）
+     * @param template mongo句柄
+     * @param query 查询器
+     * @param entityClass 实体类
+     * @return com.mongodb.client.result.DeleteResult 
+     */
+    private DeleteResult removeRouted(MongoTemplate template, Query query, Class<?> entityClass){
+        PartitionRouter router=this.getPartitionRouter(entityClass);
+        if(router==null){
+            return template.remove(query,entityClass);
+        }
+        long deleted=0;
+        for(DeleteResult result:this.fanOut(this.getPartitions(router,this.getMappedFilter(query,entityClass),template),
+                partition -> template.remove(query,entityClass,partition))){
+            if(!result.wasAcknowledged()){
+                return DeleteResult.unacknowledged();
+            }
+            deleted+=result.getDeletedCount();
+        }
+        return DeleteResult.acknowledged(deleted);
+    }
+
+    /**
+     * 合并各分区的更新结果
+     * @param results 各分区的更新结果
+     * @return com.mongodb.client.result.UpdateResult 
+     */
+    private UpdateResult sumUpdateResults(List<UpdateResult> results){
+        long matched=0;
+        long modified=0;
+        for(UpdateResult result:results){
+            if(!result.wasAcknowledged()){
+                return UpdateResult.unacknowledged();
+            }
+            matched+=result.getMatchedCount();
+            modified+=result.getModifiedCount();
+        }
+        return UpdateResult.acknowledged(matched,modified,null);
+    }
+
+    /**
+     * 按多个主键在所有分区上并行查询文档
+     * @param router 分区路由
+     * @param ids 主键（已转换为数据库中的类型）
+     * @return java.util.List<org.bson.Document> 
+     */
+    private List<Document> findDocumentsByIdsPartitioned(PartitionRouter router, Collection<Object> ids){
+        MongoTemplate template=this.getTemplate(MongoWorkload.OLTP);
+        Document filter=new Document("_id",new Document("$in",ids));
+        List<Document> documents=new ArrayList<>(ids.size());
+        for(List<Document> result:this.fanOut(this.getPartitions(router,filter,template),
+                partition -> template.getCollection(partition).find(filter).batchSize(ids.size()).into(new ArrayList<>()))){
+            documents.addAll(result);
+        }
+        return documents;
+    }
+
+    /**
+     * 查询主键所在的分区
+     * @param router 分区路由
+     * @param ids 主键（已转换为数据库中的类型）
+     * @return java.util.Map<java.lang.Object,java.lang.String> 主键对应的分区集合名（不存在的主键不包含）
+     */
+    private Map<Object, String> locatePartitions(PartitionRouter router, Collection<Object> ids){
+        Map<Object, String> locations=new HashMap<>(ids.size()*2);
+        if(ids.isEmpty()){
+            return locations;
+        }
+        MongoTemplate template=this.getTemplate(MongoWorkload.OLTP);
+        Document filter=new Document("_id",new Document("$in",ids));
+        List<String> partitions=this.getPartitions(router,filter,template);
+        List<List<Document>> results=this.fanOut(partitions,partition -> template.getCollection(partition).find(filter)
+                .projection(new Document("_id",1)).batchSize(ids.size()).into(new ArrayList<>()));
+        for(int i=0;i<partitions.size();i++){
+            for(Document document:results.get(i)){
+                locations.put(document.get("_id"),partitions.get(i));
+            }
+        }
+        return locations;
+    }
+
+    /**
+     * 获取查询条件涉及的已存在分区（距上次刷新超过间隔时先从数据库刷新）
+     * @param router 分区路由
+     * @param filter 映射后的查询条件
+     * @param template mongo句柄
+     * @return java.util.List<java.lang.String> 
+     */
+    private List<String> getPartitions(PartitionRouter router, Document filter, MongoTemplate template){
+        if(router.needsRefresh(System.currentTimeMillis())){
+            router.refresh(template.getDb().listCollectionNames().into(new ArrayList<>()));
+        }
+        return router.getPartitions(filter);
+    }
+
+    /**
+     * 在多个分区上并行执行（只有一个分区时在当前线程执行）
+     * @param partitions 分区集合名
+     * @param action 操作
+     * @return java.util.List<R> 与分区顺序一致
+     */
+    private <R> List<R> fanOut(List<String> partitions, Function<String, R> action){
+        List<R> results=new ArrayList<>(partitions.size());
+        if(partitions.size()<=1){
+            for(String partition:partitions){
+                results.add(action.apply(partition));
+            }
+            return results;
+        }
+        List<Future<R>> futures=new ArrayList<>(partitions.size());
+        try {
+            for(String partition:partitions){
+                futures.add(partitionQueryPool.submit(() -> action.apply(partition)));
+            }
+            for(Future<R> future:futures){
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("分区查询被中断",e);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException){
+                throw (RuntimeException)e.getCause();
+            }
+            throw new IllegalStateException(e.getCause().getMessage(),e.getCause());
+        } finally {
+            //失败时取消其他分区的查询
+            for(Future<R> future:futures){
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * 获取实体类的分区路由（实体类标注了MongoPartition时开启）
+     * @param entityClass 实体类
+     * @return com.pdd.db.mongo.holder.PartitionRouter 未分区时返回null
+     */
+    private PartitionRouter getPartitionRouter(Class<?> entityClass){
+        if(entityClass==null){
+            return null;
+        }
+        Optional<PartitionRouter> router=partitionRouters.get(entityClass);
+        if(router==null){
+            router=partitionRouters.computeIfAbsent(entityClass,k -> {
+                MongoPartition partition=k.getAnnotation(MongoPartition.class);
+                if(partition==null){
+                    return Optional.empty();
+                }
+                MongoPersistentEntity<?> entity=mongoConverter.getMappingContext().getRequiredPersistentEntity(k);
+                String fieldName=entity.getRequiredPersistentProperty(partition.field()).getFieldName();
+                return Optional.of(new PartitionRouter(entity.getCollection(),partition.field(),fieldName,partition));
+            });
+        }
+        return router.orElse(null);
+    }
+
+    /**
+     * 获取实体所在的分区集合名（首次写入分区时创建分区索引并记录分区）
+     * @param router 分区路由
+     * @param mongoBean 实体
+     * @param template mongo句柄
+     * @return java.lang.String 
+     */
+    private String getPartitionCollectionName(PartitionRouter router, MongoBean mongoBean, MongoTemplate template){
+        MongoPersistentEntity<?> entity=mongoConverter.getMappingContext().getRequiredPersistentEntity(mongoBean.getClass());
+        Object value=entity.getPropertyAccessor(mongoBean).getProperty(entity.getRequiredPersistentProperty(router.getPropertyName()));
+        String collectionName=router.getCollectionName(value);
+        if(router.markIndexed(collectionName)){
+            try {
+                for(Document keys:router.getIndexes()){
+                    template.getCollection(collectionName).createIndex(keys,new IndexOptions().background(true));
+                }
+            } catch (RuntimeException e) {
+                router.unmarkIndexed(collectionName);
+                throw e;
+            }
+            router.addPartition(collectionName);
+        }
+        return collectionName;
+    }
+
+    /**
+     * 更新时间是否早于扫描开始时的最大更新时间（空值视为最早）
+     * @param value 更新时间
+     * @param openFrom 扫描开始时的最大更新时间
+     * @return boolean 无法比较时返回false
      */
-    @Autowired
-    private MongoTemplate mongoTemplate;
+    @SuppressWarnings("unchecked")
+    private boolean isBefore(Object value, Object openFrom){
+        if(value==null){
+            return true;
+        }
+        if(value instanceof Number && openFrom instanceof Number){
+            return ((Number)value).doubleValue()<((Number)openFrom).doubleValue();
+        }
+        if(value instanceof Comparable && openFrom!=null && value.getClass()==openFrom.getClass()){
+            return ((Comparable<Object>)value).compareTo(openFrom)<0;
+        }
+        return false;
+    }
 
     /**
-     * mongo转换器
+     * 部署是否支持变更流（副本集或分片集群）
+     * @param template mongo句柄
+     * @return boolean 
      */
-    @Autowired
-    private MongoConverter mongoConverter;
-    
+    private boolean isChangeStreamSupported(MongoTemplate template){
+        Document isMaster=template.getDb().runCommand(new Document("isMaster",1));
+        return isMaster.get("setName")!=null || "isdbgrid".equals(isMaster.get("msg"));
+    }
+
     /**
-     * 获取类的表名
-     * @param entityClass 
-     * @return java.lang.String 
+     * 查询条件转换为变更流条件（字段加fullDocument.前缀）
+     * @param filter 查询条件
+     * @return org.bson.Document 
      */
-    public <T extends MongoBean> String getCollectionName(Class<T> entityClass){
-        return mongoTemplate.getCollectionName(entityClass);
+    private Document getChangeStreamFilter(Document filter) throws Exception{
+        Document streamFilter=new Document();
+        for(Map.Entry<String, Object> entry:filter.entrySet()){
+            String key=entry.getKey();
+            if(!key.startsWith("$")){
+                streamFilter.append(FULL_DOCUMENT_PREFIX+key,entry.getValue());
+                continue;
+            }
+            if(!("$and".equals(key) || "$or".equals(key) || "$nor".equals(key)) || !(entry.getValue() instanceof List)){
+                throw new Exception("变更流不支持的查询条件："+key);
+            }
+            List<Document> clauses=new ArrayList<>();
+            for(Object clause:(List<?>)entry.getValue()){
+                if(!(clause instanceof Document)){
+                    throw new Exception("变更流不支持的查询条件："+key);
+                }
+                clauses.add(this.getChangeStreamFilter((Document)clause));
+            }
+            streamFilter.append(key,clauses);
+        }
+        return streamFilter;
     }
-    
+
     /**
-     * 插入数据
-     * @param objectToSave 
-     * @return T 
+     * 获取实体缓存统计
+     * @param entityClass 实体类
+     * @return com.pdd.db.mongo.holder.EntityCacheStats 实体类未开启缓存时返回null
      */
-    public <T extends MongoBean> T insert(T objectToSave){
-        return mongoTemplate.insert(objectToSave);
+    public <T extends MongoBean> EntityCacheStats extGetCacheStats(Class<T> entityClass){
+        EntityCache entityCache=this.getEntityCache(entityClass);
+        return entityCache==null?null:entityCache.getStats();
     }
 
     /**
-     * 批量插入数据
-     * @param batchToSave 
-     * @return java.util.Collection<T> 
+     * 主键查询（读穿透缓存）
+     * @param entityCache 实体缓存
+     * @param id 主键（已转换为数据库中的类型）
+     * @param entityClass 实体类
+     * @return T 
      */
-    public <T extends MongoBean> Collection<T> insertAll(Collection<? extends T> batchToSave){
-        return mongoTemplate.insertAll(batchToSave);
+    private <T extends MongoBean> T findByIdCached(EntityCache entityCache, Object id, Class<T> entityClass){
+        Document document=entityCache.get(id);
+        if(document==null){
+            long loadSeq=entityCache.beginLoad();
+            document=this.findDocumentById(id,entityClass);
+            if(document==null){
+                return null;
+            }
+            entityCache.put(id,document,loadSeq);
+        }
+        return mongoConverter.read(entityClass,document);
     }
-    
+
     /**
-     * 条件删除
-     * @param query
-     * @param entityClass
-     * @return
+     * 是否使用主键合并查询（指定了负载的线程直接查询，合并查询使用自动选择的句柄）
+     * @return boolean 
      */
-    public <T extends MongoBean> DeleteResult remove(Query query, Class<T> entityClass){
-        return mongoTemplate.remove(query,entityClass);
+    private boolean isIdBatchActive(){
+        return idBatchScheduler!=null && currentProfile.get()==null;
     }
 
     /**
-     * 查询满足条件记录
-     * @param query
-     * @param entityClass
-     * @return java.util.List<T>
+     * 主键查询文档（分区实体类在所有分区上并行查询；开启合并查询时与其他线程的主键查询合并）
+     * @param id 主键（已转换为数据库中的类型）
+     * @param entityClass 实体类
+     * @return org.bson.Document 
      */
-    public <T extends MongoBean> List<T> find(Query query, Class<T> entityClass){
-        return mongoTemplate.find(query,entityClass);
+    private Document findDocumentById(Object id, Class<?> entityClass){
+        PartitionRouter router=this.getPartitionRouter(entityClass);
+        if(router!=null){
+            List<Document> documents=this.findDocumentsByIdsPartitioned(router,Collections.singletonList(id));
+            return documents.isEmpty()?null:documents.get(0);
+        }
+        String collectionName=mongoTemplate.getCollectionName(entityClass);
+        if(this.isIdBatchActive()){
+            IdBatchLoader loader=idBatchLoaders.computeIfAbsent(collectionName,k -> new IdBatchLoader(idBatchScheduler,idBatchWorkerPool,
+                    mongoHolderProperties.getIdBatchWindowMillis(),mongoHolderProperties.getIdBatchMaxSize(),ids -> this.findDocumentsByIds(k,ids)));
+            return loader.load(id);
+        }
+        return this.getTemplate(MongoWorkload.OLTP).getCollection(collectionName).find(new Document("_id",id)).first();
     }
-    
+
     /**
-     * 查询第一条
-     * @param query 
-     * @param entityClass 
-     * @return T 
+     * 按多个主键查询文档
+     * @param collectionName 集合名
+     * @param ids 主键（已转换为数据库中的类型）
+     * @return java.util.List<org.bson.Document> 
      */
-    public <T extends MongoBean> T findOne(Query query, Class<T> entityClass){
-        return mongoTemplate.findOne(query,entityClass);
+    private List<Document> findDocumentsByIds(String collectionName, Collection<Object> ids){
+        return this.getTemplate(MongoWorkload.OLTP).getCollection(collectionName).find(new Document("_id",new Document("$in",ids))).batchSize(ids.size()).into(new ArrayList<>(ids.size()));
     }
-    
+
     /**
-     * 根据主键查询
-     * @param id 
-     * @param entityClass 
-     * @return T 
+     * 获取实体类的缓存（实体类标注了MongoCache时开启）
+     * @param entityClass 实体类
+     * @return com.pdd.db.mongo.holder.EntityCache 未开启时返回null
      */
-    public <T extends MongoBean> T findById(Object id, Class<T> entityClass){
-        return mongoTemplate.findById(id,entityClass);
+    private EntityCache getEntityCache(Class<?> entityClass){
+        return entityCaches.computeIfAbsent(entityClass,k -> {
+            MongoCache mongoCache=k.getAnnotation(MongoCache.class);
+            if(mongoCache==null){
+                return Optional.empty();
+            }
+            return Optional.of(collectionCaches.computeIfAbsent(mongoTemplate.getCollectionName(k),
+                    collectionName -> new EntityCache(collectionName,mongoCache.maxSize(),mongoCache.ttlSeconds())));
+        }).orElse(null);
     }
 
     /**
-     * 查询总数
-     * @param query 
-     * @param entityClass 
-     * @return long 
+     * 实体类是否开启软删除（实体类标注了MongoSoftDelete时开启，并确保已创建软删除索引）
+     * @param entityClass 实体类
+     * @return boolean 
      */
-    public <T extends MongoBean> long count(Query query, Class<T> entityClass){
-        return mongoTemplate.count(query,entityClass);
+    private boolean isSoftDelete(Class<?> entityClass){
+        MongoSoftDelete softDelete=this.getSoftDelete(entityClass);
+        if(softDelete==null){
+            return false;
+        }
+        this.ensureSoftDeleteIndexes(mongoTemplate.getCollectionName(entityClass),softDelete);
+        return true;
     }
-    
+
     /**
-     * 聚合操作
-     * @param aggregation 
-     * @param entityClass 
-     * @param outputType 
-     * @return org.springframework.data.mongodb.core.aggregation.AggregationResults<O> 
+     * 获取实体类的软删除配置（首次获取时登记清理，不访问数据库）
+     * @param entityClass 实体类
+     * @return com.pdd.db.mongo.bean.MongoSoftDelete 未开启软删除时返回null
      */
-    public <O extends MongoBean> AggregationResults<O> aggregate(Aggregation aggregation, Class<O> entityClass, Class<O> outputType){
-        return mongoTemplate.aggregate(aggregation,entityClass,outputType);
+    private MongoSoftDelete getSoftDelete(Class<?> entityClass){
+        if(entityClass==null){
+            return null;
+        }
+        Optional<MongoSoftDelete> softDelete=softDeletes.get(entityClass);
+        if(softDelete==null){
+            softDelete=softDeletes.computeIfAbsent(entityClass,k -> {
+                MongoSoftDelete annotation=k.getAnnotation(MongoSoftDelete.class);
+                if(annotation==null){
+                    return Optional.empty();
+                }
+                if(k.isAnnotationPresent(MongoPartition.class)){
+                    throw new IllegalArgumentException("分区实体类["+k.getName()+"]不支持软删除");
+                }
+                softDeletePurger.register(mongoTemplate.getCollectionName(k),TimeUnit.DAYS.toMillis(annotation.retentionDays()));
+                return Optional.of(annotation);
+            });
+        }
+        return softDelete.orElse(null);
     }
-    
-    //--------------------【扩展方法】--------------------
 
     /**
-     * 主键查询
-     * @param _id 
-     * @param entityClass 
-     * @return T 
+     * 确保集合已创建软删除索引
+     * <br>同一时间只有一个线程创建，其他线程不等待；创建失败（如数据库不可用、索引冲突、liveIndexes格式有误）不影响调用方，
+     * 失败记录在清理统计中（extGetPurgeStats），间隔一段时间后再次使用时重试
+     * @param collectionName 集合名
+     * @param softDelete 软删除配置
+     * @return void 
      */
-    public <T extends MongoBean> T extFindById(String _id, Class<T> entityClass){
-        Query query=new Query(Criteria.where("_id").is(new ObjectId(_id)));
-        return mongoTemplate.findOne(query,entityClass);
+    private void ensureSoftDeleteIndexes(String collectionName, MongoSoftDelete softDelete){
+        long now=System.currentTimeMillis();
+        Long indexTime=softDeleteIndexTimes.get(collectionName);
+        if(indexTime!=null && indexTime>now){
+            return;
+        }
+        //抢占本次创建，抢占失败说明其他线程正在创建或刚创建过
+        boolean claimed=indexTime==null?softDeleteIndexTimes.putIfAbsent(collectionName,now+SOFT_DELETE_INDEX_RETRY_MILLIS)==null
+                :softDeleteIndexTimes.replace(collectionName,indexTime,now+SOFT_DELETE_INDEX_RETRY_MILLIS);
+        if(!claimed){
+            return;
+        }
+        try {
+            List<Document> liveIndexes=new ArrayList<>(softDelete.liveIndexes().length);
+            for(String liveIndex:softDelete.liveIndexes()){
+                liveIndexes.add(Document.parse(liveIndex));
+            }
+            SoftDeletePurger.createIndexes(mongoTemplate.getCollection(collectionName),liveIndexes);
+            softDeleteIndexTimes.put(collectionName,Long.MAX_VALUE);
+            softDeletePurger.recordIndexResult(collectionName,null);
+        } catch (RuntimeException e) {
+            //保留重试时间，到期后再次使用时重试
+            softDeletePurger.recordIndexResult(collectionName,e);
+        }
     }
 
     /**
-     * 更新第一条
-     * @param query 查询条件
-     * @param mongoBean 要更新的实体
-     * @param updateFields 
-     * @return com.mongodb.client.result.UpdateResult 
+     * 后台清理已删除记录（先为已登记的实体类补建索引）
+     * @return void 
      */
-    public <T extends MongoBean> UpdateResult extUpdateFirst(Query query, T mongoBean,String... updateFields) throws Exception{
-        Update update=getUpdateFromBean(mongoBean,updateFields);
-        return mongoTemplate.updateFirst(query,update,mongoBean.getClass());
+    private void purgeSoftDeleted(){
+        for(Map.Entry<Class<?>, Optional<MongoSoftDelete>> entry:softDeletes.entrySet()){
+            if(entry.getValue().isPresent()){
+                this.ensureSoftDeleteIndexes(mongoTemplate.getCollectionName(entry.getKey()),entry.getValue().get());
+            }
+        }
+        softDeletePurger.purgeAll();
     }
 
     /**
-     * 批量更新
-     * @param query 查询条件
-     * @param mongoBean 要更新的实体
-     * @param updateFields 要更新的字段（有参数时，更新指定的字段；无此参数时，更新mongoBean所有不为空的字段）
-     * @return com.mongodb.client.result.UpdateResult 
+     * 获取只查询未删除记录的查询器（未开启软删除或查询条件中已有delFlag时返回原查询器，不修改原查询器）
+     * @param query 查询器
+     * @param entityClass 实体类
+     * @return org.springframework.data.mongodb.core.query.Query 
      */
-    public <T extends MongoBean> UpdateResult extUpdateMulti(Query query, T mongoBean,String... updateFields) throws Exception{
-        Update update=getUpdateFromBean(mongoBean,updateFields);
-        return mongoTemplate.updateMulti(query,update,mongoBean.getClass());
+    private Query getLiveQuery(Query query, Class<?> entityClass){
+        if(query==null || !this.isSoftDelete(entityClass) || query.getQueryObject().containsKey(SoftDeletePurger.DEL_FLAG)){
+            return query;
+        }
+        return Query.of(query).addCriteria(Criteria.where(SoftDeletePurger.DEL_FLAG).is(false));
     }
-    
+
     /**
-     * 根据主键更新数据（更新指定的字段/更新不为空的字段）
-     * @param _id 主键
-     * @param mongoBean 要更新的实体
-     * @param updateFields 要更新的字段（有参数时，更新指定的字段；无此参数时，更新mongoBean所有不为空的字段）
-     * @return com.mongodb.client.result.UpdateResult 
+     * 获取只查询未删除记录的查询条件（未开启软删除或查询条件中已有delFlag时返回原条件）
+     * @param filter 查询条件
+     * @param entityClass 实体类
+     * @return org.bson.Document 
      */
-    public <T extends MongoBean> UpdateResult extUpdateById(String _id,T mongoBean,String... updateFields) throws Exception{
-        Query query=new Query(Criteria.where("_id").is(new ObjectId(_id)));
-        Update update=getUpdateFromBean(mongoBean,updateFields);
-        return mongoTemplate.updateFirst(query,update,mongoBean.getClass());
+    private Document getLiveFilter(Document filter, Class<?> entityClass){
+        if(!this.isSoftDelete(entityClass) || filter.containsKey(SoftDeletePurger.DEL_FLAG)){
+            return filter;
+        }
+        return new Document(filter).append(SoftDeletePurger.DEL_FLAG,false);
     }
 
     /**
-     * 根据主键更新所有字段
-     * @param _id 主键
-     * @param mongoBean 要更新的实体
-     * @return com.mongodb.client.result.UpdateResult
+     * 过滤已删除的实体（主键查询用）
+     * @param mongoBean 实体
+     * @return T 未开启软删除或未删除时返回原实体，否则返回null
      */
-    public <T extends MongoBean> UpdateResult extUpdateAllById(String _id,T mongoBean) throws Exception{
-        if(StringUtils.isBlank(_id)){
-            throw new Exception("更新主键不可为空");
+    private <T extends MongoBean> T getLive(T mongoBean){
+        if(mongoBean!=null && Boolean.TRUE.equals(mongoBean.getDelFlag()) && this.isSoftDelete(mongoBean.getClass())){
+            return null;
         }
-        Query query=new Query(Criteria.where("_id").is(new ObjectId(_id)));
-        Update update=getAllUpdateFromBean(mongoBean);
-        return mongoTemplate.updateFirst(query,update,mongoBean.getClass());
+        return mongoBean;
     }
-    
+
     /**
-     * 根据主键删除
-     * @param _id 主键
-     * @param entityClass mongo实体类
-     * @return com.mongodb.client.result.DeleteResult 
+     * 插入前初始化删除标志（开启软删除且delFlag为空时置为false）
+     * @param mongoBean 实体
+     * @return void 
      */
-    public <T extends MongoBean> DeleteResult extRemoveById(String _id,Class<T> entityClass){
-        Query query=new Query(Criteria.where("_id").is(new ObjectId(_id)));
-        return this.remove(query,entityClass);
+    private void initDelFlag(MongoBean mongoBean){
+        if(mongoBean!=null && mongoBean.getDelFlag()==null && this.isSoftDelete(mongoBean.getClass())){
+            mongoBean.setDelFlag(false);
+        }
     }
-        
+
     /**
-     * 获取mongo游标（需要手动关闭）
-     * @param query 查询对象
-     * @param entityClass 查询实体
-     * @param batchSize 批次大小（默认1000，需大于0）
-     * @param pageNum 当前页数
-     * @param pageSize 每页大小
-     * @return com.mongodb.client.MongoCursor<org.bson.Document> 
+     * 获取实体类所在集合的缓存（写操作失效用，集合可能被其他开启缓存的实体类使用）
+     * @param entityClass 实体类
+     * @return com.pdd.db.mongo.holder.EntityCache 集合未开启缓存时返回null
      */
-    <T extends MongoBean> MongoCursor<Document> extGetMongoCursor(Query query, Class<T> entityClass, Integer batchSize, Integer pageNum, Integer pageSize){
-        if(query==null || entityClass==null){
+    private EntityCache getCollectionCache(Class<?> entityClass){
+        if(collectionCaches.isEmpty()){
             return null;
         }
-        MongoCollection<Document> collection=mongoTemplate.getCollection(mongoTemplate.getCollectionName(entityClass));
-        FindIterable<Document> findIterable=collection.find(query.getQueryObject());
-        ////----------填充游标属性----------
-        //（1）游标不超时
-        findIterable.noCursorTimeout(true);
-        //（2）批次拉取大小（默认1000）
-        if(batchSize==null || batchSize<=0){
-            batchSize=DEFAULT_CURSOR_BATCH_SIZE;
+        return collectionCaches.get(mongoTemplate.getCollectionName(entityClass));
+    }
+
+    /**
+     * 按主键失效缓存
+     * @param entityClass 实体类
+     * @param id 主键
+     * @return void 
+     */
+    private void invalidateCache(Class<?> entityClass, Object id){
+        this.invalidateCount(entityClass);
+        EntityCache entityCache=this.getCollectionCache(entityClass);
+        if(entityCache!=null){
+            entityCache.invalidate(id);
         }
-        findIterable.batchSize(batchSize);
-        //（3）排序
-        findIterable.sort(query.getSortObject());
-        //（4）跳过记录数
-        if(pageNum!=null && pageSize!=null){
-            findIterable.skip((pageNum - 1) * pageSize);
-            findIterable.limit(pageSize);
+    }
+
+    /**
+     * 失效集合的全部缓存（多条写入后调用）
+     * @param entityClass 实体类
+     * @return void 
+     */
+    private void invalidateCache(Class<?> entityClass){
+        this.invalidateCount(entityClass);
+        EntityCache entityCache=this.getCollectionCache(entityClass);
+        if(entityCache!=null){
+            entityCache.invalidateAll();
         }
-        
-        return findIterable.cursor();
     }
 
     /**
-     * 执行游标查询
-     * @param query 查询器
-     * @param entityClass 查询实体
-     * @param batchSize 批次大小
-     * @param pageNum 当前页
-     * @param pageSize 每次大小
-     * @param executor 执行器
+     * 失效集合的计数缓存
+     * @param entityClass 实体类
      * @return void 
      */
-    public <T extends MongoBean> void extCursorQueryExe(Query query, Class<T> entityClass, Integer batchSize, Integer pageNum, Integer pageSize, Executor<T> executor) throws Exception{
-        if(executor==null){
-            return ;
+    private void invalidateCount(Class<?> entityClass){
+        countCache.invalidate(mongoTemplate.getCollectionName(entityClass));
+    }
+
+    /**
+     * 记录实体快照（在变更跟踪范围内时）
+     * @param mongoBean 实体
+     * @return void 
+     */
+    private void track(MongoBean mongoBean){
+        ChangeTracker tracker=currentTracker.get();
+        //超过最多跟踪数时不再转换文档
+        if(tracker!=null && mongoBean!=null && tracker.canTrack(mongoBean)){
+            Document document=new Document();
+            mongoConverter.write(mongoBean,document);
+            tracker.track(mongoBean,document);
         }
-        try (MongoCursor<Document> cursor = this.extGetMongoCursor(query,entityClass,batchSize,pageNum,pageSize)) {
-            if(cursor==null){
-                return ;
-            }
-            T model;
-            while (cursor.hasNext()) {
-                model = mongoConverter.read(entityClass, cursor.next());
-                executor.invoke(model);
+    }
+
+    /**
+     * 记录实体快照（在变更跟踪范围内时）
+     * @param mongoBeans 实体
+     * @return void 
+     */
+    private void track(List<? extends MongoBean> mongoBeans){
+        if(currentTracker.get()!=null){
+            for(MongoBean mongoBean:mongoBeans){
+                this.track(mongoBean);
             }
-        } catch (Exception e) {
-            throw e;
         }
     }
 
     /**
-     * 执行游标查询
+     * 计算已跟踪实体的变更
+     * @param mongoBean 实体
+     * @param id 更新的主键
+     * @param unsetRemoved 变为空的字段是否unset
+     * @return com.pdd.db.mongo.holder.ChangeTracker.Change 不在跟踪范围内、实体未跟踪或主键与快照不一致时返回null
+     */
+    private ChangeTracker.Change getChange(MongoBean mongoBean, ObjectId id, boolean unsetRemoved){
+        ChangeTracker tracker=currentTracker.get();
+        if(tracker==null || mongoBean==null || !tracker.isTracked(mongoBean)){
+            return null;
+        }
+        Document document=new Document();
+        mongoConverter.write(mongoBean,document);
+        return tracker.diff(mongoBean,document,id,unsetRemoved);
+    }
+
+    /**
+     * 慢查询检测开始计时
+     * @return long 未开启时返回0
+     */
+    private long startProfile(){
+        return queryProfileEnabled?System.nanoTime():0;
+    }
+
+    /**
+     * 记录查询到慢查询检测（检测异常不影响查询）
+     * @param operation 操作名
+     * @param entityClass 实体类
      * @param query 查询器
-     * @param entityClass 查询实体
-     * @param batchSize 批次大小
-     * @param executor 执行器
+     * @param profileStart 开始时间（纳秒）
      * @return void 
      */
-    public <T extends MongoBean> void extCursorQueryExe(Query query, Class<T> entityClass, Integer batchSize, Executor<T> executor) throws Exception{
-        this.extCursorQueryExe(query,entityClass,batchSize,null,null,executor);
+    private void profile(String operation, Class<?> entityClass, Query query, long profileStart){
+        if(!queryProfileEnabled || query==null || entityClass==null || this.getPartitionRouter(entityClass)!=null){
+            return;
+        }
+        try {
+            queryProfiler.record(operation,mongoTemplate.getCollectionName(entityClass),entityClass,query,System.nanoTime()-profileStart);
+        } catch (RuntimeException e) {
+            //不影响查询，失败记录在慢查询检测统计中
+            queryProfiler.recordFailure(e);
+        }
     }
 
     /**
-     * 执行游标查询
-     * @param query 查询器
-     * @param entityClass 查询实体
-     * @param executor 执行器
-     * @return void
+     * 开始计时
+     * @return long 未启用指标时返回0
      */
-    public <T extends MongoBean> void extCursorQueryExe(Query query, Class<T> entityClass, Executor<T> executor) throws Exception{
-        this.extCursorQueryExe(query,entityClass,null,null,null,executor);
+    private long startTimer(){
+        return metricsEnabled?System.nanoTime():0;
+    }
+
+    /**
+     * 记录操作指标
+     * @param operation 操作名
+     * @param entityClass 实体类（为空时集合名记为空）
+     * @param startTime 开始时间
+     * @param documentCount 返回或影响的记录数
+     * @param failed 是否失败
+     * @return void 
+     */
+    private void record(String operation, Class<?> entityClass, long startTime, long documentCount, boolean failed){
+        if(!metricsEnabled){
+            return;
+        }
+        long elapsedNanos=System.nanoTime()-startTime;
+        try {
+            metricsRegistry.recordOperation(operation,entityClass==null?null:mongoTemplate.getCollectionName(entityClass),elapsedNanos,documentCount,failed);
+        } catch (RuntimeException e) {
+            //指标记录失败不影响业务操作
+        }
+    }
+
+    /**
+     * 记录游标扫描指标
+     * @param operation 操作名
+     * @param entityClass 实体类
+     * @param startTime 开始时间
+     * @param scanMetrics 扫描指标
+     * @param failed 是否失败
+     * @return void 
+     */
+    private void recordScan(String operation, Class<?> entityClass, long startTime, ScanMetrics scanMetrics, boolean failed){
+        if(!metricsEnabled){
+            return;
+        }
+        this.record(operation,entityClass,startTime,scanMetrics.getDocumentCount(),failed);
+        try {
+            metricsRegistry.recordScan(operation,mongoTemplate.getCollectionName(entityClass),scanMetrics);
+        } catch (RuntimeException e) {
+            //指标记录失败不影响业务操作
+        }
+    }
+
+    /**
+     * 累加单条记录的扫描耗时
+     * @param scanMetrics 扫描指标
+     * @param fetchStart 开始拉取时间
+     * @param convertStart 开始转换时间
+     * @param executeStart 开始执行时间
+     * @return long 下一条记录的开始拉取时间
+     */
+    private long addScan(ScanMetrics scanMetrics, long fetchStart, long convertStart, long executeStart){
+        if(!metricsEnabled){
+            return 0;
+        }
+        long executeEnd=scanMetrics.now();
+        scanMetrics.add(convertStart-fetchStart,executeStart-convertStart,executeEnd-executeStart);
+        return executeEnd;
+    }
+
+    /**
+     * 获取更新影响的记录数
+     * @param result 更新结果
+     * @return long 
+     */
+    private long getModifiedCount(UpdateResult result){
+        return result.wasAcknowledged()?result.getModifiedCount():0;
+    }
+
+    /**
+     * 获取集合中第一个实体的类
+     * @param mongoBeans 实体集合
+     * @return java.lang.Class<?> 
+     */
+    private Class<?> getFirstClass(Collection<? extends MongoBean> mongoBeans){
+        if(CollectionUtils.isEmpty(mongoBeans)){
+            return null;
+        }
+        MongoBean first=mongoBeans.iterator().next();
+        return first==null?null:first.getClass();
     }
 
     /**
@@ -322,18 +3368,23 @@ public class MongoHolder {
         if(mongoBean==null){
             throw new Exception("要更新的对象为空");
         }
+        //校验字段有消息
+        for(String fieldTmp:updateFields){
+            if (StringUtils.isBlank(fieldTmp)){
+                throw new Exception("更新的字段不可为空");
+            }
+        }
+        //优先使用按（实体类，更新字段）编译的更新计划，不支持时走转换器全量写入
+        Update planUpdate=updatePlanCache.getUpdate(mongoBean,updateFields);
+        if(planUpdate!=null){
+            return planUpdate;
+        }
         Document document = new Document();
         //转换实体为文档对象
         mongoConverter.write(mongoBean, document);
         //组装要更新的字段
         Set<String> updateFieldSet=new HashSet<>();
         if(updateFields.length>0){
-            //校验字段有消息
-            for(String fieldTmp:updateFields){
-                if (StringUtils.isBlank(fieldTmp)){
-                    throw new Exception("更新的字段不可为空");
-                }
-            }
             CollectionUtils.addAll(updateFieldSet,updateFields);
         }
         //构建要更新的字段
@@ -0,0 +1,70 @@
+package com.pdd.db.mongo.holder;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.ReplaceOptions;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+/**
+ * 扫描检查点存储（保存在mongo集合中，每个扫描任务一条记录，_id为扫描任务标识）
+ **/
+public class MongoScanCheckpointStore implements ScanCheckpointStore {
+
+    /**
+     * 覆盖写入，不存在时插入
+     */
+    private static final ReplaceOptions UPSERT=new ReplaceOptions().upsert(true);
+
+    /**
+     * mongo句柄
+     */
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * 集合名
+     */
+    private final String collectionName;
+
+    public MongoScanCheckpointStore(MongoTemplate mongoTemplate, String collectionName){
+        this.mongoTemplate=mongoTemplate;
+        this.collectionName=collectionName;
+    }
+
+    @Override
+    public ScanCheckpoint load(String scanId) {
+        Document document=this.getCollection().find(new Document("_id",scanId)).first();
+        if(document==null){
+            return null;
+        }
+        ScanCheckpoint checkpoint=new ScanCheckpoint();
+        checkpoint.setScanId(scanId);
+        checkpoint.setToken(document.getString("token"));
+        checkpoint.setProcessedCount(document.get("processedCount",0L));
+        checkpoint.setFinished(document.get("finished",false));
+        checkpoint.setUpdateTime(document.get("updateTime",0L));
+        return checkpoint;
+    }
+
+    @Override
+    public void save(ScanCheckpoint checkpoint) {
+        Document document=new Document("_id",checkpoint.getScanId())
+                .append("token",checkpoint.getToken())
+                .append("processedCount",checkpoint.getProcessedCount())
+                .append("finished",checkpoint.isFinished())
+                .append("updateTime",checkpoint.getUpdateTime());
+        this.getCollection().replaceOne(new Document("_id",checkpoint.getScanId()),document,UPSERT);
+    }
+
+    @Override
+    public void remove(String scanId) {
+        this.getCollection().deleteOne(new Document("_id",scanId));
+    }
+
+    /**
+     * 获取集合
+     * @return com.mongodb.client.MongoCollection<org.bson.Document> 
+     */
+    private MongoCollection<Document> getCollection(){
+        return mongoTemplate.getCollection(collectionName);
+    }
+}
@@ -0,0 +1,32 @@
+package com.pdd.db.mongo.holder;
+
+/**
+ * 句柄自动选择的负载类型（对应mongodb.option.profiles中的配置名称）
+ **/
+public enum MongoWorkload {
+    /**
+     * 在线读写（主键查询、单条查询、条件更新删除等）
+     */
+    OLTP("oltp"),
+    /**
+     * 分析扫描（游标查询、并行扫描、聚合）
+     */
+    ANALYTICS("analytics"),
+    /**
+     * 批量写入
+     */
+    BULK_WRITE("bulk-write");
+
+    /**
+     * 负载配置名称
+     */
+    private final String profileName;
+
+    MongoWorkload(String profileName){
+        this.profileName=profileName;
+    }
+
+    public String getProfileName(){
+        return profileName;
+    }
+}
@@ -0,0 +1,78 @@
+package com.pdd.db.mongo.holder;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 并行游标扫描结果
+ **/
+@Data
+public class ParallelScanResult {
+
+    /**
+     * 分区总数
+     */
+    private int partitionCount;
+
+    /**
+     * 执行成功的分区数
+     */
+    private int successCount;
+
+    /**
+     * 已处理的记录数（包含失败分区在失败前处理的记录）
+     */
+    private long processedCount;
+
+    /**
+     * 耗时（毫秒）
+     */
+    private long elapsedMillis;
+
+    /**
+     * 执行失败的分区（可根据分区边界单独重试）
+     */
+    private List<PartitionFailure> failures = new ArrayList<>();
+
+    /**
+     * 是否全部分区执行成功
+     * @return boolean
+     */
+    public boolean isSuccess(){
+        return failures.isEmpty();
+    }
+
+    /**
+     * 失败分区
+     */
+    @Data
+    public static class PartitionFailure {
+
+        /**
+         * 分区序号（从0开始）
+         */
+        private int partitionIndex;
+
+        /**
+         * 分区下边界（包含，为空表示无下边界）
+         */
+        private Object lowerBound;
+
+        /**
+         * 分区上边界（不包含，为空表示无上边界）
+         */
+        private Object upperBound;
+
+        /**
+         * 分区失败前已处理的记录数
+         */
+        private long processedCount;
+
+        /**
+         * 异常信息
+         */
+        private Exception exception;
+    }
+}
@@ -0,0 +1,379 @@
+package com.pdd.db.mongo.holder;
+
+import com.pdd.db.mongo.bean.MongoPartition;
+import org.bson.Document;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 时间分区路由（一个实体类）
+ * <br>分区字段的值转换为日期后按时间单位生成集合名后缀；后缀为定长数字，字符串顺序即时间顺序
+ * <br>查询时从查询条件中分区字段的等值、范围和$in条件取上下界，只保留界内已存在的分区集合；
+ * 无法按日期格式解析的条件值（如$gte:0、正则）不限制范围
+ * <br>已存在的分区缓存在路由中：写入新分区、删除分区时更新；距上次从数据库刷新超过间隔后，下一次查询前重新刷新
+ * （发现其他进程创建的分区，包括缓存的最早、最晚分区之间补写的分区），其他进程删除的分区在刷新后仍保留（查询不存在的集合返回空）
+ **/
+final class PartitionRouter {
+
+    /**
+     * 两次从数据库刷新分区的间隔（毫秒）
+     */
+    private static final long REFRESH_INTERVAL_MILLIS=1000;
+
+    /**
+     * 基础集合名
+     */
+    private final String baseName;
+
+    /**
+     * 分区字段（实体属性名）
+     */
+    private final String propertyName;
+
+    /**
+     * 分区字段（数据库字段名）
+     */
+    private final String fieldName;
+
+    /**
+     * 分区字段的日期格式
+     */
+    private final DateTimeFormatter valueFormatter;
+
+    /**
+     * 集合名后缀格式
+     */
+    private final DateTimeFormatter suffixFormatter;
+
+    /**
+     * 每个分区的索引
+     */
+    private final List<Document> indexes;
+
+    /**
+     * 已创建索引的分区
+     */
+    private final Set<String> indexedPartitions=ConcurrentHashMap.newKeySet();
+
+    /**
+     * 已存在分区的后缀（升序）
+     */
+    private final NavigableSet<String> knownSuffixes=new ConcurrentSkipListSet<>();
+
+    /**
+     * 最近一次从数据库刷新分区的时间（未刷新过时为0）
+     */
+    private final AtomicLong refreshTime=new AtomicLong();
+
+    PartitionRouter(String baseName, String propertyName, String fieldName, MongoPartition partition){
+        this.baseName=baseName;
+        this.propertyName=propertyName;
+        this.fieldName=fieldName;
+        //格式中没有月、日时按1月、1日解析
+        this.valueFormatter=new DateTimeFormatterBuilder().appendPattern(partition.pattern())
+                .parseDefaulting(ChronoField.MONTH_OF_YEAR,1).parseDefaulting(ChronoField.DAY_OF_MONTH,1).toFormatter();
+        this.suffixFormatter=DateTimeFormatter.ofPattern(partition.unit().getSuffixPattern());
+        this.indexes=new ArrayList<>(partition.indexes().length);
+        for(String index:partition.indexes()){
+            this.indexes.add(Document.parse(index));
+        }
+    }
+
+    String getPropertyName(){
+        return propertyName;
+    }
+
+    List<Document> getIndexes(){
+        return indexes;
+    }
+
+    /**
+     * 获取分区字段值所在的分区集合名
+     * @param value 分区字段值
+     * @return java.lang.String
+     */
+    String getCollectionName(Object value){
+        if(value==null){
+            throw new IllegalArgumentException("集合["+baseName+"]的分区字段["+propertyName+"]不可为空");
+        }
+        return baseName+'_'+this.getSuffix(value);
+    }
+
+    /**
+     * 按数据库中的集合名刷新已存在分区（与缓存合并）
+     * @param collectionNames 数据库中的集合名
+     * @return void
+     */
+    void refresh(Collection<String> collectionNames){
+        knownSuffixes.addAll(this.getSuffixes(collectionNames));
+        refreshTime.set(System.currentTimeMillis());
+    }
+
+    /**
+     * 查询前是否需要从数据库刷新分区（未刷新过；或距上次刷新超过间隔，间隔到期时只有一个查询线程刷新，其他线程使用缓存）
+     * @param now 当前时间（毫秒）
+     * @return boolean
+     */
+    boolean needsRefresh(long now){
+        long last=refreshTime.get();
+        if(last==0){
+            return true;
+        }
+        return now-last>=REFRESH_INTERVAL_MILLIS && refreshTime.compareAndSet(last,now);
+    }
+
+    /**
+     * 记录已存在的分区（写入新分区时）
+     * @param collectionName 分区集合名
+     * @return void
+     */
+    void addPartition(String collectionName){
+        knownSuffixes.add(collectionName.substring(baseName.length()+1));
+    }
+
+    /**
+     * 移除分区（删除分区时）
+     * @param collectionName 分区集合名
+     * @return void
+     */
+    void removePartition(String collectionName){
+        knownSuffixes.remove(collectionName.substring(baseName.length()+1));
+        indexedPartitions.remove(collectionName);
+    }
+
+    /**
+     * 获取查询条件涉及的已存在分区（按时间升序）
+     * @param filter 映射后的查询条件
+     * @return java.util.List<java.lang.String>
+     */
+    List<String> getPartitions(Document filter){
+        String[] bounds=new String[2];
+        this.collectBounds(filter,bounds);
+        String lower=bounds[0];
+        String upper=bounds[1];
+        List<String> partitions=new ArrayList<>();
+        for(String suffix:knownSuffixes){
+            if((lower==null || suffix.compareTo(lower)>=0) && (upper==null || suffix.compareTo(upper)<=0)){
+                partitions.add(baseName+'_'+suffix);
+            }
+        }
+        return partitions;
+    }
+
+    /**
+     * 获取早于分区字段值所在分区的已存在分区（按时间升序）
+     * @param value 分区字段值
+     * @return java.util.List<java.lang.String>
+     */
+    List<String> getPartitionsBefore(Object value){
+        String bound=this.getSuffix(value);
+        List<String> partitions=new ArrayList<>();
+        for(String suffix:knownSuffixes.headSet(bound,false)){
+            partitions.add(baseName+'_'+suffix);
+        }
+        return partitions;
+    }
+
+    /**
+     * 标记分区已创建索引
+     * @param collectionName 分区集合名
+     * @return boolean 之前未标记时返回true
+     */
+    boolean markIndexed(String collectionName){
+        return indexedPartitions.add(collectionName);
+    }
+
+    /**
+     * 取消分区的索引标记（创建索引失败时）
+     * @param collectionName 分区集合名
+     * @return void
+     */
+    void unmarkIndexed(String collectionName){
+        indexedPartitions.remove(collectionName);
+    }
+
+    /**
+     * 多个分区结果合并排序的比较器
+     * @param sort 映射后的排序
+     * @return java.util.Comparator<org.bson.Document>
+     */
+    static Comparator<Document> getComparator(Document sort){
+        return (a,b) -> {
+            for(Map.Entry<String, Object> entry:sort.entrySet()){
+                int direction=entry.getValue() instanceof Number && ((Number)entry.getValue()).intValue()<0?-1:1;
+                int result=DocumentUtils.compare(DocumentUtils.getFieldValue(a,entry.getKey()),DocumentUtils.getFieldValue(b,entry.getKey()));
+                if(result!=0){
+                    return result*direction;
+                }
+            }
+            return 0;
+        };
+    }
+
+    /**
+     * 获取集合名中本路由分区的后缀
+     * @param collectionNames 数据库中的集合名
+     * @return java.util.List<java.lang.String>
+     */
+    private List<String> getSuffixes(Collection<String> collectionNames){
+        String prefix=baseName+'_';
+        int suffixLength=suffixFormatter.format(LocalDate.now()).length();
+        List<String> suffixes=new ArrayList<>();
+        for(String collectionName:collectionNames){
+            if(collectionName.length()==prefix.length()+suffixLength && collectionName.startsWith(prefix)){
+                String suffix=collectionName.substring(prefix.length());
+                if(suffix.chars().allMatch(Character::isDigit)){
+                    suffixes.add(suffix);
+                }
+            }
+        }
+        return suffixes;
+    }
+
+    /**
+     * 收集分区字段的上下界后缀（顶层和$and中的等值、$gt、$gte、$lt、$lte、$in条件，取最窄的范围）
+     * @param filter 查询条件
+     * @param bounds 下界、上界的后缀
+     * @return void
+     */
+    private void collectBounds(Document filter, String[] bounds){
+        for(Map.Entry<String, Object> entry:filter.entrySet()){
+            if("$and".equals(entry.getKey()) && entry.getValue() instanceof List){
+                for(Object clause:(List<?>)entry.getValue()){
+                    if(clause instanceof Document){
+                        this.collectBounds((Document)clause,bounds);
+                    }
+                }
+                continue;
+            }
+            if(!fieldName.equals(entry.getKey())){
+                continue;
+            }
+            Object value=entry.getValue();
+            if(!(value instanceof Document)){
+                this.narrow(bounds,value,value);
+                continue;
+            }
+            for(Map.Entry<String, Object> condition:((Document)value).entrySet()){
+                switch (condition.getKey()) {
+                    case "$eq":
+                        this.narrow(bounds,condition.getValue(),condition.getValue());
+                        break;
+                    case "$gt":
+                    case "$gte":
+                        this.narrow(bounds,condition.getValue(),null);
+                        break;
+                    case "$lt":
+                    case "$lte":
+                        this.narrow(bounds,null,condition.getValue());
+                        break;
+                    case "$in":
+                        if(condition.getValue() instanceof List){
+                            this.narrowIn(bounds,(List<?>)condition.getValue());
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 按$in条件缩小上下界（取可解析值的最小、最大后缀；不可解析的值不会存在于分区中，忽略）
+     * @param bounds 下界、上界的后缀
+     * @param values $in的值
+     * @return void
+     */
+    private void narrowIn(String[] bounds, List<?> values){
+        String min=null;
+        String max=null;
+        for(Object value:values){
+            String suffix=this.getBoundSuffix(value);
+            if(suffix!=null){
+                min=min==null || suffix.compareTo(min)<0?suffix:min;
+                max=max==null || suffix.compareTo(max)>0?suffix:max;
+            }
+        }
+        if(min!=null){
+            this.narrowSuffix(bounds,min,max);
+        }
+    }
+
+    /**
+     * 缩小上下界
+     * @param bounds 下界、上界的后缀
+     * @param lower 下界（为空或无法解析时不变）
+     * @param upper 上界（为空或无法解析时不变）
+     * @return void
+     */
+    private void narrow(String[] bounds, Object lower, Object upper){
+        this.narrowSuffix(bounds,this.getBoundSuffix(lower),this.getBoundSuffix(upper));
+    }
+
+    /**
+     * 按后缀缩小上下界
+     * @param bounds 下界、上界的后缀
+     * @param lower 下界后缀（为空不变）
+     * @param upper 上界后缀（为空不变）
+     * @return void
+     */
+    private void narrowSuffix(String[] bounds, String lower, String upper){
+        if(lower!=null && (bounds[0]==null || lower.compareTo(bounds[0])>0)){
+            bounds[0]=lower;
+        }
+        if(upper!=null && (bounds[1]==null || upper.compareTo(bounds[1])<0)){
+            bounds[1]=upper;
+        }
+    }
+
+    /**
+     * 获取查询条件值的后缀
+     * @param value 查询条件值
+     * @return java.lang.String 为空或无法按日期格式解析时返回null（不限制范围）
+     */
+    private String getBoundSuffix(Object value){
+        if(value==null){
+            return null;
+        }
+        try {
+            return this.getSuffix(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 获取分区字段值的集合名后缀
+     * @param value 分区字段值（日期，或按日期格式的数字、字符串）
+     * @return java.lang.String
+     */
+    private String getSuffix(Object value){
+        LocalDate date;
+        if(value instanceof Date){
+            date=((Date)value).toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+        }else{
+            try {
+                date=LocalDate.parse(value.toString(),valueFormatter);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("集合["+baseName+"]的分区字段["+propertyName+"]格式有误："+value,e);
+            }
+        }
+        return suffixFormatter.format(date);
+    }
+}
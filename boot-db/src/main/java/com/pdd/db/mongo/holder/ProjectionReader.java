@@ -0,0 +1,123 @@
+package com.pdd.db.mongo.holder;
+
+import org.bson.Document;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.projection.ProjectionFactory;
+import org.springframework.data.projection.ProjectionInformation;
+
+import java.beans.PropertyDescriptor;
+
+/**
+ * 投影读取器
+ * <br>根据结果类型计算需要返回的字段，只传输和转换这些字段
+ * <br>结果类型为接口时：先读取实体（只填充投影字段），再生成接口代理；结果类型为类时：直接读取为该类
+ **/
+final class ProjectionReader<R> {
+
+    /**
+     * mongo转换器
+     */
+    private final MongoConverter mongoConverter;
+
+    /**
+     * 接口投影代理工厂
+     */
+    private final ProjectionFactory projectionFactory;
+
+    /**
+     * 实体类
+     */
+    private final Class<?> entityClass;
+
+    /**
+     * 结果类型
+     */
+    private final Class<R> resultType;
+
+    /**
+     * 返回字段（为空时返回全部字段）
+     */
+    private final Document fields;
+
+    private ProjectionReader(MongoConverter mongoConverter, ProjectionFactory projectionFactory, Class<?> entityClass, Class<R> resultType, Document fields){
+        this.mongoConverter=mongoConverter;
+        this.projectionFactory=projectionFactory;
+        this.entityClass=entityClass;
+        this.resultType=resultType;
+        this.fields=fields;
+    }
+
+    /**
+     * 创建投影读取器
+     * @param mongoConverter mongo转换器
+     * @param projectionFactory 接口投影代理工厂
+     * @param entityClass 实体类
+     * @param resultType 结果类型（实体类、DTO类或接口）
+     * @param queryFields 查询器指定的返回字段（不为空时优先使用）
+     * @return com.pdd.db.mongo.holder.ProjectionReader<R>
+     */
+    static <R> ProjectionReader<R> create(MongoConverter mongoConverter, ProjectionFactory projectionFactory, Class<?> entityClass, Class<R> resultType, Document queryFields){
+        Document fields=queryFields;
+        if(fields==null || fields.isEmpty()){
+            fields=getProjectionFields(mongoConverter,projectionFactory,entityClass,resultType);
+        }
+        return new ProjectionReader<>(mongoConverter,projectionFactory,entityClass,resultType,fields);
+    }
+
+    /**
+     * 获取返回字段
+     * @return org.bson.Document 为空时返回全部字段
+     */
+    Document getFields(){
+        return fields;
+    }
+
+    /**
+     * 读取文档
+     * @param document 文档
+     * @return R
+     */
+    R read(Document document){
+        if(resultType.isAssignableFrom(entityClass)){
+            return resultType.cast(mongoConverter.read(entityClass,document));
+        }
+        if(resultType.isInterface()){
+            return projectionFactory.createProjection(resultType,mongoConverter.read(entityClass,document));
+        }
+        return mongoConverter.read(resultType,document);
+    }
+
+    /**
+     * 根据结果类型计算返回字段（结果类型的属性映射到实体字段名）
+     * @return org.bson.Document 无法确定时返回空（返回全部字段）
+     */
+    private static Document getProjectionFields(MongoConverter mongoConverter, ProjectionFactory projectionFactory, Class<?> entityClass, Class<?> resultType){
+        Document fields=new Document();
+        if(resultType.isAssignableFrom(entityClass)){
+            return fields;
+        }
+        MongoPersistentEntity<?> entity=mongoConverter.getMappingContext().getRequiredPersistentEntity(entityClass);
+        if(resultType.isInterface()){
+            ProjectionInformation projectionInformation=projectionFactory.getProjectionInformation(resultType);
+            //开放投影（使用表达式）需要完整实体
+            if(!projectionInformation.isClosed()){
+                return fields;
+            }
+            for(PropertyDescriptor descriptor:projectionInformation.getInputProperties()){
+                MongoPersistentProperty property=entity.getPersistentProperty(descriptor.getName());
+                if(property!=null){
+                    fields.append(property.getFieldName(),1);
+                }
+            }
+        }else{
+            MongoPersistentEntity<?> resultEntity=mongoConverter.getMappingContext().getRequiredPersistentEntity(resultType);
+            for(MongoPersistentProperty resultProperty:resultEntity){
+                MongoPersistentProperty property=entity.getPersistentProperty(resultProperty.getName());
+                fields.append(property!=null?property.getFieldName():resultProperty.getFieldName(),1);
+            }
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,37 @@
+package com.pdd.db.mongo.holder;
+
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * 慢查询检测统计
+ **/
+@Data
+public class QueryProfileStats {
+
+    /**
+     * 当前记录的查询形态数
+     */
+    private int shapeCount;
+
+    /**
+     * 记录查询失败的次数（如生成形态、映射条件出错，不影响查询本身）
+     */
+    private long recordFailedCount;
+
+    /**
+     * explain失败的次数（失败信息同时记录在对应形态的报告中）
+     */
+    private long explainFailedCount;
+
+    /**
+     * 最近一次失败的时间（未失败过时为空）
+     */
+    private Date lastErrorTime;
+
+    /**
+     * 最近一次失败的异常信息
+     */
+    private String lastError;
+}
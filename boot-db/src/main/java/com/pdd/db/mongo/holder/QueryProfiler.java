@@ -0,0 +1,532 @@
+package com.pdd.db.mongo.holder;
+
+import com.pdd.db.mongo.metrics.LatencyHistogram;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 查询分析器（慢查询检测）
+ * <br>按查询形态（条件中的值替换为?）累计耗时；慢查询或抽样命中的形态在后台线程以find执行explain，
+ * 记录执行计划类型、扫描键数和文档数，全表扫描或扫描远多于返回时按等值、排序、范围字段生成建议索引
+ * <br>同一形态在间隔时间内只explain一次；后台队列已满时丢弃，不影响查询线程
+ * <br>记录查询和explain的失败次数与最近一次失败，通过统计查看
+ **/
+final class QueryProfiler {
+
+    /**
+     * 作为等值条件的操作符
+     */
+    private static final Set<String> EQUALITY_OPERATORS=new HashSet<>(Arrays.asList("$eq","$in"));
+
+    /**
+     * 子句为查询条件数组的操作符
+     */
+    private static final Set<String> CLAUSE_OPERATORS=new HashSet<>(Arrays.asList("$and","$or","$nor"));
+
+    /**
+     * 扫描文档数超过返回数的倍数时生成建议索引
+     */
+    private static final long EXAMINED_RATIO=10;
+
+    private final MongoConverter mongoConverter;
+
+    private final QueryMapper queryMapper;
+
+    /**
+     * 执行explain命令
+     */
+    private final Function<Document, Document> commandRunner;
+
+    /**
+     * 慢查询阈值（纳秒）
+     */
+    private final long slowNanos;
+
+    /**
+     * 抽样比例（0~1）
+     */
+    private final double sampleRate;
+
+    /**
+     * 同一形态explain的最小间隔（毫秒）
+     */
+    private final long explainIntervalMillis;
+
+    /**
+     * 最多记录的形态数
+     */
+    private final int maxShapes;
+
+    /**
+     * explain的详细程度（queryPlanner不执行查询；executionStats执行查询并返回扫描数）
+     */
+    private final String verbosity;
+
+    /**
+     * explain线程池
+     */
+    private final ThreadPoolExecutor explainExecutor;
+
+    /**
+     * 形态对应的统计
+     */
+    private final ConcurrentMap<String, ShapeState> shapes=new ConcurrentHashMap<>();
+
+    /**
+     * 记录查询失败的次数
+     */
+    private final LongAdder recordFailures=new LongAdder();
+
+    /**
+     * explain失败的次数
+     */
+    private final LongAdder explainFailures=new LongAdder();
+
+    /**
+     * 最近一次失败的时间
+     */
+    private volatile Date lastErrorTime;
+
+    /**
+     * 最近一次失败的异常信息
+     */
+    private volatile String lastError;
+
+    QueryProfiler(MongoConverter mongoConverter, Function<Document, Document> commandRunner, long slowMillis, double sampleRate, long explainIntervalMillis, int maxShapes, String verbosity){
+        this.mongoConverter=mongoConverter;
+        this.queryMapper=new QueryMapper(mongoConverter);
+        this.commandRunner=commandRunner;
+        this.slowNanos=TimeUnit.MILLISECONDS.toNanos(slowMillis);
+        this.sampleRate=sampleRate;
+        this.explainIntervalMillis=explainIntervalMillis;
+        this.maxShapes=maxShapes;
+        this.verbosity=verbosity;
+        this.explainExecutor=new ThreadPoolExecutor(1,1,0L,TimeUnit.MILLISECONDS,new ArrayBlockingQueue<>(100),
+                new CustomizableThreadFactory("mongo-explain-"),new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    /**
+     * 记录一次查询（慢查询或抽样命中时提交explain）
+     * @param operation 操作名
+     * @param collectionName 集合名
+     * @param entityClass 实体类
+     * @param query 查询器
+     * @param elapsedNanos 耗时（纳秒）
+     * @return void
+     */
+    void record(String operation, String collectionName, Class<?> entityClass, Query query, long elapsedNanos){
+        Document queryObject=query.getQueryObject();
+        Document sortObject=query.getSortObject();
+        String filterShape=toShape(queryObject).toJson();
+        String sortShape=sortObject.toJson();
+        String key=operation+'|'+collectionName+'|'+filterShape+'|'+sortShape;
+        ShapeState state=shapes.get(key);
+        if(state==null){
+            if(shapes.size()>=maxShapes){
+                return;
+            }
+            state=shapes.computeIfAbsent(key,k -> new ShapeState(operation,collectionName,filterShape,sortShape));
+        }
+        state.latency.record(elapsedNanos);
+        boolean slow=elapsedNanos>=slowNanos;
+        if(slow){
+            state.slowCount.increment();
+        }
+        if((slow || (sampleRate>0 && ThreadLocalRandom.current().nextDouble()<sampleRate)) && state.tryBeginExplain(explainIntervalMillis)){
+            //在查询线程中映射条件（字段名和值转换为数据库中的形式），后台执行explain
+            Document filter=this.getMappedFilter(entityClass,queryObject);
+            Document sort=this.getMappedSort(entityClass,sortObject);
+            ShapeState target=state;
+            explainExecutor.execute(() -> this.explain(target,collectionName,filter,sort));
+        }
+    }
+
+    /**
+     * 立即分析查询（同步执行explain，不记录到形态统计）
+     * @param collectionName 集合名
+     * @param entityClass 实体类
+     * @param query 查询器
+     * @return com.pdd.db.mongo.holder.QueryShapeReport
+     */
+    QueryShapeReport analyze(String collectionName, Class<?> entityClass, Query query){
+        ShapeState state=new ShapeState("extAnalyzeQuery",collectionName,toShape(query.getQueryObject()).toJson(),query.getSortObject().toJson());
+        state.tryBeginExplain(0);
+        this.explain(state,collectionName,this.getMappedFilter(entityClass,query.getQueryObject()),this.getMappedSort(entityClass,query.getSortObject()));
+        return state.toReport();
+    }
+
+    /**
+     * 获取各形态的报告
+     * @return java.util.List<com.pdd.db.mongo.holder.QueryShapeReport>
+     */
+    List<QueryShapeReport> getReports(){
+        List<QueryShapeReport> reports=new ArrayList<>(shapes.size());
+        for(ShapeState state:shapes.values()){
+            reports.add(state.toReport());
+        }
+        return reports;
+    }
+
+    /**
+     * 记录一次记录查询的失败（查询分析不影响查询本身，失败只计数）
+     * @param error 异常
+     * @return void
+     */
+    void recordFailure(RuntimeException error){
+        recordFailures.increment();
+        this.setLastError(error);
+    }
+
+    /**
+     * 获取统计
+     * @return com.pdd.db.mongo.holder.QueryProfileStats
+     */
+    QueryProfileStats getStats(){
+        QueryProfileStats stats=new QueryProfileStats();
+        stats.setShapeCount(shapes.size());
+        stats.setRecordFailedCount(recordFailures.sum());
+        stats.setExplainFailedCount(explainFailures.sum());
+        stats.setLastErrorTime(lastErrorTime);
+        stats.setLastError(lastError);
+        return stats;
+    }
+
+    /**
+     * 清空形态统计
+     * @return void
+     */
+    void reset(){
+        shapes.clear();
+    }
+
+    /**
+     * 关闭explain线程池
+     * @return void
+     */
+    void shutdown(){
+        explainExecutor.shutdownNow();
+    }
+
+    /**
+     * 执行explain并记录结果
+     * @param state 形态统计
+     * @param collectionName 集合名
+     * @param filter 映射后的查询条件
+     * @param sort 映射后的排序
+     * @return void
+     */
+    private void explain(ShapeState state, String collectionName, Document filter, Document sort){
+        ExplainResult result=new ExplainResult();
+        try {
+            Document find=new Document("find",collectionName).append("filter",filter);
+            if(!sort.isEmpty()){
+                find.append("sort",sort);
+            }
+            Document explain=commandRunner.apply(new Document("explain",find).append("verbosity",verbosity));
+            Document queryPlanner=(Document)explain.get("queryPlanner");
+            List<Document> stages=new ArrayList<>();
+            collectStages(queryPlanner==null?null:queryPlanner.get("winningPlan"),stages);
+            for(Document stage:stages){
+                String stageName=stage.getString("stage");
+                if("COLLSCAN".equals(stageName)){
+                    result.planType=stageName;
+                }
+                if(result.indexName==null && stage.get("indexName")!=null){
+                    result.indexName=stage.getString("indexName");
+                }
+            }
+            if(result.planType==null && !stages.isEmpty()){
+                result.planType=stages.get(stages.size()-1).getString("stage");
+            }
+            Document executionStats=(Document)explain.get("executionStats");
+            if(executionStats!=null){
+                result.keysExamined=getLong(executionStats,"totalKeysExamined");
+                result.docsExamined=getLong(executionStats,"totalDocsExamined");
+                result.returned=getLong(executionStats,"nReturned");
+                result.executionMillis=getLong(executionStats,"executionTimeMillis");
+            }
+            boolean inefficient="COLLSCAN".equals(result.planType)
+                    || (result.docsExamined!=null && result.returned!=null && result.docsExamined>EXAMINED_RATIO*Math.max(result.returned,1));
+            if(inefficient){
+                Document candidate=getIndexCandidate(filter,sort);
+                result.indexCandidate=candidate.isEmpty()?null:candidate.toJson();
+            }
+        } catch (RuntimeException e) {
+            result.error=e.getMessage();
+            explainFailures.increment();
+            this.setLastError(e);
+        }
+        state.explainResult=result;
+    }
+
+    /**
+     * 记录最近一次失败
+     * @param error 异常
+     * @return void
+     */
+    private void setLastError(RuntimeException error){
+        lastErrorTime=new Date();
+        lastError=error.toString();
+    }
+
+    private Document getMappedFilter(Class<?> entityClass, Document queryObject){
+        MongoPersistentEntity<?> entity=mongoConverter.getMappingContext().getPersistentEntity(entityClass);
+        return queryMapper.getMappedObject(queryObject,entity);
+    }
+
+    private Document getMappedSort(Class<?> entityClass, Document sortObject){
+        MongoPersistentEntity<?> entity=mongoConverter.getMappingContext().getPersistentEntity(entityClass);
+        return queryMapper.getMappedSort(sortObject,entity);
+    }
+
+    /**
+     * 查询条件形态（字段名和操作符保留并排序，值替换为?）
+     * @param value 查询条件
+     * @return org.bson.Document
+     */
+    static Document toShape(Document value){
+        Map<String, Object> sorted=new TreeMap<>();
+        for(Map.Entry<String, Object> entry:value.entrySet()){
+            sorted.put(entry.getKey(),toShapeValue(entry.getKey(),entry.getValue()));
+        }
+        return new Document(sorted);
+    }
+
+    private static Object toShapeValue(String key, Object value){
+        if(CLAUSE_OPERATORS.contains(key) && value instanceof List){
+            List<Object> clauses=new ArrayList<>();
+            for(Object clause:(List<?>)value){
+                clauses.add(clause instanceof Document?toShape((Document)clause):"?");
+            }
+            return clauses;
+        }
+        //字段的操作符条件（如{$gt:?}）保留操作符，嵌套文档的等值条件替换为?
+        if(value instanceof Document && isOperatorDocument((Document)value)){
+            return toShape((Document)value);
+        }
+        return "?";
+    }
+
+    private static boolean isOperatorDocument(Document document){
+        if(document.isEmpty()){
+            return false;
+        }
+        for(String key:document.keySet()){
+            if(!key.startsWith("$")){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 建议索引（等值字段、排序字段、范围字段；$or等分支条件不参与）
+     * @param filter 映射后的查询条件
+     * @param sort 映射后的排序
+     * @return org.bson.Document
+     */
+    static Document getIndexCandidate(Document filter, Document sort){
+        Map<String, Boolean> fields=new LinkedHashMap<>();
+        collectFields(filter,fields);
+        Document candidate=new Document();
+        for(Map.Entry<String, Boolean> entry:fields.entrySet()){
+            if(entry.getValue()){
+                candidate.append(entry.getKey(),1);
+            }
+        }
+        for(Map.Entry<String, Object> entry:sort.entrySet()){
+            if(!candidate.containsKey(entry.getKey())){
+                candidate.append(entry.getKey(),entry.getValue());
+            }
+        }
+        for(Map.Entry<String, Boolean> entry:fields.entrySet()){
+            if(!candidate.containsKey(entry.getKey())){
+                candidate.append(entry.getKey(),1);
+            }
+        }
+        return candidate;
+    }
+
+    /**
+     * 收集条件字段（值为是否等值条件）
+     * @param filter 查询条件
+     * @param fields 字段
+     * @return void
+     */
+    private static void collectFields(Document filter, Map<String, Boolean> fields){
+        for(Map.Entry<String, Object> entry:filter.entrySet()){
+            String key=entry.getKey();
+            if("$and".equals(key) && entry.getValue() instanceof List){
+                for(Object clause:(List<?>)entry.getValue()){
+                    if(clause instanceof Document){
+                        collectFields((Document)clause,fields);
+                    }
+                }
+                continue;
+            }
+            if(key.startsWith("$")){
+                continue;
+            }
+            Object value=entry.getValue();
+            boolean equality=!(value instanceof Document && isOperatorDocument((Document)value))
+                    || EQUALITY_OPERATORS.containsAll(((Document)value).keySet());
+            fields.merge(key,equality,Boolean::logicalOr);
+        }
+    }
+
+    /**
+     * 按执行顺序收集计划阶段（叶子阶段在最后）
+     * @param plan 计划阶段
+     * @param stages 阶段
+     * @return void
+     */
+    private static void collectStages(Object plan, List<Document> stages){
+        if(!(plan instanceof Document)){
+            return;
+        }
+        Document stage=(Document)plan;
+        stages.add(stage);
+        collectStages(stage.get("inputStage"),stages);
+        Object inputStages=stage.get("inputStages");
+        if(inputStages==null){
+            inputStages=stage.get("shards");
+        }
+        if(inputStages instanceof List){
+            for(Object inputStage:(List<?>)inputStages){
+                Object shardPlan=inputStage instanceof Document && ((Document)inputStage).containsKey("winningPlan")?((Document)inputStage).get("winningPlan"):inputStage;
+                collectStages(shardPlan,stages);
+            }
+        }
+    }
+
+    private static Long getLong(Document document, String key){
+        Object value=document.get(key);
+        return value instanceof Number?((Number)value).longValue():null;
+    }
+
+    /**
+     * explain结果
+     */
+    private static final class ExplainResult {
+
+        private final Date explainTime=new Date();
+
+        private String planType;
+
+        private String indexName;
+
+        private Long keysExamined;
+
+        private Long docsExamined;
+
+        private Long returned;
+
+        private Long executionMillis;
+
+        private String indexCandidate;
+
+        private String error;
+    }
+
+    /**
+     * 形态统计
+     */
+    private static final class ShapeState {
+
+        private final String operation;
+
+        private final String collectionName;
+
+        private final String filterShape;
+
+        private final String sortShape;
+
+        private final LatencyHistogram latency=new LatencyHistogram();
+
+        private final LongAdder slowCount=new LongAdder();
+
+        private final AtomicLong explainCount=new AtomicLong();
+
+        /**
+         * 最近一次开始explain的时间（毫秒）
+         */
+        private final AtomicLong lastExplainAt=new AtomicLong();
+
+        private volatile ExplainResult explainResult;
+
+        ShapeState(String operation, String collectionName, String filterShape, String sortShape){
+            this.operation=operation;
+            this.collectionName=collectionName;
+            this.filterShape=filterShape;
+            this.sortShape=sortShape;
+        }
+
+        /**
+         * 距上次explain超过间隔时开始explain
+         * @param intervalMillis 间隔（毫秒）
+         * @return boolean 是否可以explain
+         */
+        boolean tryBeginExplain(long intervalMillis){
+            long now=System.currentTimeMillis();
+            long last=lastExplainAt.get();
+            if(last!=0 && now-last<intervalMillis){
+                return false;
+            }
+            if(!lastExplainAt.compareAndSet(last,now)){
+                return false;
+            }
+            explainCount.incrementAndGet();
+            return true;
+        }
+
+        QueryShapeReport toReport(){
+            QueryShapeReport report=new QueryShapeReport();
+            report.setOperation(operation);
+            report.setCollectionName(collectionName);
+            report.setFilterShape(filterShape);
+            report.setSortShape(sortShape);
+            report.setCount(latency.getCount());
+            report.setSlowCount(slowCount.sum());
+            report.setP50Micros(latency.getPercentileMicros(0.5));
+            report.setP99Micros(latency.getPercentileMicros(0.99));
+            report.setMaxMicros(latency.getMaxMicros());
+            report.setExplainCount(explainCount.get());
+            ExplainResult result=explainResult;
+            if(result!=null){
+                report.setExplainTime(result.explainTime);
+                report.setPlanType(result.planType);
+                report.setIndexName(result.indexName);
+                report.setKeysExamined(result.keysExamined);
+                report.setDocsExamined(result.docsExamined);
+                report.setReturned(result.returned);
+                report.setExecutionMillis(result.executionMillis);
+                report.setIndexCandidate(result.indexCandidate);
+                report.setExplainError(result.error);
+            }
+            return report;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.pdd.db.mongo.holder;
+
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * 查询形态报告（按操作、集合、查询条件和排序的形态，条件中的值替换为?）
+ **/
+@Data
+public class QueryShapeReport {
+
+    /**
+     * 操作名（MongoHolder方法名）
+     */
+    private String operation;
+
+    /**
+     * 集合名
+     */
+    private String collectionName;
+
+    /**
+     * 查询条件形态
+     */
+    private String filterShape;
+
+    /**
+     * 排序形态
+     */
+    private String sortShape;
+
+    /**
+     * 执行次数
+     */
+    private long count;
+
+    /**
+     * 慢查询次数
+     */
+    private long slowCount;
+
+    /**
+     * 50分位耗时（微秒）
+     */
+    private long p50Micros;
+
+    /**
+     * 99分位耗时（微秒）
+     */
+    private long p99Micros;
+
+    /**
+     * 最大耗时（微秒）
+     */
+    private long maxMicros;
+
+    /**
+     * explain次数
+     */
+    private long explainCount;
+
+    /**
+     * 最近一次explain的时间
+     */
+    private Date explainTime;
+
+    /**
+     * 执行计划类型（COLLSCAN为全表扫描；否则为计划的叶子阶段，如IXSCAN、IDHACK、COUNT_SCAN）
+     */
+    private String planType;
+
+    /**
+     * 使用的索引名
+     */
+    private String indexName;
+
+    /**
+     * 扫描的索引键数
+     */
+    private Long keysExamined;
+
+    /**
+     * 扫描的文档数
+     */
+    private Long docsExamined;
+
+    /**
+     * 返回的文档数
+     */
+    private Long returned;
+
+    /**
+     * explain测得的执行耗时（毫秒）
+     */
+    private Long executionMillis;
+
+    /**
+     * 建议的索引（全表扫描或扫描文档数远大于返回数时，按等值、排序、范围字段的顺序生成）
+     */
+    private String indexCandidate;
+
+    /**
+     * explain失败的原因
+     */
+    private String explainError;
+}
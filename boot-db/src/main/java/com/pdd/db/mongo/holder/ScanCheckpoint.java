@@ -0,0 +1,35 @@
+package com.pdd.db.mongo.holder;
+
+import lombok.Data;
+
+/**
+ * 可恢复扫描的检查点
+ **/
+@Data
+public class ScanCheckpoint {
+
+    /**
+     * 扫描任务标识
+     */
+    private String scanId;
+
+    /**
+     * 最后一条已处理记录的位置（键集分页标记，为空表示从头开始）
+     */
+    private String token;
+
+    /**
+     * 已处理的记录数（包含之前各次执行）
+     */
+    private long processedCount;
+
+    /**
+     * 是否已扫描完毕
+     */
+    private boolean finished;
+
+    /**
+     * 更新时间（毫秒时间戳）
+     */
+    private long updateTime;
+}
@@ -0,0 +1,28 @@
+package com.pdd.db.mongo.holder;
+
+/**
+ * 扫描检查点存储（注册此接口的bean可替换默认的mongo集合存储）
+ **/
+public interface ScanCheckpointStore {
+
+    /**
+     * 读取检查点
+     * @param scanId 扫描任务标识
+     * @return com.pdd.db.mongo.holder.ScanCheckpoint 不存在时返回null
+     */
+    ScanCheckpoint load(String scanId);
+
+    /**
+     * 保存检查点（覆盖已有的检查点）
+     * @param checkpoint 检查点
+     * @return void 
+     */
+    void save(ScanCheckpoint checkpoint);
+
+    /**
+     * 删除检查点（删除后再次执行将从头开始）
+     * @param scanId 扫描任务标识
+     * @return void 
+     */
+    void remove(String scanId);
+}
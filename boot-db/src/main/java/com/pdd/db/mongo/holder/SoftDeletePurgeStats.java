@@ -0,0 +1,72 @@
+package com.pdd.db.mongo.holder;
+
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * 软删除清理统计（一个集合）
+ **/
+@Data
+public class SoftDeletePurgeStats {
+
+    /**
+     * 集合名
+     */
+    private String collectionName;
+
+    /**
+     * 保留期（毫秒）
+     */
+    private long retentionMillis;
+
+    /**
+     * 清理次数（包含失败）
+     */
+    private long runCount;
+
+    /**
+     * 失败次数
+     */
+    private long failedCount;
+
+    /**
+     * 累计删除条数
+     */
+    private long purgedCount;
+
+    /**
+     * 最近一次清理的开始时间（未清理过时为空）
+     */
+    private Date lastRunTime;
+
+    /**
+     * 最近一次清理的删除条数
+     */
+    private long lastPurgedCount;
+
+    /**
+     * 最近一次失败的时间（未失败过时为空）
+     */
+    private Date lastErrorTime;
+
+    /**
+     * 最近一次失败的异常信息
+     */
+    private String lastError;
+
+    /**
+     * 软删除索引是否已创建
+     */
+    private boolean indexCreated;
+
+    /**
+     * 最近一次创建软删除索引失败的时间（未失败过时为空）
+     */
+    private Date indexErrorTime;
+
+    /**
+     * 最近一次创建软删除索引失败的异常信息
+     */
+    private String indexError;
+}
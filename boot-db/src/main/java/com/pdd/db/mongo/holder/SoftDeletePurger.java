@@ -0,0 +1,295 @@
+package com.pdd.db.mongo.holder;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexOptions;
+import com.pdd.db.mongo.metrics.MongoMetricsRegistry;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * 软删除记录清理
+ * <br>按delTime升序查询超过保留期的已删除记录主键，每批按主键物理删除，批次间暂停，每次运行最多删除配置的批次数，
+ * 避免大量删除占满写入和复制带宽
+ * <br>delFlag为true但没有delTime的记录（不是通过MongoHolder删除的）不会被清理
+ * <br>每个集合记录清理次数、删除条数、最近一次清理失败和索引创建失败，启用指标时按操作名purgeDeleted记录到指标注册器
+ **/
+final class SoftDeletePurger {
+
+    /**
+     * 删除标志字段
+     */
+    static final String DEL_FLAG="delFlag";
+
+    /**
+     * 删除时间字段
+     */
+    static final String DEL_TIME="delTime";
+
+    /**
+     * 错误码：同名或同键索引已存在且选项不同
+     */
+    private static final int INDEX_OPTIONS_CONFLICT=85;
+
+    /**
+     * 错误码：同名索引已存在且键不同
+     */
+    private static final int INDEX_KEY_SPECS_CONFLICT=86;
+
+    /**
+     * 按集合名获取集合
+     */
+    private final Function<String, MongoCollection<Document>> collectionProvider;
+
+    /**
+     * 每批删除条数
+     */
+    private final int batchSize;
+
+    /**
+     * 批次间暂停（毫秒）
+     */
+    private final long pauseMillis;
+
+    /**
+     * 每次运行每个集合最多删除的批次数
+     */
+    private final int maxBatches;
+
+    /**
+     * 集合对应的保留期（毫秒）
+     */
+    private final ConcurrentMap<String, Long> retentions=new ConcurrentHashMap<>();
+
+    /**
+     * 集合的清理统计
+     */
+    private final ConcurrentMap<String, SoftDeletePurgeStats> stats=new ConcurrentHashMap<>();
+
+    /**
+     * 指标注册器
+     */
+    private final MongoMetricsRegistry metricsRegistry;
+
+    SoftDeletePurger(Function<String, MongoCollection<Document>> collectionProvider, MongoMetricsRegistry metricsRegistry, int batchSize, long pauseMillis, int maxBatches){
+        this.collectionProvider=collectionProvider;
+        this.metricsRegistry=metricsRegistry;
+        this.batchSize=Math.max(batchSize,1);
+        this.pauseMillis=pauseMillis;
+        this.maxBatches=Math.max(maxBatches,1);
+    }
+
+    /**
+     * 登记集合（多个实体类使用同一集合时取最长的保留期）
+     * @param collectionName 集合名
+     * @param retentionMillis 保留期（毫秒）
+     * @return void
+     */
+    void register(String collectionName, long retentionMillis){
+        retentions.merge(collectionName,retentionMillis,Math::max);
+    }
+
+    /**
+     * 创建软删除索引（索引显式命名：清理索引为delTime_purge，未删除记录的索引为默认索引名加_live）
+     * <br>已存在相同键的其他索引（如普通索引）时跳过该索引，由已有索引承担查询
+     * @param collection 集合
+     * @param liveIndexes 只包含未删除记录的索引键
+     * @return void
+     */
+    static void createIndexes(MongoCollection<Document> collection, List<Document> liveIndexes){
+        createIndex(collection,new Document(DEL_TIME,1),new IndexOptions().name(DEL_TIME+"_purge")
+                .partialFilterExpression(new Document(DEL_FLAG,true)).background(true));
+        for(Document keys:liveIndexes){
+            createIndex(collection,keys,new IndexOptions().name(getIndexName(keys)+"_live")
+                    .partialFilterExpression(new Document(DEL_FLAG,false)).background(true));
+        }
+    }
+
+    /**
+     * 创建索引（索引选项或索引名冲突时跳过）
+     * @param collection 集合
+     * @param keys 索引键
+     * @param options 索引选项
+     * @return void
+     */
+    private static void createIndex(MongoCollection<Document> collection, Document keys, IndexOptions options){
+        try {
+            collection.createIndex(keys,options);
+        } catch (MongoCommandException e) {
+            if(e.getErrorCode()!=INDEX_OPTIONS_CONFLICT && e.getErrorCode()!=INDEX_KEY_SPECS_CONFLICT){
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 获取默认索引名（与数据库默认规则一致：字段_方向，以_连接）
+     * @param keys 索引键
+     * @return java.lang.String
+     */
+    static String getIndexName(Document keys){
+        StringBuilder name=new StringBuilder();
+        for(Map.Entry<String, Object> entry:keys.entrySet()){
+            if(name.length()>0){
+                name.append('_');
+            }
+            name.append(entry.getKey()).append('_').append(entry.getValue());
+        }
+        return name.toString();
+    }
+
+    /**
+     * 清理所有登记的集合（单个集合失败不影响其他集合，失败记录在清理统计中，下次运行重试）
+     * @return void
+     */
+    void purgeAll(){
+        for(Map.Entry<String, Long> entry:retentions.entrySet()){
+            if(Thread.currentThread().isInterrupted()){
+                return;
+            }
+            try {
+                this.purge(entry.getKey());
+            } catch (RuntimeException e) {
+                //已记录在清理统计中
+            }
+        }
+    }
+
+    /**
+     * 获取各集合的清理统计
+     * @return java.util.List<com.pdd.db.mongo.holder.SoftDeletePurgeStats>
+     */
+    List<SoftDeletePurgeStats> getStats(){
+        List<SoftDeletePurgeStats> result=new ArrayList<>(retentions.size());
+        for(Map.Entry<String, Long> entry:retentions.entrySet()){
+            SoftDeletePurgeStats collectionStats=new SoftDeletePurgeStats();
+            SoftDeletePurgeStats current=stats.get(entry.getKey());
+            if(current!=null){
+                synchronized (current) {
+                    collectionStats.setRunCount(current.getRunCount());
+                    collectionStats.setFailedCount(current.getFailedCount());
+                    collectionStats.setPurgedCount(current.getPurgedCount());
+                    collectionStats.setLastRunTime(current.getLastRunTime());
+                    collectionStats.setLastPurgedCount(current.getLastPurgedCount());
+                    collectionStats.setLastErrorTime(current.getLastErrorTime());
+                    collectionStats.setLastError(current.getLastError());
+                    collectionStats.setIndexCreated(current.isIndexCreated());
+                    collectionStats.setIndexErrorTime(current.getIndexErrorTime());
+                    collectionStats.setIndexError(current.getIndexError());
+                }
+            }
+            collectionStats.setCollectionName(entry.getKey());
+            collectionStats.setRetentionMillis(entry.getValue());
+            result.add(collectionStats);
+        }
+        return result;
+    }
+
+    /**
+     * 清理集合中超过保留期的已删除记录（记录清理统计，失败时抛出原异常）
+     * @param collectionName 集合名
+     * @return long 删除条数（未登记的集合返回0）
+     */
+    long purge(String collectionName){
+        Long retentionMillis=retentions.get(collectionName);
+        if(retentionMillis==null){
+            return 0;
+        }
+        Date runTime=new Date();
+        long startTime=System.nanoTime();
+        long[] purged=new long[1];
+        try {
+            this.purge(collectionName,retentionMillis,purged);
+            this.record(collectionName,runTime,startTime,purged[0],null);
+            return purged[0];
+        } catch (RuntimeException e) {
+            this.record(collectionName,runTime,startTime,purged[0],e);
+            throw e;
+        }
+    }
+
+    /**
+     * 记录一次创建软删除索引的结果
+     * @param collectionName 集合名
+     * @param error 异常（成功时为空）
+     * @return void
+     */
+    void recordIndexResult(String collectionName, RuntimeException error){
+        SoftDeletePurgeStats collectionStats=stats.computeIfAbsent(collectionName,k -> new SoftDeletePurgeStats());
+        synchronized (collectionStats) {
+            collectionStats.setIndexCreated(error==null);
+            if(error!=null){
+                collectionStats.setIndexErrorTime(new Date());
+                collectionStats.setIndexError(error.toString());
+            }
+        }
+    }
+
+    /**
+     * 记录一次清理
+     * @param collectionName 集合名
+     * @param runTime 开始时间
+     * @param startTime 开始计时（纳秒）
+     * @param purged 删除条数
+     * @param error 异常（成功时为空）
+     * @return void
+     */
+    private void record(String collectionName, Date runTime, long startTime, long purged, RuntimeException error){
+        SoftDeletePurgeStats collectionStats=stats.computeIfAbsent(collectionName,k -> new SoftDeletePurgeStats());
+        synchronized (collectionStats) {
+            collectionStats.setRunCount(collectionStats.getRunCount()+1);
+            collectionStats.setPurgedCount(collectionStats.getPurgedCount()+purged);
+            collectionStats.setLastRunTime(runTime);
+            collectionStats.setLastPurgedCount(purged);
+            if(error!=null){
+                collectionStats.setFailedCount(collectionStats.getFailedCount()+1);
+                collectionStats.setLastErrorTime(new Date());
+                collectionStats.setLastError(error.toString());
+            }
+        }
+        if(metricsRegistry.isEnabled()){
+            metricsRegistry.recordOperation("purgeDeleted",collectionName,System.nanoTime()-startTime,purged,error!=null);
+        }
+    }
+
+    /**
+     * 分批删除超过保留期的已删除记录
+     * @param collectionName 集合名
+     * @param retentionMillis 保留期（毫秒）
+     * @param purged 已删除条数（失败时保留失败前的条数）
+     * @return void
+     */
+    private void purge(String collectionName, long retentionMillis, long[] purged){
+        MongoCollection<Document> collection=collectionProvider.apply(collectionName);
+        Document filter=new Document(DEL_FLAG,true).append(DEL_TIME,new Document("$lt",new Date(System.currentTimeMillis()-retentionMillis)));
+        for(int i=0;i<maxBatches;i++){
+            List<Object> ids=new ArrayList<>(batchSize);
+            for(Document document:collection.find(filter).projection(new Document("_id",1)).sort(new Document(DEL_TIME,1)).limit(batchSize)){
+                ids.add(document.get("_id"));
+            }
+            if(ids.isEmpty()){
+                break;
+            }
+            //删除时再次确认删除标志，期间被恢复的记录不删除
+            purged[0]+=collection.deleteMany(new Document("_id",new Document("$in",ids)).append(DEL_FLAG,true)).getDeletedCount();
+            if(ids.size()<batchSize){
+                break;
+            }
+            if(pauseMillis>0){
+                try {
+                    Thread.sleep(pauseMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+}
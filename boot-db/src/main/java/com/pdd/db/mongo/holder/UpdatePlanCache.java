@@ -0,0 +1,301 @@
+package com.pdd.db.mongo.holder;
+
+import com.pdd.db.mongo.bean.MongoBean;
+import org.bson.Document;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.data.convert.CustomConversions;
+import org.springframework.data.mapping.PersistentPropertyAccessor;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.ClassTypeInformation;
+import org.springframework.util.ObjectUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 更新计划缓存
+ * <br>按（实体类，更新字段）编译一次更新计划，之后只读取需要更新的属性并按注册的自定义转换器转换，
+ * 结果与转换器全量写入文档后再筛选字段一致
+ * <br>包含关联、嵌套对象、集合等非简单类型的字段时不编译，由调用方走转换器全量写入
+ **/
+final class UpdatePlanCache {
+
+    /**
+     * mongo转换器
+     */
+    private final MongoConverter mongoConverter;
+
+    /**
+     * 自定义转换器
+     */
+    private final CustomConversions customConversions;
+
+    /**
+     * 主键转换（与转换器写入主键的方式一致）
+     */
+    private final QueryMapper idMapper;
+
+    /**
+     * 已编译的更新计划（更新字段组合由代码决定，数量有限）
+     */
+    private final ConcurrentMap<PlanKey, UpdatePlan> plans=new ConcurrentHashMap<>();
+
+    UpdatePlanCache(MongoConverter mongoConverter, CustomConversions customConversions){
+        this.mongoConverter=mongoConverter;
+        this.customConversions=customConversions;
+        this.idMapper=new QueryMapper(mongoConverter);
+    }
+
+    /**
+     * 根据更新计划生成update
+     * @param mongoBean mongo实体类
+     * @param updateFields 需要更新的字段（为空时更新所有不为空的字段）
+     * @return org.springframework.data.mongodb.core.query.Update 无法使用更新计划时返回null
+     */
+    Update getUpdate(MongoBean mongoBean, String[] updateFields){
+        PlanKey key=new PlanKey(mongoBean.getClass(),updateFields);
+        UpdatePlan plan=plans.get(key);
+        if(plan==null){
+            plan=this.compile(mongoBean.getClass(),updateFields);
+            plans.putIfAbsent(new PlanKey(mongoBean.getClass(),updateFields.clone()),plan);
+        }
+        return plan.apply(mongoBean);
+    }
+
+    /**
+     * 编译更新计划
+     * @param entityClass 实体类
+     * @param updateFields 需要更新的字段
+     * @return com.pdd.db.mongo.holder.UpdatePlanCache.UpdatePlan
+     */
+    private UpdatePlan compile(Class<?> entityClass, String[] updateFields){
+        if(customConversions.hasCustomWriteTarget(entityClass,Document.class)){
+            return UpdatePlan.UNSUPPORTED;
+        }
+        MongoPersistentEntity<?> entity=mongoConverter.getMappingContext().getRequiredPersistentEntity(entityClass);
+        MongoPersistentProperty idProperty=entity.getIdProperty();
+        //转换器写入顺序：主键、属性、类型标识
+        Map<String, Step> fieldSteps=new HashMap<>();
+        List<Step> allSteps=new ArrayList<>();
+        if(idProperty!=null){
+            Step step=new Step(idProperty.getFieldName(),StepType.ID,idProperty,null);
+            fieldSteps.put(step.fieldName,step);
+            allSteps.add(step);
+        }
+        List<String> unsupportedFields=new ArrayList<>();
+        for(MongoPersistentProperty property:entity){
+            if(property.equals(idProperty) || !property.isWritable()){
+                continue;
+            }
+            if(property.isAssociation() || property.getFieldName().contains(".") || !this.isSimpleProperty(property)){
+                unsupportedFields.add(property.getFieldName());
+                continue;
+            }
+            Step step=new Step(property.getFieldName(),StepType.PROPERTY,property,null);
+            fieldSteps.put(step.fieldName,step);
+            allSteps.add(step);
+        }
+        Document typeDocument=new Document();
+        mongoConverter.getTypeMapper().writeType(ClassTypeInformation.from(entityClass),typeDocument);
+        for(Map.Entry<String, Object> entry:typeDocument.entrySet()){
+            Step step=new Step(entry.getKey(),StepType.CONSTANT,null,entry.getValue());
+            fieldSteps.put(step.fieldName,step);
+            allSteps.add(step);
+        }
+
+        if(updateFields.length==0){
+            if(!unsupportedFields.isEmpty()){
+                return UpdatePlan.UNSUPPORTED;
+            }
+            return new UpdatePlan(this,entity,allSteps.toArray(new Step[0]),true);
+        }
+        Step[] steps=new Step[updateFields.length];
+        for(int i=0;i<updateFields.length;i++){
+            if(unsupportedFields.contains(updateFields[i])){
+                return UpdatePlan.UNSUPPORTED;
+            }
+            Step step=fieldSteps.get(updateFields[i]);
+            //转换器不会写入的字段，默认unset
+            steps[i]=step!=null?step:new Step(updateFields[i],StepType.CONSTANT,null,null);
+        }
+        return new UpdatePlan(this,entity,steps,false);
+    }
+
+    /**
+     * 是否为简单类型属性（转换器直接写入值，不生成嵌套文档或数组）
+     * @param property 属性
+     * @return boolean
+     */
+    private boolean isSimpleProperty(MongoPersistentProperty property){
+        return customConversions.isSimpleType(property.getType()) && !property.isEntity() && !property.isCollectionLike() && !property.isMap();
+    }
+
+    /**
+     * 转换简单类型的值（与转换器写入简单类型的方式一致）
+     * @param value 属性值
+     * @param property 属性
+     * @return java.lang.Object
+     */
+    private Object convertSimpleValue(Object value, MongoPersistentProperty property){
+        ConversionService conversionService=mongoConverter.getConversionService();
+        Class<?> targetType=property.hasExplicitWriteTarget()?property.getFieldType():Object.class;
+        if(targetType!=Object.class && conversionService.canConvert(value.getClass(),targetType)){
+            value=conversionService.convert(value,targetType);
+        }
+        Class<?> customTarget=customConversions.getCustomWriteTarget(value.getClass()).orElse(null);
+        if(customTarget!=null){
+            return conversionService.convert(value,customTarget);
+        }
+        if(value instanceof Enum){
+            return ((Enum<?>)value).name();
+        }
+        return value;
+    }
+
+    /**
+     * 更新计划
+     */
+    private static final class UpdatePlan {
+
+        /**
+         * 不支持编译的更新计划
+         */
+        static final UpdatePlan UNSUPPORTED=new UpdatePlan(null,null,null,false);
+
+        private final UpdatePlanCache cache;
+
+        private final MongoPersistentEntity<?> entity;
+
+        private final Step[] steps;
+
+        /**
+         * 是否为更新所有不为空的字段（否：更新指定字段，空值unset）
+         */
+        private final boolean allFields;
+
+        UpdatePlan(UpdatePlanCache cache, MongoPersistentEntity<?> entity, Step[] steps, boolean allFields){
+            this.cache=cache;
+            this.entity=entity;
+            this.steps=steps;
+            this.allFields=allFields;
+        }
+
+        /**
+         * 执行更新计划
+         * @param mongoBean mongo实体类
+         * @return org.springframework.data.mongodb.core.query.Update 属性值为非简单类型时返回null
+         */
+        Update apply(MongoBean mongoBean){
+            if(steps==null){
+                return null;
+            }
+            PersistentPropertyAccessor<?> accessor=entity.getPropertyAccessor(mongoBean);
+            Update update=new Update();
+            for(Step step:steps){
+                Object value;
+                if(step.type==StepType.ID){
+                    value=cache.idMapper.convertId(accessor.getProperty(step.property),step.property.getFieldType());
+                }else if(step.type==StepType.PROPERTY){
+                    value=accessor.getProperty(step.property);
+                    if(value!=null){
+                        if(!cache.customConversions.isSimpleType(value.getClass()) || ObjectUtils.isArray(value)){
+                            return null;
+                        }
+                        value=cache.convertSimpleValue(value,step.property);
+                    }
+                }else{
+                    value=step.value;
+                }
+                if(value!=null){
+                    update.set(step.fieldName,value);
+                }else if(!allFields){
+                    update.unset(step.fieldName);
+                }
+            }
+            return update;
+        }
+    }
+
+    /**
+     * 更新步骤类型
+     */
+    private enum StepType {
+        /**
+         * 主键
+         */
+        ID,
+        /**
+         * 简单类型属性
+         */
+        PROPERTY,
+        /**
+         * 常量（类型标识或不存在的字段）
+         */
+        CONSTANT
+    }
+
+    /**
+     * 更新步骤（一个字段）
+     */
+    private static final class Step {
+
+        private final String fieldName;
+
+        private final StepType type;
+
+        private final MongoPersistentProperty property;
+
+        private final Object value;
+
+        Step(String fieldName, StepType type, MongoPersistentProperty property, Object value){
+            this.fieldName=fieldName;
+            this.type=type;
+            this.property=property;
+            this.value=value;
+        }
+    }
+
+    /**
+     * 更新计划的缓存键
+     */
+    private static final class PlanKey {
+
+        private final Class<?> entityClass;
+
+        private final String[] updateFields;
+
+        private final int hash;
+
+        PlanKey(Class<?> entityClass, String[] updateFields){
+            this.entityClass=entityClass;
+            this.updateFields=updateFields;
+            this.hash=31*entityClass.hashCode()+Arrays.hashCode(updateFields);
+        }
+
+        @Override
+        public boolean equals(Object o){
+            if(this==o){
+                return true;
+            }
+            if(!(o instanceof PlanKey)){
+                return false;
+            }
+            PlanKey other=(PlanKey)o;
+            return entityClass==other.entityClass && Arrays.equals(updateFields,other.updateFields);
+        }
+
+        @Override
+        public int hashCode(){
+            return hash;
+        }
+    }
+}
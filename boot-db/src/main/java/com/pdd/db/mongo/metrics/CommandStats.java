@@ -0,0 +1,55 @@
+package com.pdd.db.mongo.metrics;
+
+import lombok.Data;
+
+/**
+ * 命令指标快照（按客户端和命令名，耗时为驱动测得的服务端往返耗时）
+ **/
+@Data
+public class CommandStats {
+
+    /**
+     * 客户端名称（default或负载配置名称）
+     */
+    private String clientName;
+
+    /**
+     * 命令名（find、getMore、insert、update、aggregate等）
+     */
+    private String commandName;
+
+    /**
+     * 执行次数
+     */
+    private long count;
+
+    /**
+     * 失败次数
+     */
+    private long failedCount;
+
+    /**
+     * 平均耗时（微秒）
+     */
+    private long meanMicros;
+
+    /**
+     * 50分位耗时（微秒）
+     */
+    private long p50Micros;
+
+    /**
+     * 95分位耗时（微秒）
+     */
+    private long p95Micros;
+
+    /**
+     * 99分位耗时（微秒）
+     */
+    private long p99Micros;
+
+    /**
+     * 最大耗时（微秒）
+     */
+    private long maxMicros;
+}
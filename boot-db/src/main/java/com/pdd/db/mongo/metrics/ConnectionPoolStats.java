@@ -0,0 +1,80 @@
+package com.pdd.db.mongo.metrics;
+
+import lombok.Data;
+
+/**
+ * 连接池指标快照（按客户端和服务地址）
+ **/
+@Data
+public class ConnectionPoolStats {
+
+    /**
+     * 客户端名称（default或负载配置名称）
+     */
+    private String clientName;
+
+    /**
+     * 服务地址
+     */
+    private String serverAddress;
+
+    /**
+     * 最大连接数
+     */
+    private int maxSize;
+
+    /**
+     * 当前连接数
+     */
+    private int size;
+
+    /**
+     * 已借出的连接数
+     */
+    private int checkedOutCount;
+
+    /**
+     * 等待队列长度（正在获取连接的线程数，包含无需等待即可获取的线程）
+     */
+    private int waitQueueSize;
+
+    /**
+     * 估算的阻塞等待线程数（等待队列长度减去空闲连接数）
+     */
+    private int waitingCount;
+
+    /**
+     * 借出连接次数
+     */
+    private long checkoutCount;
+
+    /**
+     * 获取连接等待耗时：50分位（微秒）
+     */
+    private long checkoutWaitP50Micros;
+
+    /**
+     * 获取连接等待耗时：99分位（微秒）
+     */
+    private long checkoutWaitP99Micros;
+
+    /**
+     * 获取连接等待耗时：最大值（微秒）
+     */
+    private long checkoutWaitMaxMicros;
+
+    /**
+     * 新建连接数
+     */
+    private long connectionsAdded;
+
+    /**
+     * 关闭连接数
+     */
+    private long connectionsRemoved;
+
+    /**
+     * 是否饱和
+     */
+    private boolean saturated;
+}
@@ -0,0 +1,141 @@
+package com.pdd.db.mongo.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 内存指标注册器
+ * <br>按（操作，集合）累计耗时直方图和计数，通过getSnapshot导出
+ **/
+public class DefaultMongoMetricsRegistry implements MongoMetricsRegistry {
+
+    /**
+     * 按（操作，集合）的指标
+     */
+    private final ConcurrentMap<String, Meter> meters=new ConcurrentHashMap<>();
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void recordOperation(String operation, String collectionName, long elapsedNanos, long documentCount, boolean failed) {
+        Meter meter=this.getMeter(operation,collectionName);
+        meter.latency.record(elapsedNanos);
+        meter.documentCount.add(documentCount);
+        if(failed){
+            meter.errorCount.increment();
+        }
+    }
+
+    @Override
+    public void recordScan(String operation, String collectionName, ScanMetrics scanMetrics) {
+        Meter meter=this.getMeter(operation,collectionName);
+        meter.scanCount.increment();
+        meter.scanNanos.add(scanMetrics.getElapsedNanos());
+        meter.scanDocumentCount.add(scanMetrics.getDocumentCount());
+        meter.fetchedCount.add(scanMetrics.getFetchedCount());
+        meter.decodedBytes.add(scanMetrics.getDecodedBytes());
+        meter.fetchNanos.add(scanMetrics.getFetchNanos());
+        meter.convertNanos.add(scanMetrics.getConvertNanos());
+        meter.executeNanos.add(scanMetrics.getExecuteNanos());
+    }
+
+    /**
+     * 获取指标快照
+     * @return java.util.List<com.pdd.db.mongo.metrics.OperationMetrics> 
+     */
+    public List<OperationMetrics> getSnapshot(){
+        List<OperationMetrics> snapshot=new ArrayList<>(meters.size());
+        for(Meter meter:meters.values()){
+            OperationMetrics metrics=new OperationMetrics();
+            metrics.setOperation(meter.operation);
+            metrics.setCollectionName(meter.collectionName);
+            metrics.setCount(meter.latency.getCount());
+            metrics.setErrorCount(meter.errorCount.sum());
+            metrics.setDocumentCount(meter.documentCount.sum());
+            metrics.setMeanMicros(meter.latency.getMeanMicros());
+            metrics.setP50Micros(meter.latency.getPercentileMicros(0.5));
+            metrics.setP95Micros(meter.latency.getPercentileMicros(0.95));
+            metrics.setP99Micros(meter.latency.getPercentileMicros(0.99));
+            metrics.setMaxMicros(meter.latency.getMaxMicros());
+            metrics.setDecodedBytes(meter.decodedBytes.sum());
+            metrics.setFetchMillis(meter.fetchNanos.sum()/1000000);
+            metrics.setConvertMillis(meter.convertNanos.sum()/1000000);
+            metrics.setExecuteMillis(meter.executeNanos.sum()/1000000);
+            long scanCount=meter.scanCount.sum();
+            long scanDocumentCount=meter.scanDocumentCount.sum();
+            long scanNanos=meter.scanNanos.sum();
+            metrics.setScanCount(scanCount);
+            metrics.setFetchedCount(meter.fetchedCount.sum());
+            metrics.setDocumentsPerScan(scanCount>0?scanDocumentCount/scanCount:0);
+            metrics.setDocumentsPerSecond(scanNanos>0?(long)(scanDocumentCount*1000000000d/scanNanos):0);
+            snapshot.add(metrics);
+        }
+        return snapshot;
+    }
+
+    /**
+     * 清空指标
+     * @return void 
+     */
+    public void reset(){
+        meters.clear();
+    }
+
+    /**
+     * 获取（操作，集合）的指标
+     * @param operation 操作名
+     * @param collectionName 集合名
+     * @return com.pdd.db.mongo.metrics.DefaultMongoMetricsRegistry.Meter 
+     */
+    private Meter getMeter(String operation, String collectionName){
+        String key=operation+'|'+collectionName;
+        Meter meter=meters.get(key);
+        if(meter==null){
+            meter=meters.computeIfAbsent(key,k -> new Meter(operation,collectionName));
+        }
+        return meter;
+    }
+
+    /**
+     * 单个（操作，集合）的累计指标
+     */
+    private static final class Meter {
+
+        private final String operation;
+
+        private final String collectionName;
+
+        private final LatencyHistogram latency=new LatencyHistogram();
+
+        private final LongAdder errorCount=new LongAdder();
+
+        private final LongAdder documentCount=new LongAdder();
+
+        private final LongAdder scanCount=new LongAdder();
+
+        private final LongAdder scanNanos=new LongAdder();
+
+        private final LongAdder scanDocumentCount=new LongAdder();
+
+        private final LongAdder fetchedCount=new LongAdder();
+
+        private final LongAdder decodedBytes=new LongAdder();
+
+        private final LongAdder fetchNanos=new LongAdder();
+
+        private final LongAdder convertNanos=new LongAdder();
+
+        private final LongAdder executeNanos=new LongAdder();
+
+        Meter(String operation, String collectionName){
+            this.operation=operation;
+            this.collectionName=collectionName;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.pdd.db.mongo.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 耗时直方图（按微秒的2的幂分桶，无锁累加）
+ * <br>分位数取所在桶的上界（不超过最大值），误差不超过2倍，用于发现数量级的变化
+ **/
+public class LatencyHistogram {
+
+    /**
+     * 桶数量（2^40微秒约12天）
+     */
+    private static final int BUCKET_COUNT=41;
+
+    /**
+     * 各桶计数（第i个桶：耗时小于2^i微秒）
+     */
+    private final AtomicLongArray buckets=new AtomicLongArray(BUCKET_COUNT);
+
+    private final LongAdder count=new LongAdder();
+
+    private final LongAdder totalNanos=new LongAdder();
+
+    private final LongAccumulator maxNanos=new LongAccumulator(Long::max,0);
+
+    /**
+     * 记录耗时
+     * @param nanos 纳秒
+     * @return void 
+     */
+    public void record(long nanos){
+        long micros=Math.max(nanos/1000,0);
+        int index=Math.min(64-Long.numberOfLeadingZeros(micros),BUCKET_COUNT-1);
+        buckets.incrementAndGet(index);
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * 记录次数
+     * @return long 
+     */
+    public long getCount(){
+        return count.sum();
+    }
+
+    /**
+     * 平均耗时（微秒）
+     * @return long 
+     */
+    public long getMeanMicros(){
+        long total=count.sum();
+        return total==0?0:totalNanos.sum()/total/1000;
+    }
+
+    /**
+     * 最大耗时（微秒）
+     * @return long 
+     */
+    public long getMaxMicros(){
+        return maxNanos.get()/1000;
+    }
+
+    /**
+     * 分位数耗时（微秒，取桶上界）
+     * @param percentile 分位（0-1）
+     * @return long 
+     */
+    public long getPercentileMicros(double percentile){
+        long[] snapshot=new long[BUCKET_COUNT];
+        long total=0;
+        for(int i=0;i<BUCKET_COUNT;i++){
+            snapshot[i]=buckets.get(i);
+            total+=snapshot[i];
+        }
+        if(total==0){
+            return 0;
+        }
+        long rank=(long)Math.ceil(total*percentile);
+        long seen=0;
+        for(int i=0;i<BUCKET_COUNT;i++){
+            seen+=snapshot[i];
+            if(seen>=rank){
+                return Math.min(1L<<i,this.getMaxMicros());
+            }
+        }
+        return 1L<<(BUCKET_COUNT-1);
+    }
+}
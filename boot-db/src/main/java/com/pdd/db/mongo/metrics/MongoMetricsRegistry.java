@@ -0,0 +1,35 @@
+package com.pdd.db.mongo.metrics;
+
+/**
+ * mongo操作指标注册器
+ * <br>MongoHolder在每次操作结束后回调；未启用时MongoHolder不计时、不回调
+ * <br>可注册自定义实现的bean对接外部监控系统，未注册时按配置使用默认实现
+ **/
+public interface MongoMetricsRegistry {
+
+    /**
+     * 是否启用
+     * @return boolean 
+     */
+    boolean isEnabled();
+
+    /**
+     * 记录一次操作
+     * @param operation 操作名（MongoHolder方法名）
+     * @param collectionName 集合名
+     * @param elapsedNanos 耗时（纳秒）
+     * @param documentCount 返回或影响的记录数
+     * @param failed 是否失败
+     * @return void 
+     */
+    void recordOperation(String operation, String collectionName, long elapsedNanos, long documentCount, boolean failed);
+
+    /**
+     * 记录一次游标扫描的耗时分布和记录数（拉取数、返回数，用于计算每次扫描的吞吐量）
+     * @param operation 操作名（MongoHolder方法名）
+     * @param collectionName 集合名
+     * @param scanMetrics 扫描指标
+     * @return void 
+     */
+    void recordScan(String operation, String collectionName, ScanMetrics scanMetrics);
+}
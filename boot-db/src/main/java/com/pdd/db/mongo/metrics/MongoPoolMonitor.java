@@ -0,0 +1,350 @@
+package com.pdd.db.mongo.metrics;
+
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import com.mongodb.event.ConnectionAddedEvent;
+import com.mongodb.event.ConnectionCheckedInEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolClosedEvent;
+import com.mongodb.event.ConnectionPoolListener;
+import com.mongodb.event.ConnectionPoolOpenedEvent;
+import com.mongodb.event.ConnectionPoolWaitQueueEnteredEvent;
+import com.mongodb.event.ConnectionPoolWaitQueueExitedEvent;
+import com.mongodb.event.ConnectionRemovedEvent;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 连接池和命令监控（一个客户端）
+ * <br>注册为驱动的连接池监听和命令监听，累计各服务地址的连接池状态、获取连接等待耗时、连接新建关闭次数和各命令的耗时
+ * <br>获取连接时驱动在调用线程中依次回调进入等待队列、借出连接、退出等待队列，等待耗时按线程计算
+ * <br>饱和监听器的异常不影响驱动获取连接，记录告警日志（监听器类名和异常）
+ **/
+@Slf4j
+public class MongoPoolMonitor implements ConnectionPoolListener, CommandListener {
+
+    /**
+     * 客户端名称
+     */
+    private final String clientName;
+
+    /**
+     * 饱和阈值（阻塞等待线程数，0为不检测）
+     */
+    private final int saturationThreshold;
+
+    /**
+     * 饱和告警
+     */
+    private final List<MongoPoolSaturationListener> saturationListeners;
+
+    /**
+     * 各服务地址的连接池状态
+     */
+    private final ConcurrentMap<ServerId, PoolState> pools=new ConcurrentHashMap<>();
+
+    /**
+     * 各命令的耗时
+     */
+    private final ConcurrentMap<String, CommandMeter> commands=new ConcurrentHashMap<>();
+
+    /**
+     * 当前线程进入等待队列的时间（纳秒）
+     */
+    private final ThreadLocal<long[]> waitStart=ThreadLocal.withInitial(() -> new long[1]);
+
+    public MongoPoolMonitor(String clientName, int saturationThreshold, List<MongoPoolSaturationListener> saturationListeners){
+        this.clientName=clientName;
+        this.saturationThreshold=saturationThreshold;
+        this.saturationListeners=saturationListeners;
+    }
+
+    /**
+     * 获取客户端名称
+     * @return java.lang.String
+     */
+    public String getClientName(){
+        return clientName;
+    }
+
+    /**
+     * 是否有连接池饱和（按当前等待线程数实时判断）
+     * @return boolean
+     */
+    public boolean isSaturated(){
+        for(PoolState pool:pools.values()){
+            if(this.isSaturated(pool)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 获取连接池指标
+     * @return java.util.List<com.pdd.db.mongo.metrics.ConnectionPoolStats>
+     */
+    public List<ConnectionPoolStats> getPoolStats(){
+        List<ConnectionPoolStats> stats=new ArrayList<>(pools.size());
+        for(PoolState pool:pools.values()){
+            stats.add(this.getPoolStats(pool));
+        }
+        return stats;
+    }
+
+    /**
+     * 获取命令指标
+     * @return java.util.List<com.pdd.db.mongo.metrics.CommandStats>
+     */
+    public List<CommandStats> getCommandStats(){
+        List<CommandStats> stats=new ArrayList<>(commands.size());
+        for(CommandMeter meter:commands.values()){
+            CommandStats commandStats=new CommandStats();
+            commandStats.setClientName(clientName);
+            commandStats.setCommandName(meter.commandName);
+            commandStats.setCount(meter.latency.getCount());
+            commandStats.setFailedCount(meter.failedCount.sum());
+            commandStats.setMeanMicros(meter.latency.getMeanMicros());
+            commandStats.setP50Micros(meter.latency.getPercentileMicros(0.5));
+            commandStats.setP95Micros(meter.latency.getPercentileMicros(0.95));
+            commandStats.setP99Micros(meter.latency.getPercentileMicros(0.99));
+            commandStats.setMaxMicros(meter.latency.getMaxMicros());
+            stats.add(commandStats);
+        }
+        return stats;
+    }
+
+    /**
+     * 清空命令指标
+     * @return void
+     */
+    public void resetCommandStats(){
+        commands.clear();
+    }
+
+    //--------------------【连接池监听】--------------------
+
+    @Override
+    public void connectionPoolOpened(ConnectionPoolOpenedEvent event) {
+        this.getPool(event.getServerId()).maxSize=event.getSettings().getMaxSize();
+    }
+
+    @Override
+    public void connectionPoolClosed(ConnectionPoolClosedEvent event) {
+        pools.remove(event.getServerId());
+    }
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+        PoolState pool=this.getPool(event.getConnectionId().getServerId());
+        pool.checkedOut.incrementAndGet();
+        pool.checkoutCount.increment();
+    }
+
+    @Override
+    public void connectionCheckedIn(ConnectionCheckedInEvent event) {
+        PoolState pool=this.getPool(event.getConnectionId().getServerId());
+        pool.checkedOut.decrementAndGet();
+        this.checkSaturation(pool);
+    }
+
+    @Override
+    public void waitQueueEntered(ConnectionPoolWaitQueueEnteredEvent event) {
+        waitStart.get()[0]=System.nanoTime();
+        PoolState pool=this.getPool(event.getServerId());
+        pool.waitQueue.incrementAndGet();
+        this.checkSaturation(pool);
+    }
+
+    @Override
+    public void waitQueueExited(ConnectionPoolWaitQueueExitedEvent event) {
+        PoolState pool=this.getPool(event.getServerId());
+        pool.waitQueue.decrementAndGet();
+        long start=waitStart.get()[0];
+        if(start!=0){
+            pool.checkoutWait.record(System.nanoTime()-start);
+            waitStart.get()[0]=0;
+        }
+        this.checkSaturation(pool);
+    }
+
+    @Override
+    public void connectionAdded(ConnectionAddedEvent event) {
+        PoolState pool=this.getPool(event.getConnectionId().getServerId());
+        pool.size.incrementAndGet();
+        pool.connectionsAdded.increment();
+    }
+
+    @Override
+    public void connectionRemoved(ConnectionRemovedEvent event) {
+        PoolState pool=this.getPool(event.getConnectionId().getServerId());
+        pool.size.decrementAndGet();
+        pool.connectionsRemoved.increment();
+    }
+
+    //--------------------【命令监听】--------------------
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        this.getCommand(event.getCommandName()).latency.record(event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        CommandMeter meter=this.getCommand(event.getCommandName());
+        meter.latency.record(event.getElapsedTime(TimeUnit.NANOSECONDS));
+        meter.failedCount.increment();
+    }
+
+    /**
+     * 连接池是否饱和
+     * @param pool 连接池状态
+     * @return boolean
+     */
+    private boolean isSaturated(PoolState pool){
+        return saturationThreshold>0 && pool.getWaitingCount()>=saturationThreshold;
+    }
+
+    /**
+     * 检查饱和状态，状态变化时回调告警
+     * <br>saturated标志只用于告警去重（每次切换回调一次），饱和判断以实时等待线程数为准；
+     * 切换并回调后重新读取等待线程数，期间状态又变化时再次切换，保证标志与实际状态一致
+     * @param pool 连接池状态
+     * @return void
+     */
+    private void checkSaturation(PoolState pool){
+        if(saturationThreshold<=0){
+            return;
+        }
+        while (true) {
+            boolean saturated=this.isSaturated(pool);
+            if(saturated==pool.saturated.get()){
+                return;
+            }
+            if(pool.saturated.compareAndSet(!saturated,saturated)){
+                this.notifySaturation(pool,saturated);
+            }
+        }
+    }
+
+    /**
+     * 回调饱和告警
+     * @param pool 连接池状态
+     * @param saturated 是否饱和
+     * @return void
+     */
+    private void notifySaturation(PoolState pool, boolean saturated){
+        ConnectionPoolStats stats=this.getPoolStats(pool);
+        stats.setSaturated(saturated);
+        for(MongoPoolSaturationListener listener:saturationListeners){
+            //告警异常不影响驱动获取连接
+            try {
+                if(saturated){
+                    listener.onSaturated(stats);
+                }else{
+                    listener.onRecovered(stats);
+                }
+            } catch (RuntimeException e) {
+                log.warn("mongo客户端[{}]连接池[{}]{}监听器[{}]执行失败",clientName,pool.serverId.getAddress(),saturated?"饱和":"恢复",
+                        listener.getClass().getName(),e);
+            }
+        }
+    }
+
+    private ConnectionPoolStats getPoolStats(PoolState pool){
+        ConnectionPoolStats stats=new ConnectionPoolStats();
+        stats.setClientName(clientName);
+        stats.setServerAddress(pool.serverId.getAddress().toString());
+        stats.setMaxSize(pool.maxSize);
+        stats.setSize(pool.size.get());
+        stats.setCheckedOutCount(pool.checkedOut.get());
+        stats.setWaitQueueSize(pool.waitQueue.get());
+        stats.setWaitingCount(pool.getWaitingCount());
+        stats.setCheckoutCount(pool.checkoutCount.sum());
+        stats.setCheckoutWaitP50Micros(pool.checkoutWait.getPercentileMicros(0.5));
+        stats.setCheckoutWaitP99Micros(pool.checkoutWait.getPercentileMicros(0.99));
+        stats.setCheckoutWaitMaxMicros(pool.checkoutWait.getMaxMicros());
+        stats.setConnectionsAdded(pool.connectionsAdded.sum());
+        stats.setConnectionsRemoved(pool.connectionsRemoved.sum());
+        stats.setSaturated(this.isSaturated(pool));
+        return stats;
+    }
+
+    private PoolState getPool(ServerId serverId){
+        return pools.computeIfAbsent(serverId,PoolState::new);
+    }
+
+    private CommandMeter getCommand(String commandName){
+        return commands.computeIfAbsent(commandName,CommandMeter::new);
+    }
+
+    /**
+     * 连接池状态（一个服务地址）
+     */
+    private static final class PoolState {
+
+        private final ServerId serverId;
+
+        private volatile int maxSize;
+
+        private final AtomicInteger size=new AtomicInteger();
+
+        private final AtomicInteger checkedOut=new AtomicInteger();
+
+        private final AtomicInteger waitQueue=new AtomicInteger();
+
+        private final LongAdder checkoutCount=new LongAdder();
+
+        private final LongAdder connectionsAdded=new LongAdder();
+
+        private final LongAdder connectionsRemoved=new LongAdder();
+
+        private final LatencyHistogram checkoutWait=new LatencyHistogram();
+
+        private final AtomicBoolean saturated=new AtomicBoolean();
+
+        PoolState(ServerId serverId){
+            this.serverId=serverId;
+        }
+
+        /**
+         * 估算的阻塞等待线程数（等待队列中超出空闲连接数的部分）
+         * @return int
+         */
+        int getWaitingCount(){
+            int idle=Math.max(maxSize-checkedOut.get(),0);
+            return Math.max(waitQueue.get()-idle,0);
+        }
+    }
+
+    /**
+     * 命令耗时（一个命令名）
+     */
+    private static final class CommandMeter {
+
+        private final String commandName;
+
+        private final LatencyHistogram latency=new LatencyHistogram();
+
+        private final LongAdder failedCount=new LongAdder();
+
+        CommandMeter(String commandName){
+            this.commandName=commandName;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.pdd.db.mongo.metrics;
+
+import com.mongodb.MongoWaitQueueFullException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 连接池监控（所有客户端）
+ * <br>默认客户端和每个负载配置的客户端各有一个监控，按客户端名称获取
+ * <br>开启快速失败时，客户端的连接池饱和后MongoHolder不再发起新的操作，直接抛出MongoWaitQueueFullException，
+ * 避免请求在等待队列中堆积到获取连接超时
+ **/
+public class MongoPoolMonitors {
+
+    /**
+     * 默认客户端名称
+     */
+    public static final String DEFAULT_CLIENT="default";
+
+    /**
+     * 饱和阈值（阻塞等待线程数，0为不检测）
+     */
+    private final int saturationThreshold;
+
+    /**
+     * 饱和时是否快速失败
+     */
+    private final boolean fastFail;
+
+    /**
+     * 饱和告警
+     */
+    private final List<MongoPoolSaturationListener> saturationListeners;
+
+    /**
+     * 客户端名称对应的监控
+     */
+    private final Map<String, MongoPoolMonitor> monitors=new ConcurrentHashMap<>();
+
+    public MongoPoolMonitors(int saturationThreshold, boolean fastFail, List<MongoPoolSaturationListener> saturationListeners){
+        this.saturationThreshold=saturationThreshold;
+        this.fastFail=fastFail;
+        this.saturationListeners=saturationListeners;
+    }
+
+    /**
+     * 创建客户端的监控（创建客户端时注册为连接池监听和命令监听）
+     * @param clientName 客户端名称
+     * @return com.pdd.db.mongo.metrics.MongoPoolMonitor
+     */
+    public MongoPoolMonitor create(String clientName){
+        return monitors.computeIfAbsent(clientName,k -> new MongoPoolMonitor(k,saturationThreshold,saturationListeners));
+    }
+
+    /**
+     * 获取客户端的监控
+     * @param clientName 客户端名称
+     * @return com.pdd.db.mongo.metrics.MongoPoolMonitor 未创建时返回null
+     */
+    public MongoPoolMonitor getMonitor(String clientName){
+        return monitors.get(clientName);
+    }
+
+    /**
+     * 获取所有客户端的连接池指标
+     * @return java.util.List<com.pdd.db.mongo.metrics.ConnectionPoolStats>
+     */
+    public List<ConnectionPoolStats> getPoolStats(){
+        List<ConnectionPoolStats> stats=new ArrayList<>();
+        for(MongoPoolMonitor monitor:monitors.values()){
+            stats.addAll(monitor.getPoolStats());
+        }
+        return stats;
+    }
+
+    /**
+     * 获取所有客户端的命令指标
+     * @return java.util.List<com.pdd.db.mongo.metrics.CommandStats>
+     */
+    public List<CommandStats> getCommandStats(){
+        List<CommandStats> stats=new ArrayList<>();
+        for(MongoPoolMonitor monitor:monitors.values()){
+            stats.addAll(monitor.getCommandStats());
+        }
+        return stats;
+    }
+
+    /**
+     * 检查客户端是否可以发起操作（开启快速失败且连接池饱和时抛出异常）
+     * @param clientName 客户端名称（为空时为默认客户端）
+     * @return void
+     */
+    public void checkSaturation(String clientName){
+        if(!fastFail){
+            return;
+        }
+        MongoPoolMonitor monitor=monitors.get(clientName!=null?clientName:DEFAULT_CLIENT);
+        if(monitor!=null && monitor.isSaturated()){
+            throw new MongoWaitQueueFullException("连接池已饱和（阻塞等待线程数达到"+saturationThreshold+"），客户端["+monitor.getClientName()+"]快速失败");
+        }
+    }
+}
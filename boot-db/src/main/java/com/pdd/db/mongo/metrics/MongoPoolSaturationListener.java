@@ -0,0 +1,23 @@
+package com.pdd.db.mongo.metrics;
+
+/**
+ * 连接池饱和告警
+ * <br>注册此类型的bean后，连接池阻塞等待线程数达到阈值、恢复到阈值以下时回调（在驱动获取连接的线程中执行，需快速返回）
+ **/
+public interface MongoPoolSaturationListener {
+
+    /**
+     * 连接池饱和
+     * @param stats 饱和时的连接池指标
+     * @return void 
+     */
+    void onSaturated(ConnectionPoolStats stats);
+
+    /**
+     * 连接池恢复
+     * @param stats 恢复时的连接池指标
+     * @return void 
+     */
+    default void onRecovered(ConnectionPoolStats stats){
+    }
+}
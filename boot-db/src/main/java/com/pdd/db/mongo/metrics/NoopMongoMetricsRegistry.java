@@ -0,0 +1,20 @@
+package com.pdd.db.mongo.metrics;
+
+/**
+ * 不记录指标的注册器（默认）
+ **/
+public class NoopMongoMetricsRegistry implements MongoMetricsRegistry {
+
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+
+    @Override
+    public void recordOperation(String operation, String collectionName, long elapsedNanos, long documentCount, boolean failed) {
+    }
+
+    @Override
+    public void recordScan(String operation, String collectionName, ScanMetrics scanMetrics) {
+    }
+}
@@ -0,0 +1,100 @@
+package com.pdd.db.mongo.metrics;
+
+import lombok.Data;
+
+/**
+ * 操作指标快照（按操作和集合）
+ **/
+@Data
+public class OperationMetrics {
+
+    /**
+     * 操作名
+     */
+    private String operation;
+
+    /**
+     * 集合名
+     */
+    private String collectionName;
+
+    /**
+     * 调用次数
+     */
+    private long count;
+
+    /**
+     * 失败次数
+     */
+    private long errorCount;
+
+    /**
+     * 返回或影响的记录数
+     */
+    private long documentCount;
+
+    /**
+     * 平均耗时（微秒）
+     */
+    private long meanMicros;
+
+    /**
+     * 50分位耗时（微秒）
+     */
+    private long p50Micros;
+
+    /**
+     * 95分位耗时（微秒）
+     */
+    private long p95Micros;
+
+    /**
+     * 99分位耗时（微秒）
+     */
+    private long p99Micros;
+
+    /**
+     * 最大耗时（微秒）
+     */
+    private long maxMicros;
+
+    /**
+     * 游标扫描：扫描次数
+     */
+    private long scanCount;
+
+    /**
+     * 游标扫描：从游标拉取的记录数（预取扫描提前结束时可能多于返回的记录数）
+     */
+    private long fetchedCount;
+
+    /**
+     * 游标扫描：平均每次扫描返回的记录数
+     */
+    private long documentsPerScan;
+
+    /**
+     * 游标扫描：吞吐量（返回的记录数/扫描总耗时，每秒记录数）
+     */
+    private long documentsPerSecond;
+
+    /**
+     * 游标扫描：原始字节数
+     */
+    private long decodedBytes;
+
+    /**
+     * 游标扫描：拉取耗时（毫秒）
+     */
+    private long fetchMillis;
+
+    /**
+     * 游标扫描：转换器耗时（毫秒）
+     */
+    private long convertMillis;
+
+    /**
+     * 游标扫描：执行器耗时（毫秒）
+     */
+    private long executeMillis;
+}
@@ -0,0 +1,166 @@
+package com.pdd.db.mongo.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 游标扫描指标（一次扫描：拉取、转换、执行器耗时分开统计，拉取和交给执行器的记录数分开统计）
+ * <br>拉取耗时为游标等待服务端返回数据的时间；未启用时所有方法不做任何事
+ * <br>预取扫描中后台线程拉取的记录可能多于交给执行器的记录（执行器提前结束时）
+ * <br>并行扫描和预取扫描中会被多个线程同时累加
+ **/
+public class ScanMetrics {
+
+    /**
+     * 是否启用
+     */
+    private final boolean enabled;
+
+    /**
+     * 扫描开始时间（纳秒，未启用时为0）
+     */
+    private final long startNanos;
+
+    /**
+     * 交给执行器（返回）的记录数
+     */
+    private final LongAdder documentCount=new LongAdder();
+
+    /**
+     * 从游标拉取（扫描）的记录数
+     */
+    private final LongAdder fetchedCount=new LongAdder();
+
+    /**
+     * 原始字节数（只有原始BSON扫描可获取）
+     */
+    private final LongAdder decodedBytes=new LongAdder();
+
+    /**
+     * 游标拉取耗时（纳秒）
+     */
+    private final LongAdder fetchNanos=new LongAdder();
+
+    /**
+     * 转换器耗时（纳秒）
+     */
+    private final LongAdder convertNanos=new LongAdder();
+
+    /**
+     * 执行器耗时（纳秒）
+     */
+    private final LongAdder executeNanos=new LongAdder();
+
+    public ScanMetrics(boolean enabled){
+        this.enabled=enabled;
+        this.startNanos=enabled?System.nanoTime():0;
+    }
+
+    /**
+     * 当前时间（未启用时返回0，不调用系统时钟）
+     * @return long 纳秒
+     */
+    public long now(){
+        return enabled?System.nanoTime():0;
+    }
+
+    /**
+     * 累加一条记录
+     * @param fetchNanos 拉取耗时
+     * @param convertNanos 转换耗时
+     * @param executeNanos 执行器耗时
+     * @return void 
+     */
+    public void add(long fetchNanos, long convertNanos, long executeNanos){
+        if(!enabled){
+            return;
+        }
+        this.documentCount.increment();
+        this.fetchedCount.increment();
+        this.fetchNanos.add(fetchNanos);
+        this.convertNanos.add(convertNanos);
+        this.executeNanos.add(executeNanos);
+    }
+
+    /**
+     * 累加原始字节数
+     * @param bytes 字节数
+     * @return void 
+     */
+    public void addBytes(long bytes){
+        if(enabled){
+            decodedBytes.add(bytes);
+        }
+    }
+
+    /**
+     * 累加一条记录的拉取耗时和拉取记录数
+     * @param nanos 纳秒
+     * @return void 
+     */
+    public void addFetch(long nanos){
+        if(enabled){
+            fetchedCount.increment();
+            fetchNanos.add(nanos);
+        }
+    }
+
+    /**
+     * 累加转换耗时
+     * @param nanos 纳秒
+     * @return void 
+     */
+    public void addConvert(long nanos){
+        if(enabled){
+            convertNanos.add(nanos);
+        }
+    }
+
+    /**
+     * 累加执行器耗时和记录数（批量执行器按批累加）
+     * @param nanos 纳秒
+     * @param documents 记录数
+     * @return void 
+     */
+    public void addExecute(long nanos, long documents){
+        if(enabled){
+            executeNanos.add(nanos);
+            documentCount.add(documents);
+        }
+    }
+
+    public boolean isEnabled(){
+        return enabled;
+    }
+
+    public long getDocumentCount(){
+        return documentCount.sum();
+    }
+
+    public long getFetchedCount(){
+        return fetchedCount.sum();
+    }
+
+    /**
+     * 扫描开始至今的耗时
+     * @return long 纳秒（未启用时为0）
+     */
+    public long getElapsedNanos(){
+        return enabled?System.nanoTime()-startNanos:0;
+    }
+
+    public long getDecodedBytes(){
+        return decodedBytes.sum();
+    }
+
+    public long getFetchNanos(){
+        return fetchNanos.sum();
+    }
+
+    public long getConvertNanos(){
+        return convertNanos.sum();
+    }
+
+    public long getExecuteNanos(){
+        return executeNanos.sum();
+    }
+}
@@ -0,0 +1,109 @@
+package com.pdd.db.mongo.holder;
+
+import org.bson.Document;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+public class IdBatchLoaderTest {
+
+    private ScheduledExecutorService scheduler;
+
+    private ExecutorService workerPool;
+
+    @Before
+    public void setUp(){
+        scheduler=Executors.newSingleThreadScheduledExecutor(r -> new Thread(r,"test-timer"));
+        workerPool=Executors.newFixedThreadPool(2,r -> new Thread(r,"test-worker"));
+    }
+
+    @After
+    public void tearDown(){
+        scheduler.shutdownNow();
+        workerPool.shutdownNow();
+    }
+
+    /**
+     * 按主键返回文档的模拟查询（记录查询次数和执行线程）
+     */
+    private Function<Collection<Object>, List<Document>> finder(AtomicInteger queries, Set<String> threadNames){
+        return ids -> {
+            queries.incrementAndGet();
+            threadNames.add(Thread.currentThread().getName());
+            List<Document> documents=new ArrayList<>(ids.size());
+            for(Object id:ids){
+                documents.add(new Document("_id",id).append("name","user"+id));
+            }
+            return documents;
+        };
+    }
+
+    @Test
+    public void concurrentLoadTest() throws Exception{
+        AtomicInteger queries=new AtomicInteger();
+        //窗口远长于测试时间，只按条数触发查询，与调度时机无关
+        IdBatchLoader loader=new IdBatchLoader(scheduler,workerPool,TimeUnit.HOURS.toMillis(1),100,this.finder(queries,ConcurrentHashMap.newKeySet()));
+        int lookups=5000;
+        ExecutorService callers=Executors.newFixedThreadPool(200);
+        try {
+            CountDownLatch start=new CountDownLatch(1);
+            List<Future<Document>> futures=new ArrayList<>(lookups);
+            for(int i=0;i<lookups;i++){
+                int id=i;
+                futures.add(callers.submit(() -> {
+                    start.await();
+                    return loader.load(id);
+                }));
+            }
+            start.countDown();
+            for(int i=0;i<lookups;i++){
+                Assert.assertEquals("user"+i,futures.get(i).get().getString("name"));
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        Assert.assertEquals(lookups/100,queries.get());
+    }
+
+    @Test
+    public void windowFlushTest(){
+        AtomicInteger queries=new AtomicInteger();
+        Set<String> threadNames=ConcurrentHashMap.newKeySet();
+        IdBatchLoader loader=new IdBatchLoader(scheduler,workerPool,2,100,this.finder(queries,threadNames));
+        Assert.assertEquals("user1",loader.load(1).getString("name"));
+        Assert.assertEquals(1,queries.get());
+        //窗口到期的查询在查询线程池执行，不占用调度线程
+        Assert.assertEquals(Collections.singleton("test-worker"),threadNames);
+    }
+
+    @Test
+    public void missingAndErrorTest(){
+        IdBatchLoader missing=new IdBatchLoader(scheduler,workerPool,2,100,ids -> Collections.emptyList());
+        Assert.assertNull(missing.load(1));
+        IdBatchLoader failing=new IdBatchLoader(scheduler,workerPool,2,100,ids -> {
+            throw new IllegalStateException("down");
+        });
+        try {
+            failing.load(1);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("down",e.getMessage());
+        }
+    }
+}
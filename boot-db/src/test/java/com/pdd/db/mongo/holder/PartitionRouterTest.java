@@ -0,0 +1,149 @@
+package com.pdd.db.mongo.holder;
+
+import com.pdd.db.mongo.bean.MongoPartition;
+import com.pdd.db.mongo.bean.PartitionUnit;
+import org.bson.Document;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class PartitionRouterTest {
+
+    @MongoPartition(unit = PartitionUnit.DAY)
+    private static class DayLog {
+    }
+
+    @MongoPartition
+    private static class MonthLog {
+    }
+
+    @MongoPartition(unit = PartitionUnit.YEAR, pattern = "yyyy-MM-dd")
+    private static class YearLog {
+    }
+
+    private PartitionRouter router(Class<?> cls){
+        return new PartitionRouter("t_log","createDate","createDate",cls.getAnnotation(MongoPartition.class));
+    }
+
+    /**
+     * 按月分区，已存在2019年12月至2020年3月的分区
+     */
+    private PartitionRouter monthRouter(){
+        PartitionRouter router=this.router(MonthLog.class);
+        router.refresh(Arrays.asList("t_log_202003","t_log_201912","t_log_202001","t_log_202002","t_log","t_log_2020","t_log_abcdef","t_user"));
+        return router;
+    }
+
+    private Date date(int year, int month, int day){
+        return Date.from(LocalDate.of(year,month,day).atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    @Test
+    public void suffixTest(){
+        Assert.assertEquals("t_log_20200115",this.router(DayLog.class).getCollectionName(20200115));
+        Assert.assertEquals("t_log_20200115",this.router(DayLog.class).getCollectionName(this.date(2020,1,15)));
+        Assert.assertEquals("t_log_202001",this.router(MonthLog.class).getCollectionName(20200115));
+        Assert.assertEquals("t_log_202001",this.router(MonthLog.class).getCollectionName("20200115"));
+        Assert.assertEquals("t_log_202001",this.router(MonthLog.class).getCollectionName(this.date(2020,1,15)));
+        Assert.assertEquals("t_log_2020",this.router(YearLog.class).getCollectionName("2020-01-15"));
+        Assert.assertEquals("t_log_2020",this.router(YearLog.class).getCollectionName(this.date(2020,12,31)));
+        try {
+            this.router(MonthLog.class).getCollectionName("2020-01");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            //写入时分区字段格式有误
+        }
+    }
+
+    @Test
+    public void boundsTest(){
+        PartitionRouter router=this.monthRouter();
+        List<String> all=Arrays.asList("t_log_201912","t_log_202001","t_log_202002","t_log_202003");
+        Assert.assertEquals(all,router.getPartitions(new Document()));
+        Assert.assertEquals(Collections.singletonList("t_log_202001"),router.getPartitions(new Document("createDate",20200110)));
+        Assert.assertEquals(Arrays.asList("t_log_202001","t_log_202002","t_log_202003"),
+                router.getPartitions(Document.parse("{createDate:{$gte:20200110,$lt:20200301}}")));
+        Assert.assertEquals(Arrays.asList("t_log_202002","t_log_202003"),router.getPartitions(Document.parse("{createDate:{$gt:20200201}}")));
+        Assert.assertEquals(Arrays.asList("t_log_201912","t_log_202001"),router.getPartitions(Document.parse("{createDate:{$lte:20200131}}")));
+        //$and中的条件取最窄范围
+        Assert.assertEquals(Collections.singletonList("t_log_202002"),
+                router.getPartitions(Document.parse("{$and:[{createDate:{$gte:20200101}},{createDate:{$gte:20200201,$lt:20200215}}],userId:1}")));
+        //$in取最小、最大值
+        Assert.assertEquals(Arrays.asList("t_log_201912","t_log_202001","t_log_202002"),
+                router.getPartitions(Document.parse("{createDate:{$in:[20200203,20191205,20200101]}}")));
+        //其他字段的条件不限制范围
+        Assert.assertEquals(all,router.getPartitions(Document.parse("{updateDate:{$gte:20200301}}")));
+    }
+
+    @Test
+    public void unparsableBoundsTest(){
+        PartitionRouter router=this.monthRouter();
+        List<String> all=Arrays.asList("t_log_201912","t_log_202001","t_log_202002","t_log_202003");
+        Assert.assertEquals(all,router.getPartitions(Document.parse("{createDate:{$gte:0,$lt:99999999}}")));
+        Assert.assertEquals(all,router.getPartitions(new Document("createDate",Pattern.compile("^2020"))));
+        Assert.assertEquals(Arrays.asList("t_log_202002","t_log_202003"),router.getPartitions(Document.parse("{createDate:{$gte:20200201,$lt:99999999}}")));
+        //$in中无法解析的值忽略
+        Assert.assertEquals(Collections.singletonList("t_log_202002"),router.getPartitions(Document.parse("{createDate:{$in:[0,20200215]}}")));
+    }
+
+    @Test
+    public void partitionsBeforeTest(){
+        PartitionRouter router=this.monthRouter();
+        Assert.assertEquals(Arrays.asList("t_log_201912","t_log_202001"),router.getPartitionsBefore(20200215));
+        Assert.assertEquals(Collections.emptyList(),router.getPartitionsBefore(20191231));
+        Assert.assertEquals(4,router.getPartitionsBefore(this.date(2021,1,1)).size());
+    }
+
+    @Test
+    public void knownPartitionsTest(){
+        PartitionRouter router=this.router(MonthLog.class);
+        Assert.assertTrue(router.needsRefresh(System.currentTimeMillis()));
+        router.refresh(Collections.singletonList("t_log_202001"));
+        Assert.assertFalse(router.needsRefresh(System.currentTimeMillis()));
+        router.addPartition(router.getCollectionName(20200301));
+        Assert.assertEquals(Arrays.asList("t_log_202001","t_log_202003"),router.getPartitions(new Document()));
+        router.removePartition("t_log_202001");
+        Assert.assertEquals(Collections.singletonList("t_log_202003"),router.getPartitions(new Document()));
+        //刷新与缓存合并
+        router.refresh(Collections.singletonList("t_log_202002"));
+        Assert.assertEquals(Arrays.asList("t_log_202002","t_log_202003"),router.getPartitions(new Document()));
+    }
+
+    @Test
+    public void refreshInsideRangeTest(){
+        PartitionRouter router=this.router(MonthLog.class);
+        router.refresh(Arrays.asList("t_log_202001","t_log_202003"));
+        long now=System.currentTimeMillis();
+        Assert.assertFalse(router.needsRefresh(now));
+        //其他进程补写了缓存范围内的分区，间隔到期后查询范围在缓存内也刷新，且只有一个线程刷新
+        Assert.assertTrue(router.needsRefresh(now+60000));
+        Assert.assertFalse(router.needsRefresh(now+60000));
+        router.refresh(Arrays.asList("t_log_202001","t_log_202002","t_log_202003"));
+        Assert.assertEquals(Collections.singletonList("t_log_202002"),router.getPartitions(new Document("createDate",20200215)));
+    }
+
+    @Test
+    public void comparatorTest(){
+        List<Document> documents=new ArrayList<>(Arrays.asList(
+                new Document("a",1).append("b",2),
+                new Document("a",2).append("b",1),
+                new Document("b",3),
+                new Document("a",2).append("b",0),
+                new Document("a",1L).append("b",1)));
+        documents.sort(PartitionRouter.getComparator(Document.parse("{a:-1,b:1}")));
+        List<String> result=new ArrayList<>();
+        for(Document document:documents){
+            result.add(document.get("a")+"/"+document.get("b"));
+        }
+        //降序时空值在最后，整数和长整数按数值比较
+        Assert.assertEquals(Arrays.asList("2/0","2/1","1/1","1/2","null/3"),result);
+    }
+}
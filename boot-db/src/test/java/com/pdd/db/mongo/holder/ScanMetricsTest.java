@@ -0,0 +1,121 @@
+package com.pdd.db.mongo.holder;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.ServerCursor;
+import com.mongodb.client.MongoCursor;
+import com.pdd.db.mongo.metrics.DefaultMongoMetricsRegistry;
+import com.pdd.db.mongo.metrics.OperationMetrics;
+import com.pdd.db.mongo.metrics.ScanMetrics;
+import org.bson.Document;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ScanMetricsTest {
+
+    private ExecutorService prefetchPool;
+
+    @Before
+    public void setUp(){
+        prefetchPool=Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown(){
+        prefetchPool.shutdownNow();
+    }
+
+    /**
+     * 内存中的游标
+     */
+    private static final class ListCursor implements MongoCursor<Document> {
+
+        private final Iterator<Document> iterator;
+
+        private ListCursor(int count){
+            List<Document> documents=new ArrayList<>(count);
+            for(int i=0;i<count;i++){
+                documents.add(new Document("_id",i));
+            }
+            this.iterator=documents.iterator();
+        }
+
+        @Override
+        public void close(){
+        }
+
+        @Override
+        public boolean hasNext(){
+            return iterator.hasNext();
+        }
+
+        @Override
+        public Document next(){
+            return iterator.next();
+        }
+
+        @Override
+        public Document tryNext(){
+            return iterator.hasNext()?iterator.next():null;
+        }
+
+        @Override
+        public ServerCursor getServerCursor(){
+            return null;
+        }
+
+        @Override
+        public ServerAddress getServerAddress(){
+            return null;
+        }
+    }
+
+    @Test
+    public void cursorIteratorTest(){
+        ScanMetrics scanMetrics=new ScanMetrics(true);
+        CursorIterator<Integer> iterator=new CursorIterator<>(new ListCursor(25),document -> document.getInteger("_id"),scanMetrics,null);
+        while (iterator.hasNext()) {
+            iterator.next();
+        }
+        Assert.assertEquals(25,scanMetrics.getDocumentCount());
+        Assert.assertEquals(25,scanMetrics.getFetchedCount());
+    }
+
+    @Test
+    public void prefetchTest() throws Exception{
+        ScanMetrics scanMetrics=new ScanMetrics(true);
+        try (CursorPrefetcher<Integer> prefetcher = new CursorPrefetcher<>(new ListCursor(100),document -> document.getInteger("_id"),10,1,scanMetrics,prefetchPool)) {
+            List<Integer> chunk=prefetcher.next();
+            scanMetrics.addExecute(0,chunk.size());
+        }
+        //只处理了第一批，后台线程可能已拉取后续批次
+        Assert.assertEquals(10,scanMetrics.getDocumentCount());
+        Assert.assertTrue(scanMetrics.getFetchedCount()>=10);
+    }
+
+    @Test
+    public void registryTest(){
+        DefaultMongoMetricsRegistry registry=new DefaultMongoMetricsRegistry();
+        for(int count:new int[]{10,30}){
+            ScanMetrics scanMetrics=new ScanMetrics(true);
+            for(int i=0;i<count;i++){
+                scanMetrics.add(0,0,0);
+            }
+            registry.recordOperation("extCursorQueryExe","t_user",scanMetrics.getElapsedNanos(),scanMetrics.getDocumentCount(),false);
+            registry.recordScan("extCursorQueryExe","t_user",scanMetrics);
+        }
+        OperationMetrics metrics=registry.getSnapshot().get(0);
+        Assert.assertEquals(2,metrics.getScanCount());
+        Assert.assertEquals(40,metrics.getDocumentCount());
+        Assert.assertEquals(40,metrics.getFetchedCount());
+        Assert.assertEquals(20,metrics.getDocumentsPerScan());
+        Assert.assertTrue(metrics.getDocumentsPerSecond()>0);
+    }
+}
@@ -1,11 +1,21 @@
 package com.pdd.db.mongo.test;
 
+import com.mongodb.client.result.UpdateResult;
 import com.pdd.db.DbApplication;
+import com.pdd.db.mongo.holder.MongoHolder;
+import com.pdd.db.mongo.holder.ParallelScanResult;
+import com.pdd.db.mongo.holder.QueryShapeReport;
+import com.pdd.db.mongo.holder.ScanCheckpoint;
+import com.pdd.db.mongo.test.bean.TUserInfo;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.test.context.junit4.SpringRunner;
 
 @RunWith(SpringRunner.class)
@@ -15,10 +25,71 @@ public class MongoTest {
     @Autowired
     private MongoTemplate mongoTemplate;
     
+    @Autowired
+    private MongoHolder mongoHolder;
+    
     @Test
     public void myTest(){
         System.out.println(mongoTemplate.getCollectionNames());
     }
     
+    @Test
+    public void parallelCursorQueryTest() throws Exception{
+        Query query=new Query();
+        ParallelScanResult result=mongoHolder.extParallelCursorQueryExe(query,TUserInfo.class,null,cModel -> {});
+        Assert.assertTrue(result.isSuccess());
+        Assert.assertEquals(mongoHolder.count(query,TUserInfo.class),result.getProcessedCount());
+    }
+    
+    @Test
+    public void resumableCursorQueryTest() throws Exception{
+        String scanId="resumableCursorQueryTest";
+        mongoHolder.extRemoveScanCheckpoint(scanId);
+        Query query=new Query();
+        ScanCheckpoint checkpoint=mongoHolder.extResumableCursorQueryExe(scanId,query,TUserInfo.class,100,10,cModel -> {});
+        Assert.assertTrue(checkpoint.isFinished());
+        Assert.assertEquals(mongoHolder.count(query,TUserInfo.class),checkpoint.getProcessedCount());
+        mongoHolder.extRemoveScanCheckpoint(scanId);
+    }
+    
+    @Test
+    public void deltaCursorQueryTest() throws Exception{
+        String consumerId="deltaCursorQueryTest";
+        mongoHolder.extRemoveScanCheckpoint(consumerId);
+        Query query=new Query();
+        ScanCheckpoint checkpoint=mongoHolder.extDeltaCursorQueryExe(consumerId,query,TUserInfo.class,cModel -> {});
+        long total=mongoHolder.count(query,TUserInfo.class);
+        Assert.assertEquals(total,checkpoint.getProcessedCount());
+        //水位不越过扫描开始时的最大更新时间，第二次只返回更新时间等于该值的记录
+        TUserInfo latest=mongoTemplate.findOne(new Query().with(Sort.by(Sort.Direction.DESC,"updateDate")).limit(1),TUserInfo.class);
+        Integer maxUpdateDate=latest==null?null:latest.getUpdateDate();
+        long expected=maxUpdateDate==null?0:mongoHolder.count(new Query(Criteria.where("updateDate").gte(maxUpdateDate)),TUserInfo.class);
+        checkpoint=mongoHolder.extDeltaCursorQueryExe(consumerId,query,TUserInfo.class,cModel -> {});
+        Assert.assertEquals(expected,checkpoint.getProcessedCount()-total);
+        mongoHolder.extRemoveScanCheckpoint(consumerId);
+    }
+    
+    @Test
+    public void saveChangesTest() throws Exception{
+        TUserInfo userInfo=mongoTemplate.findOne(new Query(),TUserInfo.class);
+        if(userInfo==null){
+            return;
+        }
+        //无变化时不写入，返回UNCHANGED（匹配数为0）
+        UpdateResult result=mongoHolder.extWithChangeTracking(() -> mongoHolder.extSaveChanges(mongoHolder.findById(userInfo.getId(),TUserInfo.class)));
+        Assert.assertSame(MongoHolder.UNCHANGED,result);
+        Assert.assertEquals(0,result.getMatchedCount());
+    }
+    
+    @Test
+    public void analyzeQueryTest(){
+        QueryShapeReport report=mongoHolder.extAnalyzeQuery(new Query(Criteria.where("age").gt(18)),TUserInfo.class);
+        Assert.assertNull(report.getExplainError());
+        Assert.assertNotNull(report.getPlanType());
+        if("COLLSCAN".equals(report.getPlanType())){
+            Assert.assertTrue(report.getIndexCandidate().contains("age"));
+        }
+    }
+    
     
 }